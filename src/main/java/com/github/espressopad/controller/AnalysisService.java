@@ -0,0 +1,147 @@
+package com.github.espressopad.controller;
+
+import com.github.espressopad.utils.TaskScheduler;
+
+import javax.swing.SwingUtilities;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+
+/*
+ *  Runs editor analysis in the background. Every edit bumps its tab's
+ *  version; the analysis is only started once no edit has been made for
+ *  the configured delay, and gives up as soon as a newer version is
+ *  requested, so only the newest version of a tab is ever analysed. At
+ *  most one analysis runs per tab at a time.
+ */
+public class AnalysisService<K> {
+    private final TaskScheduler scheduler = TaskScheduler.getInstance();
+    private final Map<K, State> states = new ConcurrentHashMap<>();
+    private final AtomicLong started = new AtomicLong();
+    private final AtomicLong cancelled = new AtomicLong();
+    private final AtomicLong completed = new AtomicLong();
+    private final Analyzer<K> analyzer;
+    private final Consumer<K> listener;
+    private volatile long delayMillis;
+
+    /*
+     *  The listener is called on the EDT whenever a tab falls behind or
+     *  catches up.
+     */
+    public AnalysisService(long delayMillis, Analyzer<K> analyzer, Consumer<K> listener) {
+        this.delayMillis = delayMillis;
+        this.analyzer = analyzer;
+        this.listener = listener;
+    }
+
+    public void setDelayMillis(long delayMillis) {
+        this.delayMillis = Math.max(0, delayMillis);
+    }
+
+    /*
+     *  Note that the tab's document has changed. Called on the EDT.
+     */
+    public void request(K key) {
+        State state = this.states.computeIfAbsent(key, k -> new State());
+        long version = state.requested.incrementAndGet();
+        if (version - state.analysed == 1)
+            state.behindSince = System.nanoTime();
+        ScheduledFuture<?> pending = state.pending;
+        if (pending != null)
+            pending.cancel(false);
+        // A tab has at most one analysis waiting, so tabs can not crowd each other out
+        state.pending = this.scheduler.scheduleCoalesced(TaskScheduler.Lane.ANALYSIS, state,
+                () -> this.analyse(key, state, version), this.delayMillis, TimeUnit.MILLISECONDS);
+        this.listener.accept(key);
+    }
+
+    /*
+     *  Stop analysing a tab, e.g. because it was closed.
+     */
+    public void forget(K key) {
+        State state = this.states.remove(key);
+        if (state == null) return;
+        state.requested.incrementAndGet();
+        ScheduledFuture<?> pending = state.pending;
+        if (pending != null)
+            pending.cancel(false);
+    }
+
+    /*
+     *  How many versions of the tab have been requested since the last one
+     *  that was analysed to the end.
+     */
+    public long getVersionsBehind(K key) {
+        State state = this.states.get(key);
+        return state == null ? 0 : state.requested.get() - state.analysed;
+    }
+
+    /*
+     *  Time between the oldest edit the last completed analysis caught up
+     *  with and the end of that analysis.
+     */
+    public long getLatencyMillis(K key) {
+        State state = this.states.get(key);
+        return state == null ? 0 : state.latencyMillis;
+    }
+
+    public long getStarted() {
+        return this.started.get();
+    }
+
+    public long getCancelled() {
+        return this.cancelled.get();
+    }
+
+    public long getCompleted() {
+        return this.completed.get();
+    }
+
+    private void analyse(K key, State state, long version) {
+        // A newer version is already waiting for its own delay to pass
+        if (state.requested.get() != version) return;
+        synchronized (state) {
+            if (state.requested.get() != version) return;
+            this.started.incrementAndGet();
+            boolean finished;
+            try {
+                finished = this.analyzer.analyse(key, () -> state.requested.get() != version);
+            } catch (RuntimeException e) {
+                this.cancelled.incrementAndGet();
+                throw e;
+            }
+            if (!finished || state.requested.get() != version) {
+                this.cancelled.incrementAndGet();
+                return;
+            }
+            this.completed.incrementAndGet();
+            state.latencyMillis = (System.nanoTime() - state.behindSince) / 1_000_000;
+            state.analysed = version;
+        }
+        SwingUtilities.invokeLater(() -> {
+            // Only report if no newer version is on its way
+            if (this.states.get(key) == state && state.requested.get() == version)
+                this.listener.accept(key);
+        });
+    }
+
+    public interface Analyzer<K> {
+        /*
+         *  Analyse the current version of the tab. Returns false if the
+         *  analysis gave up because isCancelled started returning true.
+         */
+        boolean analyse(K key, BooleanSupplier isCancelled);
+    }
+
+    private static class State {
+        private final AtomicLong requested = new AtomicLong();
+        private volatile long analysed = 0;
+        private volatile long behindSince;
+        private volatile long latencyMillis = 0;
+        private volatile ScheduledFuture<?> pending;
+    }
+}
@@ -0,0 +1,434 @@
+package com.github.espressopad.controller;
+
+import com.github.espressopad.models.SnippetDiagnostic;
+import com.github.espressopad.models.SourceSnippet;
+import com.github.espressopad.utils.Utilities;
+import com.github.espressopad.utils.XmlUtilities;
+import jdk.jshell.DeclarationSnippet;
+import jdk.jshell.Diag;
+import jdk.jshell.JShell;
+import jdk.jshell.Snippet;
+import jdk.jshell.SnippetEvent;
+import jdk.jshell.SourceCodeAnalysis;
+import jdk.jshell.TypeDeclSnippet;
+import jdk.jshell.VarSnippet;
+
+import java.io.File;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.*;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/*
+ *  A tab's own shell for completion and other analysis. It only ever
+ *  holds the tab's imports, methods and types, and its variables without
+ *  their initializers, so analysing a tab never runs user code. Between
+ *  passes only declarations whose source changed are dropped and
+ *  evaluated again; the shell is rebuilt from scratch when the classpath
+ *  or default imports change or too many declarations have been dropped.
+ *
+ *  For diagnostics every statement, expression and variable is also
+ *  declared as the body of a method of its own that is never called. Such
+ *  a check is named after the hash of its source, so it is only compiled
+ *  again when its source changes; JShell compiles it again by itself when
+ *  a declaration it depends on changes.
+ */
+public class AnalysisShell implements AutoCloseable {
+    // JShell keeps dropped snippets around, so start over now and then
+    private static final int RESET_AFTER_DROPPED = 500;
+    private static final Pattern UNRESOLVED = Pattern.compile("^\\w+ ([\\p{L}\\p{N}_$]+)");
+    private final ResourceBundle resourceBundle = ResourceBundle.getBundle("messages", Locale.getDefault());
+    private final XmlUtilities handler = new XmlUtilities();
+    private final Consumer<JShell> initializer;
+    // Declarations and check of every complete piece of source that is not a variable
+    private final Map<String, Piece> pieceCache = new HashMap<>();
+    // Declarations and checks currently in the shell and the snippets they became
+    private Map<String, List<Snippet>> snapshot = new LinkedHashMap<>();
+    private Map<String, List<Snippet>> checks = new LinkedHashMap<>();
+    // Checks of the last update, and where in the document everything evaluated came from
+    private List<String> pendingChecks = List.of();
+    private Map<String, List<Placement>> placements = new HashMap<>();
+    private long passStart;
+    private int compiled;
+    private JShell shell;
+    private String fingerprint;
+    private int dropped = 0;
+    private boolean closed = false;
+    private volatile String stateKey;
+    private volatile Set<String> typeNames = Set.of();
+    private volatile List<SnippetDiagnostic> diagnostics = List.of();
+    private volatile long lastPassMillis;
+    private volatile int lastCompiled;
+    private volatile int lastChecked;
+
+    AnalysisShell(Consumer<JShell> initializer) {
+        this.initializer = initializer;
+    }
+
+    /*
+     *  Bring the shell up to date with the given snippets. Returns false if
+     *  the pass was cancelled; whatever was evaluated until then stays.
+     */
+    synchronized boolean update(List<SourceSnippet> sources, BooleanSupplier isCancelled) {
+        if (this.closed) return false;
+        this.passStart = System.nanoTime();
+        this.compiled = 0;
+        String fingerprint = this.fingerprint();
+        if (this.shell == null || !fingerprint.equals(this.fingerprint) || this.dropped > RESET_AFTER_DROPPED)
+            this.reset(fingerprint);
+
+        Set<String> pieces = new HashSet<>();
+        Set<String> declarations = new LinkedHashSet<>();
+        Set<String> checks = new LinkedHashSet<>();
+        Map<String, List<Placement>> placements = new HashMap<>();
+        SourceCodeAnalysis analysis = this.shell.sourceCodeAnalysis();
+        for (SourceSnippet source : sources) {
+            String remaining = source.getSource();
+            int offset = source.getStartOffset();
+            while (!remaining.isBlank()) {
+                if (isCancelled.getAsBoolean()) return false;
+                SourceCodeAnalysis.CompletionInfo info = analysis.analyzeCompletion(remaining);
+                if (info.completeness() != SourceCodeAnalysis.Completeness.COMPLETE &&
+                        info.completeness() != SourceCodeAnalysis.Completeness.COMPLETE_WITH_SEMI) break;
+                String text = info.source();
+                pieces.add(text);
+                Piece piece = this.getPiece(analysis, text);
+                for (String declaration : piece.declarations) {
+                    declarations.add(declaration);
+                    int start = Math.max(text.indexOf(declaration), 0);
+                    placements.computeIfAbsent(declaration, key -> new ArrayList<>())
+                            .add(new Placement(offset + start, 0, declaration.length()));
+                }
+                if (piece.check != null) {
+                    checks.add(piece.check);
+                    placements.computeIfAbsent(piece.check, key -> new ArrayList<>())
+                            .add(new Placement(offset, piece.checkOffset, piece.checkLength));
+                }
+                // A semicolon JShell added is not in the document
+                int consumed = text.length() -
+                        (info.completeness() == SourceCodeAnalysis.Completeness.COMPLETE_WITH_SEMI ? 1 : 0);
+                offset = Math.min(offset + consumed, source.getEndOffset());
+                remaining = info.remaining();
+            }
+        }
+        this.pieceCache.keySet().retainAll(pieces);
+        this.placements = placements;
+        this.pendingChecks = new ArrayList<>(checks);
+
+        Map<String, List<Snippet>> snapshot = this.evaluate(this.snapshot, declarations, isCancelled);
+        if (snapshot == null) return false;
+        this.snapshot = snapshot;
+        Set<String> typeNames = new HashSet<>();
+        for (List<Snippet> snippets : this.snapshot.values()) {
+            for (Snippet snippet : snippets) {
+                if (snippet.kind() == Snippet.Kind.TYPE_DECL)
+                    typeNames.add(((TypeDeclSnippet) snippet).name());
+            }
+        }
+        this.typeNames = typeNames;
+        this.stateKey = this.fingerprint + ":" + Utilities.hash(String.join("\n", this.snapshot.keySet()));
+        return true;
+    }
+
+    /*
+     *  Compile the checks of the last update and collect the diagnostics of
+     *  every declaration and check. Returns false if the pass was
+     *  cancelled.
+     */
+    synchronized boolean check(BooleanSupplier isCancelled) {
+        if (this.closed || this.shell == null) return false;
+        Map<String, List<Snippet>> checks = this.evaluate(this.checks, this.pendingChecks, isCancelled);
+        if (checks == null) return false;
+        this.checks = checks;
+
+        List<SnippetDiagnostic> diagnostics = new ArrayList<>();
+        this.collectDiagnostics(this.snapshot, diagnostics);
+        this.collectDiagnostics(this.checks, diagnostics);
+        diagnostics.sort(Comparator.comparingInt(SnippetDiagnostic::getOffset));
+        this.diagnostics = diagnostics;
+        this.lastCompiled = this.compiled;
+        this.lastChecked = this.snapshot.size() + this.checks.size();
+        this.lastPassMillis = (System.nanoTime() - this.passStart) / 1_000_000;
+        return true;
+    }
+
+    /*
+     *  Errors and warnings of the last complete pass, in document order.
+     */
+    List<SnippetDiagnostic> getDiagnostics() {
+        return this.diagnostics;
+    }
+
+    /*
+     *  Time the last complete pass took from the start of the update to
+     *  the end of the check.
+     */
+    long getLastPassMillis() {
+        return this.lastPassMillis;
+    }
+
+    /*
+     *  How many declarations and checks the last complete pass had to
+     *  compile, and how many it held in total.
+     */
+    int getLastCompiled() {
+        return this.lastCompiled;
+    }
+
+    int getLastChecked() {
+        return this.lastChecked;
+    }
+
+    /*
+     *  Keep the snippets of sources that are still wanted, drop the rest and
+     *  evaluate the new ones. Returns null if cancelled part way, in which
+     *  case the current map is left holding what the shell holds.
+     */
+    private Map<String, List<Snippet>> evaluate(Map<String, List<Snippet>> current, Collection<String> sources,
+                                                BooleanSupplier isCancelled) {
+        Map<String, List<Snippet>> updated = new LinkedHashMap<>();
+        for (String source : sources) {
+            List<Snippet> snippets = current.remove(source);
+            if (snippets != null)
+                updated.put(source, snippets);
+        }
+        for (List<Snippet> snippets : current.values()) {
+            for (Snippet snippet : snippets) {
+                if (this.shell.status(snippet).isActive()) {
+                    this.shell.drop(snippet);
+                    this.dropped++;
+                }
+            }
+        }
+        current.clear();
+        for (String source : sources) {
+            if (updated.containsKey(source)) continue;
+            if (isCancelled.getAsBoolean()) {
+                current.putAll(updated);
+                return null;
+            }
+            List<Snippet> snippets = new ArrayList<>();
+            for (SnippetEvent event : this.shell.eval(source)) {
+                if (event.causeSnippet() == null)
+                    snippets.add(event.snippet());
+            }
+            updated.put(source, snippets);
+            this.compiled++;
+        }
+        return updated;
+    }
+
+    private void collectDiagnostics(Map<String, List<Snippet>> evaluated, List<SnippetDiagnostic> diagnostics) {
+        for (Map.Entry<String, List<Snippet>> entry : evaluated.entrySet()) {
+            List<Placement> placements = this.placements.get(entry.getKey());
+            // Variables are declared again without their initializers; their checks report for them
+            if (placements == null) continue;
+            for (Snippet snippet : entry.getValue()) {
+                if (snippet.kind() == Snippet.Kind.VAR) continue;
+                for (Diag diag : (Iterable<Diag>) this.shell.diagnostics(snippet)::iterator) {
+                    String message = diag.getMessage(Locale.getDefault());
+                    for (Placement placement : placements)
+                        diagnostics.add(placement.place(diag.getStartPosition(), diag.getEndPosition(), message,
+                                diag.isError()));
+                }
+                Snippet.Status status = this.shell.status(snippet);
+                if (snippet instanceof DeclarationSnippet && (status == Snippet.Status.RECOVERABLE_DEFINED ||
+                        status == Snippet.Status.RECOVERABLE_NOT_DEFINED)) {
+                    // Unresolved names are not errors to JShell, which waits for them to be declared
+                    for (String dependency : (Iterable<String>) this.shell
+                            .unresolvedDependencies((DeclarationSnippet) snippet)::iterator) {
+                        String message = String.format(this.resourceBundle.getString("cannot.find.symbol.s"),
+                                dependency);
+                        Matcher matcher = UNRESOLVED.matcher(dependency);
+                        String name = matcher.find() ? matcher.group(1) : null;
+                        for (Placement placement : placements) {
+                            int position = name == null ?
+                                    placement.sourceOffset : placement.find(entry.getKey(), name);
+                            diagnostics.add(placement.place(position, position + (name == null ? 1 : name.length()),
+                                    message, true));
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /*
+     *  Names of the classes, interfaces, enums and records the tab declares.
+     */
+    Set<String> getTypeNames() {
+        return this.typeNames;
+    }
+
+    /*
+     *  Identifies the classpath, default imports and declarations the shell
+     *  held after its last complete pass, or null before the first one.
+     *  Equal keys give equal completions for the same code.
+     */
+    String getStateKey() {
+        return this.stateKey;
+    }
+
+    /*
+     *  Completion suggestions at the cursor of a piece of code, e.g. of a
+     *  snippet up to the caret so that its local variables are in scope.
+     *  The suggestions replace the code from anchor[0] on.
+     */
+    synchronized List<SourceCodeAnalysis.Suggestion> completionSuggestions(String code, int cursor, int[] anchor) {
+        if (this.shell == null) return List.of();
+        return this.shell.sourceCodeAnalysis().completionSuggestions(code, cursor, anchor);
+    }
+
+    /*
+     *  Signatures and Javadoc of what the code at the cursor refers to,
+     *  e.g. every overload of a method.
+     */
+    synchronized List<SourceCodeAnalysis.Documentation> documentation(String code, int cursor) {
+        if (this.shell == null) return List.of();
+        return this.shell.sourceCodeAnalysis().documentation(code, cursor, true);
+    }
+
+    /*
+     *  What has to be evaluated to declare what a piece of source declares,
+     *  and to check what it does. Variables lose their initializers;
+     *  statements and expressions declare nothing. Variables, statements
+     *  and expressions are checked in a method of their own.
+     */
+    private Piece getPiece(SourceCodeAnalysis analysis, String source) {
+        Piece piece = this.pieceCache.get(source);
+        if (piece != null) return piece;
+        piece = new Piece();
+        boolean cacheable = true;
+        boolean expression = false;
+        boolean statement = false;
+        for (Snippet snippet : analysis.sourceToSnippets(source)) {
+            switch (snippet.kind()) {
+                case IMPORT:
+                case METHOD:
+                case TYPE_DECL:
+                    piece.declarations.add(snippet.source());
+                    break;
+                case VAR:
+                    // An inferred type can change with the declarations it depends on
+                    cacheable = false;
+                    VarSnippet variable = (VarSnippet) snippet;
+                    String type = variable.typeName();
+                    // Anonymous and intersection types can not be written down
+                    if (type.isEmpty() || type.startsWith("<") || type.contains("&"))
+                        type = "Object";
+                    piece.declarations.add(String.format("%s %s;", type, variable.name()));
+                    if (snippet.subKind() == Snippet.SubKind.TEMP_VAR_EXPRESSION_SUBKIND)
+                        expression = true;
+                    else statement = true;
+                    break;
+                default:
+                    statement = true;
+                    break;
+            }
+        }
+        if (statement || expression) {
+            String name = "$check_" + Utilities.hash(source).substring(0, 16);
+            if (statement) {
+                String prefix = String.format("void %s() throws Throwable {\n", name);
+                piece.check = prefix + source + "\n}";
+                piece.checkOffset = prefix.length();
+                piece.checkLength = source.length();
+            } else {
+                // A bare expression is not a statement, so give its value somewhere to go
+                String prefix = String.format("void %s() throws Throwable {\nObject $value = ", name);
+                int end = source.length();
+                while (end > 0 && (Character.isWhitespace(source.charAt(end - 1)) || source.charAt(end - 1) == ';'))
+                    end--;
+                piece.check = prefix + source.substring(0, end) + ";\n}";
+                piece.checkOffset = prefix.length();
+                piece.checkLength = end;
+            }
+        }
+        if (cacheable)
+            this.pieceCache.put(source, piece);
+        return piece;
+    }
+
+    private void reset(String fingerprint) {
+        if (this.shell != null)
+            this.shell.close();
+        this.shell = JShell.builder()
+                .out(new PrintStream(OutputStream.nullOutputStream()))
+                .err(new PrintStream(OutputStream.nullOutputStream()))
+                .in(InputStream.nullInputStream())
+                // Declarations never run anything, so there is no need for a remote VM
+                .executionEngine("local")
+                .build();
+        this.initializer.accept(this.shell);
+        this.fingerprint = fingerprint;
+        this.stateKey = null;
+        this.typeNames = Set.of();
+        this.snapshot = new LinkedHashMap<>();
+        this.checks = new LinkedHashMap<>();
+        this.pieceCache.clear();
+        this.dropped = 0;
+    }
+
+    private String fingerprint() {
+        File artifactFile = this.handler.getArtifactFile();
+        File importsFile = this.handler.getImportsFile();
+        return String.format("%d:%d:%d:%d", artifactFile.lastModified(), artifactFile.length(),
+                importsFile.lastModified(), importsFile.length());
+    }
+
+    /*
+     *  Close the shell. A pass in progress is waited for, so cancel it first.
+     */
+    @Override
+    public synchronized void close() {
+        this.closed = true;
+        if (this.shell != null)
+            this.shell.close();
+        this.shell = null;
+    }
+
+    private static class Piece {
+        private final List<String> declarations = new ArrayList<>();
+        private String check;
+        private int checkOffset;
+        private int checkLength;
+    }
+
+    /*
+     *  Where evaluated source came from: the part of it starting at
+     *  sourceOffset was found at documentOffset.
+     */
+    private static class Placement {
+        private final int documentOffset;
+        private final int sourceOffset;
+        private final int length;
+
+        Placement(int documentOffset, int sourceOffset, int length) {
+            this.documentOffset = documentOffset;
+            this.sourceOffset = sourceOffset;
+            this.length = length;
+        }
+
+        SnippetDiagnostic place(long start, long end, String message, boolean error) {
+            // Positions outside the document's part, e.g. in a check's wrapper, go to its ends
+            int from = (int) Math.min(Math.max(start - this.sourceOffset, 0), Math.max(this.length - 1, 0));
+            int to = (int) Math.min(Math.max(end - this.sourceOffset, from + 1), this.length);
+            return new SnippetDiagnostic(this.documentOffset + from, Math.max(to - from, 1), message, error);
+        }
+
+        /*
+         *  Position in the evaluated source of the first use of a name in
+         *  the document's part, or the start of that part.
+         */
+        int find(String source, String name) {
+            Matcher matcher = Pattern.compile("(?<![\\p{L}\\p{N}_$])" + Pattern.quote(name) + "(?![\\p{L}\\p{N}_$])")
+                    .matcher(source);
+            matcher.region(this.sourceOffset, Math.min(this.sourceOffset + this.length, source.length()));
+            return matcher.find() ? matcher.start() : this.sourceOffset;
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package com.github.espressopad.controller;
+
+import com.github.espressopad.utils.XmlUtilities;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/*
+ *  The jars in artifacts.xml and a fingerprint of them together with the
+ *  JDK, for caches that are only good for as long as neither changes.
+ */
+final class Classpath {
+    private Classpath() {
+    }
+
+    static List<Path> getJars(XmlUtilities handler) {
+        if (!handler.getArtifactFile().exists()) return List.of();
+        return handler.parseArtifactXml().stream()
+                .map(Path::of)
+                .filter(Files::isRegularFile)
+                .collect(Collectors.toList());
+    }
+
+    static String fingerprint(List<Path> jars) {
+        StringBuilder builder = new StringBuilder()
+                .append(System.getProperty("java.home")).append(':')
+                .append(Runtime.version());
+        for (Path jar : jars) {
+            File file = jar.toFile();
+            builder.append(':').append(file.getAbsolutePath())
+                    .append(':').append(file.lastModified())
+                    .append(':').append(file.length());
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,144 @@
+package com.github.espressopad.controller;
+
+import com.github.espressopad.models.SnippetDiagnostic;
+import com.github.espressopad.views.components.TextEditor;
+import org.fife.ui.rsyntaxtextarea.RSyntaxDocument;
+import org.fife.ui.rsyntaxtextarea.parser.AbstractParser;
+import org.fife.ui.rsyntaxtextarea.parser.DefaultParseResult;
+import org.fife.ui.rsyntaxtextarea.parser.DefaultParserNotice;
+import org.fife.ui.rsyntaxtextarea.parser.ParseResult;
+import org.fife.ui.rsyntaxtextarea.parser.ParserNotice;
+import org.fife.ui.rtextarea.Gutter;
+import org.fife.ui.rtextarea.GutterIconInfo;
+import org.kordamp.ikonli.fontawesome5.FontAwesomeSolid;
+import org.kordamp.ikonli.swing.FontIcon;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.swing.Icon;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Document;
+import javax.swing.text.Position;
+import java.awt.Color;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+ *  Shows the diagnostics of a tab's analysis as squiggles and gutter
+ *  markers. The diagnostics are worked out in the background; this
+ *  parser only hands out the last ones, kept as document positions so
+ *  that they follow edits made since. Everything here runs on the EDT.
+ */
+public class DiagnosticsParser extends AbstractParser {
+    // More than this is too many to be useful and too slow to show within a frame
+    private static final int MAX_NOTICES = 200;
+    private static final Icon ERROR_ICON = FontIcon.of(FontAwesomeSolid.TIMES_CIRCLE, 12, new Color(0xD32F2F));
+    private static final Icon WARNING_ICON = FontIcon.of(FontAwesomeSolid.EXCLAMATION_TRIANGLE, 12, new Color(0xF9A825));
+    private final Logger logger = LoggerFactory.getLogger(DiagnosticsParser.class);
+    private final TextEditor textEditor;
+    private final List<GutterIconInfo> gutterIcons = new ArrayList<>();
+    private List<Marker> markers = List.of();
+    private long lastShowMillis;
+
+    public DiagnosticsParser(TextEditor textEditor) {
+        this.textEditor = textEditor;
+    }
+
+    /*
+     *  Show the diagnostics of the given document version. They are
+     *  dropped if the document has changed since, as a newer pass is on
+     *  its way.
+     */
+    void setDiagnostics(List<SnippetDiagnostic> diagnostics, long version) {
+        if (version != this.textEditor.getVersion()) return;
+        long start = System.nanoTime();
+        Document document = this.textEditor.getDocument();
+        List<Marker> markers = new ArrayList<>();
+        for (SnippetDiagnostic diagnostic : diagnostics) {
+            if (markers.size() == MAX_NOTICES) break;
+            int offset = Math.min(diagnostic.getOffset(), document.getLength());
+            int end = Math.min(offset + diagnostic.getLength(), document.getLength());
+            try {
+                markers.add(new Marker(document.createPosition(offset), document.createPosition(end), diagnostic));
+            } catch (BadLocationException e) {
+                this.logger.debug("Dropping diagnostic outside the document: {}", diagnostic, e);
+            }
+        }
+        this.markers = markers;
+        this.textEditor.forceReparsing(this);
+        this.showGutterMarkers();
+        this.lastShowMillis = (System.nanoTime() - start) / 1_000_000;
+    }
+
+    /*
+     *  Time it took to show the last diagnostics on the EDT.
+     */
+    long getLastShowMillis() {
+        return this.lastShowMillis;
+    }
+
+    /*
+     *  Put the markers back in the gutter, e.g. after its icons were cleared.
+     */
+    void showGutterMarkers() {
+        if (this.textEditor.getScrollPane() == null) return;
+        Gutter gutter = this.textEditor.getScrollPane().getGutter();
+        for (GutterIconInfo icon : this.gutterIcons)
+            gutter.removeTrackingIcon(icon);
+        this.gutterIcons.clear();
+        if (this.markers.isEmpty()) return;
+
+        // One marker per line, telling everything wrong with it
+        Map<Integer, List<Marker>> lines = new LinkedHashMap<>();
+        for (Marker marker : this.markers) {
+            int line = this.textEditor.getDocument().getDefaultRootElement().getElementIndex(marker.start.getOffset());
+            lines.computeIfAbsent(line, key -> new ArrayList<>()).add(marker);
+        }
+        this.textEditor.getScrollPane().setIconRowHeaderEnabled(true);
+        for (Map.Entry<Integer, List<Marker>> line : lines.entrySet()) {
+            boolean error = false;
+            StringBuilder toolTip = new StringBuilder();
+            for (Marker marker : line.getValue()) {
+                error |= marker.diagnostic.isError();
+                if (toolTip.length() > 0)
+                    toolTip.append('\n');
+                toolTip.append(marker.diagnostic.getMessage());
+            }
+            try {
+                this.gutterIcons.add(gutter.addLineTrackingIcon(line.getKey(), error ? ERROR_ICON : WARNING_ICON,
+                        toolTip.toString()));
+            } catch (BadLocationException e) {
+                this.logger.debug("Could not mark line {}", line.getKey(), e);
+            }
+        }
+    }
+
+    @Override
+    public ParseResult parse(RSyntaxDocument document, String style) {
+        DefaultParseResult result = new DefaultParseResult(this);
+        for (Marker marker : this.markers) {
+            int offset = marker.start.getOffset();
+            int length = Math.max(marker.end.getOffset() - offset, 1);
+            int line = document.getDefaultRootElement().getElementIndex(offset);
+            DefaultParserNotice notice = new DefaultParserNotice(this, marker.diagnostic.getMessage(), line,
+                    offset, length);
+            notice.setLevel(marker.diagnostic.isError() ? ParserNotice.Level.ERROR : ParserNotice.Level.WARNING);
+            result.addNotice(notice);
+        }
+        return result;
+    }
+
+    private static class Marker {
+        private final Position start;
+        private final Position end;
+        private final SnippetDiagnostic diagnostic;
+
+        Marker(Position start, Position end, SnippetDiagnostic diagnostic) {
+            this.start = start;
+            this.end = end;
+            this.diagnostic = diagnostic;
+        }
+    }
+}
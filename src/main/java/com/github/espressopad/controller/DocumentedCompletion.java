@@ -0,0 +1,54 @@
+package com.github.espressopad.controller;
+
+import org.fife.ui.autocomplete.BasicCompletion;
+import org.fife.ui.autocomplete.CompletionProvider;
+
+import java.util.function.Function;
+
+/*
+ *  A completion whose documentation is looked up in the background when
+ *  it is first asked for, so that the completion popup never waits for
+ *  JShell. Until the lookup is done the completion has no summary.
+ */
+public class DocumentedCompletion extends BasicCompletion {
+    private final String documentationCode;
+    private final AnalysisShell analysisShell;
+    private final Function<DocumentedCompletion, String> documentation;
+
+    /*
+     *  The documentation code is what JShell is asked to document, e.g.
+     *  java.util.Collections.emptyList(, or null if there is nothing to
+     *  look up. The function returns the documentation if it is already
+     *  known and otherwise starts looking it up.
+     */
+    DocumentedCompletion(CompletionProvider provider, String replacementText, String shortDescription,
+                         String documentationCode, AnalysisShell analysisShell,
+                         Function<DocumentedCompletion, String> documentation) {
+        super(provider, replacementText, shortDescription);
+        this.documentationCode = documentationCode;
+        this.analysisShell = analysisShell;
+        this.documentation = documentation;
+    }
+
+    String getDocumentationCode() {
+        return this.documentationCode;
+    }
+
+    /*
+     *  The shell the completion came from, if any.
+     */
+    AnalysisShell getAnalysisShell() {
+        return this.analysisShell;
+    }
+
+    @Override
+    public String getSummary() {
+        String summary = super.getSummary();
+        if (summary == null && this.documentationCode != null) {
+            summary = this.documentation.apply(this);
+            if (summary != null)
+                this.setSummary(summary);
+        }
+        return summary == null || summary.isEmpty() ? null : summary;
+    }
+}
@@ -2,22 +2,37 @@ package com.github.espressopad.controller;
 
 import com.github.espressopad.io.ConsoleInputStream;
 import com.github.espressopad.io.ConsoleOutputStream;
+import com.github.espressopad.io.OutputFile;
+import com.github.espressopad.io.ThreadRoutedStreams;
+import com.github.espressopad.models.ExecutionEngine;
+import com.github.espressopad.models.InputSource;
+import com.github.espressopad.models.OutlineEntry;
+import com.github.espressopad.models.RunConfiguration;
+import com.github.espressopad.models.RunState;
+import com.github.espressopad.models.SettingsModel;
+import com.github.espressopad.models.SnippetDiagnostic;
+import com.github.espressopad.models.SnippetProfile;
+import com.github.espressopad.models.SourceSnippet;
 import com.github.espressopad.models.ViewModel;
+import com.github.espressopad.utils.HtmlUtilities;
+import com.github.espressopad.utils.LruCache;
+import com.github.espressopad.utils.SymbolTrie;
+import com.github.espressopad.utils.TaskScheduler;
+import com.github.espressopad.utils.Utilities;
 import com.github.espressopad.utils.XmlUtilities;
 import com.github.espressopad.views.components.FileTree;
 import com.github.espressopad.views.components.MessageConsole;
+import com.github.espressopad.views.components.ResultPanel;
+import com.github.espressopad.views.components.StatusBar;
 import com.github.espressopad.views.components.TextEditor;
-import com.github.javaparser.StaticJavaParser;
-import com.github.javaparser.ast.body.BodyDeclaration;
-import com.github.javaparser.ast.stmt.*;
 import jdk.jshell.JShell;
-import jdk.jshell.JShellException;
 import jdk.jshell.SnippetEvent;
 import jdk.jshell.SourceCodeAnalysis;
 import org.fife.ui.autocomplete.AutoCompletion;
-import org.fife.ui.autocomplete.BasicCompletion;
 import org.fife.ui.autocomplete.Completion;
-import org.fife.ui.autocomplete.DefaultCompletionProvider;
+import org.fife.ui.rtextarea.Gutter;
+import org.kordamp.ikonli.fontawesome5.FontAwesomeSolid;
+import org.kordamp.ikonli.swing.FontIcon;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -25,31 +40,97 @@ import javax.swing.*;
 import javax.swing.event.DocumentEvent;
 import javax.swing.event.DocumentListener;
 import javax.swing.text.BadLocationException;
+import javax.swing.text.Document;
+import javax.swing.text.Segment;
 import javax.swing.tree.DefaultMutableTreeNode;
 import javax.swing.tree.TreePath;
 import java.awt.Color;
 import java.awt.Desktop;
+import java.awt.Point;
 import java.awt.event.MouseEvent;
 import java.io.File;
 import java.io.IOException;
 import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.InvalidPathException;
 import java.nio.file.Path;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 import java.util.ResourceBundle;
-import java.util.concurrent.Executors;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
 public class EspressoPadController {
-    private static final JShell shell = JShell.builder().out(null).in(null).err(null).build();
     private final Logger logger = LoggerFactory.getLogger(EspressoPadController.class);
-    private final DefaultCompletionProvider provider = new DefaultCompletionProvider();
     private final XmlUtilities handler = new XmlUtilities();
     private final ResourceBundle resourceBundle = ResourceBundle.getBundle("messages", Locale.getDefault());
+    private static final long STOP_GRACE_MILLIS = 2000;
+    // Unbounded output beyond this moves from the styled result pane to the disk-backed viewer
+    private static final int OVERFLOW_CHARACTERS = 1 << 20;
+    // Output waiting for the EDT beyond this is handled by the run's output policy
+    private static final int OUTPUT_BACKLOG_CHARACTERS = 1 << 20;
+    // Completion results each tab keeps for contexts typed again
+    private static final int COMPLETION_CACHE_ENTRIES = 256;
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+    // Contexts completed from the symbol index; everything else is left to JShell
+    private static final Pattern IMPORT = Pattern.compile(
+            "^\\s*import\\s+(?:static\\s+)?(?:([\\p{L}_$][\\p{L}\\p{N}_$.]*)\\.)?([\\p{L}_$][\\p{L}\\p{N}_$]*)?$"
+    );
+    private static final Pattern STATIC_MEMBER = Pattern.compile(
+            "(?<![\\p{L}\\p{N}_$.])(\\p{Lu}[\\p{L}\\p{N}_$]*)\\.([\\p{L}_$][\\p{L}\\p{N}_$]*)?$"
+    );
+    private static final Pattern TYPE_NAME = Pattern.compile("(?<![\\p{L}\\p{N}_$.])(\\p{Lu}[\\p{L}\\p{N}_$]*)$");
+    private static final int INDEX_COMPLETIONS = 200;
+    // Documentation looked up ahead of time for the first completions offered
+    private static final int PREFETCHED_DOCUMENTATION = 8;
+    private static final int DOCUMENTATION_CACHE_ENTRIES = 512;
+    private static final int HOVER_CACHE_ENTRIES = 256;
+    private final Map<String, JShellPool> shellPools = new ConcurrentHashMap<>();
+    private final TaskScheduler scheduler = TaskScheduler.getInstance();
+    private final Set<IncrementalSession> sessions = ConcurrentHashMap.newKeySet();
+    private final Set<AnalysisShell> analysisShells = ConcurrentHashMap.newKeySet();
+    private final SnippetCache snippetCache = new SnippetCache();
+    private final AnalysisService<TextEditor> analysisService;
+    private final SymbolIndex symbolIndex = new SymbolIndex();
+    private final TypeSolverService typeSolverService = new TypeSolverService();
+    // Documentation by the code it was looked up for, and rendered Javadoc by signature
+    private final LruCache<String, String> documentationCache = new LruCache<>(DOCUMENTATION_CACHE_ENTRIES);
+    private final LruCache<String, String> javadocCache = new LruCache<>(DOCUMENTATION_CACHE_ENTRIES);
+    private final Object documentationKey = new Object();
+    // What the symbols hovered over were resolved to, by editor, document version and offset
+    private final LruCache<String, TypeSolverService.Resolution> hoverCache = new LruCache<>(HOVER_CACHE_ENTRIES);
+    private final Object symbolKey = new Object();
+    // Told on the EDT whenever a run starts or finishes
+    private Runnable runStateListener = () -> {};
 
-    public static JShell getShell() {
-        return shell;
+    public EspressoPadController() {
+        SettingsModel settings = this.handler.parseSettingsXml();
+        this.analysisService = new AnalysisService<>(
+                settings == null ? new SettingsModel().getAnalysisDelayMillis() : settings.getAnalysisDelayMillis(),
+                this::onChangeEvent, this::showAnalysisStatus
+        );
+        // Warm up the default engine before the first run asks for it
+        this.getShellPool(new RunConfiguration());
+        this.symbolIndex.refresh();
+        this.typeSolverService.refresh();
     }
 
     public void addArtifactsAndImports(JShell shell) {
@@ -59,21 +140,30 @@ public class EspressoPadController {
         }
         if (!this.handler.getImportsFile().exists())
             this.handler.writeImportXml(List.of("java.util.stream.*", "java.util.*", "java.io.*"));
-        else shell.eval(this.handler.parseImportXml()
+        shell.eval(this.handler.parseImportXml()
                 .stream()
                 .map(imports -> String.format("import %s;", imports))
                 .collect(Collectors.joining()));
     }
 
     public void setupTextChangeListener(TextEditor textEditor) {
-        AutoCompletion ac = new AutoCompletion(this.provider);
-        this.provider.setAutoActivationRules(true, ".");
+        SnapshotCompletionProvider provider = new SnapshotCompletionProvider(COMPLETION_CACHE_ENTRIES);
+        provider.setAutoActivationRules(true, ".");
+        textEditor.getViewModel().setCompletionProvider(provider);
+        AutoCompletion ac = new AutoCompletion(provider);
         ac.setAutoCompleteEnabled(true);
         ac.setAutoActivationEnabled(true);
-        //ac.setShowDescWindow(true);
+        ac.setShowDescWindow(true);
         ac.install(textEditor);
+        DiagnosticsParser diagnosticsParser = new DiagnosticsParser(textEditor);
+        textEditor.addParser(diagnosticsParser);
+        textEditor.getViewModel().setDiagnosticsParser(diagnosticsParser);
+        textEditor.getViewModel().setParseService(new ParseService());
+        textEditor.setToolTipSupplier((textArea, event) -> this.getHoverText(textEditor, event));
         textEditor.addCaretListener(event -> this.setupCaretChangeEvent(textEditor));
         textEditor.getDocument().addDocumentListener(new TextEditorListener(textEditor));
+        // An opened file has its text before the listener is in place, so analyse it once up front
+        this.analysisService.request(textEditor);
     }
 
     private void setupCaretChangeEvent(TextEditor textEditor) {
@@ -88,130 +178,474 @@ public class EspressoPadController {
     }
 
     private void setupTextChangeEvent(TextEditor textEditor) {
-        Executors.newFixedThreadPool(3).submit(() -> this.onChangeEvent(textEditor));
+        textEditor.setDirty(true);
+        this.analysisService.request(textEditor);
+        // The caret moves after this listener has been told about the edit
+        SwingUtilities.invokeLater(() -> this.showCachedCompletions(textEditor));
+    }
+
+    public void setRunStateListener(Runnable runStateListener) {
+        this.runStateListener = runStateListener;
+    }
+
+    public void setAnalysisDelay(long delayMillis) {
+        this.analysisService.setDelayMillis(delayMillis);
+    }
+
+    private void showAnalysisStatus(TextEditor textEditor) {
+        long behind = this.analysisService.getVersionsBehind(textEditor);
+        StatusBar statusBar = textEditor.getViewModel().getStatusBar();
+        if (behind > 0)
+            statusBar.setAnalysis(String.format(this.resourceBundle.getString("analysis.d.edits.behind"), behind));
+        else statusBar.setAnalysis(String.format(this.resourceBundle.getString("analysed.in.d.ms"),
+                this.analysisService.getLatencyMillis(textEditor)));
+        String toolTip = String.format(this.resourceBundle.getString("analyses.d.started.d.cancelled.d.completed"),
+                this.analysisService.getStarted(), this.analysisService.getCancelled(),
+                this.analysisService.getCompleted(), Math.round(this.getCompletionHitRate(textEditor) * 100));
+        AnalysisShell analysisShell = textEditor.getViewModel().getAnalysisShell();
+        DiagnosticsParser diagnosticsParser = textEditor.getViewModel().getDiagnosticsParser();
+        if (analysisShell != null && diagnosticsParser != null)
+            toolTip += "; " + String.format(this.resourceBundle.getString("last.pass.d.of.d.compiled.in.d.ms.shown.in.d.ms"),
+                    analysisShell.getLastCompiled(), analysisShell.getLastChecked(), analysisShell.getLastPassMillis(),
+                    diagnosticsParser.getLastShowMillis());
+        for (TaskScheduler.Lane lane : TaskScheduler.Lane.values())
+            toolTip += "; " + String.format(this.resourceBundle.getString("s.lane.d.queued.d.active"), lane.getName(),
+                    this.scheduler.getQueueDepth(lane), this.scheduler.getActiveCount(lane));
+        ParseService parseService = textEditor.getViewModel().getParseService();
+        if (parseService != null)
+            toolTip += "; " + String.format(this.resourceBundle.getString("outline.parsed.d.of.d.snippets.in.d.ms"),
+                    parseService.getLastParsed(), parseService.getLastSnippets(), parseService.getLastPassMillis());
+        TypeSolverService.TimedTypeSolver slowest = this.typeSolverService.getSlowestSolver();
+        if (slowest != null)
+            toolTip += "; " + String.format(
+                    this.resourceBundle.getString("last.symbol.lookup.d.ms.slowest.classpath.entry.s.d.ms.in.d.lookups"),
+                    this.typeSolverService.getLastResolveMillis(), slowest.getName(), slowest.getNanos() / 1_000_000,
+                    slowest.getLookups());
+        statusBar.setAnalysisToolTip(toolTip);
     }
 
-    private void onChangeEvent(TextEditor textEditor) {
+    /*
+     *  Bring the tab's outline and analysis shell up to date, refresh the
+     *  completions and then the diagnostics. Returns false if a newer edit
+     *  cancelled it part way.
+     */
+    private boolean onChangeEvent(TextEditor textEditor, BooleanSupplier isCancelled) {
+        ViewModel viewModel = textEditor.getViewModel();
+        AnalysisShell analysisShell = viewModel.getAnalysisShell();
+        if (analysisShell == null) {
+            analysisShell = new AnalysisShell(this::addArtifactsAndImports);
+            viewModel.setAnalysisShell(analysisShell);
+            this.analysisShells.add(analysisShell);
+        }
+        // Taken before the snippets, so that an edit in between makes the diagnostics stale
+        long version = textEditor.getVersion();
+        List<SourceSnippet> snippets = textEditor.getSnippets();
+        if (!this.outline(textEditor, snippets, version, isCancelled)) return false;
         try {
-            textEditor.setDirty(true);
-            SourceCodeAnalysis.CompletionInfo completionInfo = shell.sourceCodeAnalysis()
-                    .analyzeCompletion(textEditor.getText());
-            while (completionInfo.source() != null && !completionInfo.source().isBlank()) {
-                if (completionInfo.completeness() != SourceCodeAnalysis.Completeness.COMPLETE) break;
-                List<SnippetEvent> snippetEvents = shell.eval(completionInfo.source());
-                for (SnippetEvent snippetEvent : snippetEvents) {
-                    switch (snippetEvent.snippet().kind()) {
-                        case METHOD:
-                            BodyDeclaration<?> body = StaticJavaParser.parseBodyDeclaration(snippetEvent.snippet().source());
-                            body.asMethodDeclaration().getBody().ifPresent(x -> {
-                                for (Statement st : x.getStatements())
-                                    shell.eval(st.toString());
-                            });
-                            break;
-                        case STATEMENT:
-                            Statement stmts = StaticJavaParser.parseStatement(snippetEvent.snippet().source());
-                            if (stmts.isDoStmt()) {
-                                DoStmt doStmt = stmts.asDoStmt();
-                                for (Statement st : doStmt.getBody().asBlockStmt().getStatements())
-                                    shell.eval(st.toString());
-                            } else if (stmts.isForEachStmt()) {
-                                ForEachStmt forEachStmt = stmts.asForEachStmt();
-                                for (Statement st : forEachStmt.getBody().asBlockStmt().getStatements())
-                                    shell.eval(st.toString());
-                            } else if (stmts.isForStmt()) {
-                                ForStmt forStmt = stmts.asForStmt();
-                                for (Statement st : forStmt.getBody().asBlockStmt().getStatements())
-                                    shell.eval(st.toString());
-                            } else if (stmts.isIfStmt()) {
-                                IfStmt ifStmt = stmts.asIfStmt();
-                                for (Statement st : ifStmt.getThenStmt().asBlockStmt().getStatements())
-                                    shell.eval(st.toString());
-                            } else if (stmts.isSwitchStmt()) {
-                                SwitchStmt switchStmt = stmts.asSwitchStmt();
-                                for (SwitchEntry switchEntry : switchStmt.getEntries())
-                                    for (Statement st : switchEntry.getStatements())
-                                        shell.eval(st.toString());
-                            } else if (stmts.isSynchronizedStmt()) {
-                                SynchronizedStmt syncStmt = stmts.asSynchronizedStmt();
-                                for (Statement st : syncStmt.getBody().asBlockStmt().getStatements())
-                                    shell.eval(st.toString());
-                            } else if (stmts.isTryStmt()) {
-                                TryStmt tryStmt = stmts.asTryStmt();
-                                for (Statement st : tryStmt.getTryBlock().asBlockStmt().getStatements())
-                                    shell.eval(st.toString());
-                                for (CatchClause catchClause : tryStmt.getCatchClauses()) {
-                                    for (Statement st : catchClause.getBody().getStatements())
-                                        shell.eval(st.toString());
-                                }
-                                tryStmt.getFinallyBlock().ifPresent(x -> {
-                                    for (Statement st : x.getStatements())
-                                        shell.eval(st.toString());
-                                });
-                            } else if (stmts.isWhileStmt()) {
-                                WhileStmt whileStmt = stmts.asWhileStmt();
-                                for (Statement st : whileStmt.getBody().asBlockStmt().getStatements())
-                                    shell.eval(st.toString());
-                            }
-                            break;
-                    }
-                }
-                if (!completionInfo.remaining().isBlank())
-                    completionInfo = shell.sourceCodeAnalysis().analyzeCompletion(completionInfo.remaining());
-                else break;
-            }
+            if (!analysisShell.update(snippets, isCancelled) || isCancelled.getAsBoolean()) return false;
+            if (!this.complete(textEditor, snippets, analysisShell)) return false;
+            if (!analysisShell.check(isCancelled)) return false;
         } catch (IllegalStateException e) {
+            // The tab was closed underneath us
+            return false;
         }
+        List<SnippetDiagnostic> diagnostics = analysisShell.getDiagnostics();
+        DiagnosticsParser diagnosticsParser = viewModel.getDiagnosticsParser();
+        if (diagnosticsParser != null)
+            SwingUtilities.invokeLater(() -> diagnosticsParser.setDiagnostics(diagnostics, version));
+        return true;
+    }
+
+    /*
+     *  Parse the snippets that changed and show the outline, unless the
+     *  document has changed again by the time the EDT gets to it.
+     */
+    private boolean outline(TextEditor textEditor, List<SourceSnippet> snippets, long version,
+                            BooleanSupplier isCancelled) {
+        ParseService parseService = textEditor.getViewModel().getParseService();
+        if (parseService == null) return true;
+        List<OutlineEntry> outline = parseService.update(snippets, isCancelled);
+        if (outline == null) return false;
+        SwingUtilities.invokeLater(() -> {
+            if (textEditor.getVersion() == version)
+                textEditor.getViewModel().getOutlinePanel().setEntries(outline);
+        });
+        return true;
+    }
+
+    private double getCompletionHitRate(TextEditor textEditor) {
+        SnapshotCompletionProvider provider = textEditor.getViewModel().getCompletionProvider();
+        return provider == null ? 0 : provider.getCache().getHitRate();
+    }
+
+    /*
+     *  Work out the completions at the caret and publish them to the tab's
+     *  provider, right from the analysis thread.
+     */
+    private boolean complete(TextEditor textEditor, List<SourceSnippet> snippets, AnalysisShell analysisShell) {
+        SnapshotCompletionProvider provider = textEditor.getViewModel().getCompletionProvider();
+        if (provider == null) return true;
         try {
-            int lineStartOffsetOfCurrentLine = textEditor.getLineStartOffsetOfCurrentLine();
-            String currentLine = textEditor.getText(lineStartOffsetOfCurrentLine,
-                    textEditor.getCaretPosition() - lineStartOffsetOfCurrentLine);
-            List<SourceCodeAnalysis.Suggestion> suggestions = shell.sourceCodeAnalysis()
-                    .completionSuggestions(currentLine, currentLine.length(), new int[1]);
-            /*List<String> completedTokens = new ArrayList<>();
+            String currentLine = this.getCompletionContext(textEditor, snippets);
+            List<Completion> indexed = this.completeFromIndex(currentLine, analysisShell, provider);
+            if (indexed != null && !this.isName(currentLine)) {
+                provider.publish(indexed);
+                return true;
+            }
+            String key = this.getCompletionKey(analysisShell, currentLine);
+            List<Completion> cached = provider.getCache().get(key);
+            if (cached != null) {
+                provider.publish(this.merge(indexed, cached));
+                return true;
+            }
+            int[] anchor = new int[1];
+            List<SourceCodeAnalysis.Suggestion> suggestions = analysisShell.completionSuggestions(
+                    currentLine, currentLine.length(), anchor
+            );
+            String replaced = currentLine.substring(0, anchor[0]);
+            List<Completion> completions = new ArrayList<>();
             for (SourceCodeAnalysis.Suggestion suggestion : suggestions) {
-                String completed = this.completeWord(currentLine, suggestion.continuation());
-                if (currentLine.contains("."))
-                    completedTokens.add(
-                            StringEscapeUtils.unescapeJava(
-                                    currentLine.substring(0, currentLine.lastIndexOf('.') + 1) + completed
-                            )
-                    );
-                else
-                    completedTokens.add(StringEscapeUtils.unescapeJava(completed));
+                completions.add(this.createCompletion(provider, suggestion.continuation(), null,
+                        replaced + suggestion.continuation(), analysisShell));
             }
-            List<SourceCodeAnalysis.Documentation> documentationList = new ArrayList<>();
-            for (String completedToken : completedTokens) {
-                List<SourceCodeAnalysis.Documentation> documentation = shell.sourceCodeAnalysis().documentation(
-                        completedToken, completedToken.length(), true
-                );
-                documentationList.addAll(documentation);
-            }*/
+            if (indexed == null)
+                provider.getCache().put(key, provider.publish(completions));
+            else {
+                provider.getCache().put(key, completions);
+                provider.publish(this.merge(indexed, completions));
+            }
+            this.prefetchDocumentation(completions);
+        } catch (BadLocationException e) {
+            return false;
+        }
+        return true;
+    }
 
-            this.provider.clear();
-            List<Completion> completions = new ArrayList<>();
-            for (int i = 0; i < suggestions.size(); i++) {
-                SourceCodeAnalysis.Suggestion suggestion = suggestions.get(i);
-                /*SourceCodeAnalysis.Documentation documentation = documentationList.get(i);
-                BasicCompletion basicCompletion = new BasicCompletion(
-                        provider, suggestion.continuation(), documentation.signature(),
-                        HtmlUtilities.convertJavaDoc(documentation.javadoc())
-                );
-                completions.add(basicCompletion);*/
-                completions.add(new BasicCompletion(this.provider, suggestion.continuation()));
+    /*
+     *  Answer from the completion cache right away, before the debounced
+     *  analysis gets to refresh it. The declarations may be one edit
+     *  behind, which the analysis corrects.
+     */
+    private void showCachedCompletions(TextEditor textEditor) {
+        AnalysisShell analysisShell = textEditor.getViewModel().getAnalysisShell();
+        SnapshotCompletionProvider provider = textEditor.getViewModel().getCompletionProvider();
+        if (provider == null) return;
+        try {
+            String context = this.getCompletionContext(textEditor, textEditor.getSnippets());
+            List<Completion> indexed = this.completeFromIndex(context, analysisShell, provider);
+            List<Completion> completions = indexed;
+            if ((indexed == null || this.isName(context)) && analysisShell != null &&
+                    analysisShell.getStateKey() != null) {
+                List<Completion> cached = provider.getCache().get(this.getCompletionKey(analysisShell, context));
+                if (cached != null)
+                    completions = this.merge(indexed, cached);
+            }
+            if (completions != null)
+                provider.publish(completions);
+        } catch (BadLocationException ignored) {
+        }
+    }
+
+    /*
+     *  Complete imports, type names and static members of known types from
+     *  the symbol index. Returns null if the context needs JShell, i.e. to
+     *  complete the members of an expression or a lower case name. Type
+     *  names are only part of the answer; see isName.
+     */
+    private List<Completion> completeFromIndex(String context, AnalysisShell analysisShell,
+                                               SnapshotCompletionProvider provider) {
+        String line = context.substring(context.lastIndexOf('\n') + 1);
+        SymbolTrie types = this.symbolIndex.getTypes();
+        SymbolTrie members = this.symbolIndex.getMembers();
+        Map<String, Completion> completions = new LinkedHashMap<>();
+        Matcher matcher = IMPORT.matcher(line);
+        if (matcher.find()) {
+            String qualifier = matcher.group(1);
+            String prefix = matcher.group(2) == null ? "" : matcher.group(2);
+            String start = qualifier == null ? prefix : qualifier + "." + prefix;
+            int segment = qualifier == null ? 0 : qualifier.length() + 1;
+            types.forEach(start, (name, kind, detail) -> {
+                if (kind == SymbolTrie.PACKAGE) {
+                    int end = name.indexOf('.', segment);
+                    String next = name.substring(segment, end < 0 ? name.length() : end);
+                    completions.putIfAbsent(next, this.createCompletion(provider, next, null, null, analysisShell));
+                }
+                return completions.size() < INDEX_COMPLETIONS;
+            });
+            if (qualifier != null) {
+                types.forEach(prefix, (name, kind, detail) -> {
+                    if (kind == SymbolTrie.CLASS && detail.equals(start.substring(0, segment) + name))
+                        completions.putIfAbsent(name,
+                                this.createCompletion(provider, name, detail, detail, analysisShell));
+                    return completions.size() < INDEX_COMPLETIONS;
+                });
+                String owner = qualifier.substring(qualifier.lastIndexOf('.') + 1);
+                this.addMembers(members, owner, prefix, qualifier, completions, analysisShell, provider);
+            }
+            return new ArrayList<>(completions.values());
+        }
+        matcher = STATIC_MEMBER.matcher(line);
+        if (matcher.find()) {
+            String owner = matcher.group(1);
+            if (!types.contains(owner)) return null;
+            this.addMembers(members, owner, matcher.group(2) == null ? "" : matcher.group(2), null, completions,
+                    analysisShell, provider);
+            return new ArrayList<>(completions.values());
+        }
+        matcher = TYPE_NAME.matcher(line);
+        if (matcher.find()) {
+            String prefix = matcher.group(1);
+            if (analysisShell != null) {
+                for (String name : analysisShell.getTypeNames()) {
+                    if (name.startsWith(prefix))
+                        completions.putIfAbsent(name, this.createCompletion(provider, name, null, name, analysisShell));
+                }
+            }
+            types.forEach(prefix, (name, kind, detail) -> {
+                if (kind == SymbolTrie.CLASS)
+                    completions.putIfAbsent(detail,
+                            this.createCompletion(provider, name, detail, detail, analysisShell));
+                return completions.size() < INDEX_COMPLETIONS;
+            });
+            return new ArrayList<>(completions.values());
+        }
+        return null;
+    }
+
+    /*
+     *  Whether the context ends in a name starting with a capital letter.
+     *  The index only knows the types such a name may be; constants,
+     *  variables and enum constants the script declares are up to JShell.
+     */
+    private boolean isName(String context) {
+        String line = context.substring(context.lastIndexOf('\n') + 1);
+        return !IMPORT.matcher(line).find() && TYPE_NAME.matcher(line).find();
+    }
+
+    /*
+     *  Types from the index first, then whatever else JShell suggests.
+     */
+    private List<Completion> merge(List<Completion> indexed, List<Completion> completions) {
+        if (indexed == null) return completions;
+        Map<String, Completion> merged = new LinkedHashMap<>();
+        for (Completion completion : indexed)
+            merged.putIfAbsent(completion.getReplacementText(), completion);
+        for (Completion completion : completions)
+            merged.putIfAbsent(completion.getReplacementText(), completion);
+        return new ArrayList<>(merged.values());
+    }
+
+    private void addMembers(SymbolTrie members, String owner, String prefix, String qualifiedOwner,
+                            Map<String, Completion> completions, AnalysisShell analysisShell,
+                            SnapshotCompletionProvider provider) {
+        int start = owner.length() + 1;
+        members.forEach(owner + "." + prefix, (name, kind, detail) -> {
+            if (qualifiedOwner == null || detail.equals(qualifiedOwner)) {
+                String member = name.substring(start) + (kind == SymbolTrie.METHOD ? "(" : "");
+                completions.putIfAbsent(member,
+                        this.createCompletion(provider, member, detail, detail + "." + member, analysisShell));
+            }
+            return completions.size() < INDEX_COMPLETIONS;
+        });
+    }
+
+    private Completion createCompletion(SnapshotCompletionProvider provider, String replacementText,
+                                        String shortDescription, String documentationCode,
+                                        AnalysisShell analysisShell) {
+        return new DocumentedCompletion(provider, replacementText, shortDescription, documentationCode,
+                analysisShell, this::getDocumentation);
+    }
+
+    /*
+     *  Documentation of a completion if it has been looked up before;
+     *  otherwise look it up in the background and return null. A newer
+     *  request replaces one that has not started yet.
+     */
+    private String getDocumentation(DocumentedCompletion completion) {
+        String documentation = this.documentationCache.get(this.getDocumentationKey(completion));
+        if (documentation == null)
+            this.lookUpDocumentation(List.of(completion));
+        return documentation;
+    }
+
+    /*
+     *  The same code may mean something else in another tab, or once the
+     *  tab's declarations have changed.
+     */
+    private String getDocumentationKey(DocumentedCompletion completion) {
+        AnalysisShell analysisShell = completion.getAnalysisShell();
+        return (analysisShell == null ? null : analysisShell.getStateKey()) + "\n" +
+                completion.getDocumentationCode();
+    }
+
+    private void prefetchDocumentation(List<Completion> completions) {
+        List<DocumentedCompletion> prefetched = new ArrayList<>();
+        for (Completion completion : completions) {
+            if (prefetched.size() == PREFETCHED_DOCUMENTATION) break;
+            if (completion instanceof DocumentedCompletion &&
+                    ((DocumentedCompletion) completion).getDocumentationCode() != null)
+                prefetched.add((DocumentedCompletion) completion);
+        }
+        if (!prefetched.isEmpty())
+            this.lookUpDocumentation(prefetched);
+    }
+
+    private void lookUpDocumentation(List<DocumentedCompletion> completions) {
+        try {
+            this.scheduler.submitCoalesced(TaskScheduler.Lane.ANALYSIS, this.documentationKey, () -> {
+                for (DocumentedCompletion completion : completions) {
+                    String code = completion.getDocumentationCode();
+                    String key = this.getDocumentationKey(completion);
+                    String documentation = this.documentationCache.get(key);
+                    if (documentation == null) {
+                        AnalysisShell analysisShell = completion.getAnalysisShell();
+                        if (analysisShell == null)
+                            analysisShell = this.analysisShells.stream().findAny().orElse(null);
+                        if (analysisShell == null) continue;
+                        try {
+                            documentation = this.renderDocumentation(analysisShell.documentation(code, code.length()));
+                        } catch (IllegalStateException e) {
+                            // The tab was closed underneath us
+                            continue;
+                        }
+                        this.documentationCache.put(key, documentation);
+                    }
+                    String summary = documentation;
+                    SwingUtilities.invokeLater(() -> completion.setSummary(summary));
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            this.logger.debug("Documentation lookup rejected", e);
+        }
+    }
+
+    private String renderDocumentation(List<SourceCodeAnalysis.Documentation> documentation) {
+        StringBuilder html = new StringBuilder();
+        for (SourceCodeAnalysis.Documentation overload : documentation) {
+            String rendered = this.javadocCache.get(overload.signature());
+            if (rendered == null) {
+                rendered = String.format("<div><b><code>%s</code></b></div>%s",
+                        HtmlUtilities.escape(overload.signature()), HtmlUtilities.convertJavaDoc(overload.javadoc()));
+                this.javadocCache.put(overload.signature(), rendered);
             }
-            this.provider.addCompletions(completions);
+            if (html.length() > 0)
+                html.append("<hr>");
+            html.append(rendered);
+        }
+        return html.toString();
+    }
+
+    /*
+     *  Type of the symbol under the mouse if it has been resolved for this
+     *  version of the document. Otherwise it is resolved in the background
+     *  and the tooltip is shown once that is done, if the mouse is still
+     *  there.
+     */
+    private String getHoverText(TextEditor textEditor, MouseEvent event) {
+        int offset = this.getSymbolStart(textEditor, textEditor.viewToModel2D(event.getPoint()));
+        if (offset < 0) return null;
+        long version = textEditor.getVersion();
+        String key = String.format("%d:%d:%d", System.identityHashCode(textEditor), version, offset);
+        TypeSolverService.Resolution resolution = this.hoverCache.get(key);
+        if (resolution != null) return resolution.getDescription();
+        Point point = event.getPoint();
+        this.resolveSymbol(textEditor, offset, version, resolved -> {
+            if (resolved == null) return;
+            this.hoverCache.put(key, resolved);
+            if (resolved.getDescription() != null && point.equals(textEditor.getMousePosition()))
+                ToolTipManager.sharedInstance().mouseMoved(new MouseEvent(textEditor, MouseEvent.MOUSE_MOVED,
+                        System.currentTimeMillis(), 0, point.x, point.y, 0, false));
+        });
+        return null;
+    }
+
+    /*
+     *  Move the caret to the declaration of the symbol at the caret, if the
+     *  script declares it.
+     */
+    public void goToDeclaration(TextEditor textEditor) {
+        int caret = textEditor.getCaretPosition();
+        int offset = this.getSymbolStart(textEditor, caret);
+        // The caret is often right after the name
+        if (offset < 0)
+            offset = this.getSymbolStart(textEditor, caret - 1);
+        if (offset < 0) return;
+        StatusBar statusBar = textEditor.getViewModel().getStatusBar();
+        this.resolveSymbol(textEditor, offset, textEditor.getVersion(), resolved -> {
+            if (resolved != null && resolved.getDeclarationOffset() >= 0 &&
+                    resolved.getDeclarationOffset() <= textEditor.getDocument().getLength()) {
+                textEditor.setCaretPosition(resolved.getDeclarationOffset());
+                textEditor.requestFocusInWindow();
+            } else if (resolved != null && resolved.getDescription() != null)
+                statusBar.setStatusLabel(String.format(
+                        this.resourceBundle.getString("s.is.declared.outside.this.script"), resolved.getDescription()
+                ));
+            else statusBar.setStatusLabel(this.resourceBundle.getString("no.declaration.found"));
+        });
+    }
+
+    /*
+     *  Resolve the symbol at an offset of the given document version in
+     *  the background and hand what was found to the EDT, or null if it
+     *  could not be resolved yet. Nothing is handed over once the document
+     *  has changed, and a newer request replaces one that has not started.
+     */
+    private void resolveSymbol(TextEditor textEditor, int offset, long version,
+                               Consumer<TypeSolverService.Resolution> then) {
+        ParseService parseService = textEditor.getViewModel().getParseService();
+        if (parseService == null) return;
+        try {
+            this.scheduler.submitCoalesced(TaskScheduler.Lane.ANALYSIS, this.symbolKey, () -> {
+                if (textEditor.getVersion() != version) return;
+                ParseService.Unit unit = parseService.getUnit(textEditor.getSnippets(),
+                        this.typeSolverService.getImports());
+                TypeSolverService.Resolution resolution = this.typeSolverService.resolve(unit, offset);
+                SwingUtilities.invokeLater(() -> {
+                    if (textEditor.getVersion() == version)
+                        then.accept(resolution);
+                });
+            });
+        } catch (RejectedExecutionException e) {
+            this.logger.debug("Symbol resolution rejected", e);
+        }
+    }
+
+    /*
+     *  Start of the identifier at an offset, or -1 if there is none.
+     */
+    private int getSymbolStart(TextEditor textEditor, int offset) {
+        Document document = textEditor.getDocument();
+        try {
+            if (offset < 0 || offset >= document.getLength() ||
+                    !Character.isJavaIdentifierPart(document.getText(offset, 1).charAt(0)))
+                return -1;
+            while (offset > 0 && Character.isJavaIdentifierPart(document.getText(offset - 1, 1).charAt(0)))
+                offset--;
+            return offset;
         } catch (BadLocationException e) {
-            throw new RuntimeException(e);
+            return -1;
         }
     }
 
-    private String completeWord(String complete, String suggestion) {
-        StringBuilder sb = new StringBuilder();
-        for (int i = 0; i < suggestion.length(); i++) {
-            if (i >= complete.length() || complete.charAt(i) != suggestion.charAt(i))
-                sb.append(suggestion.charAt(i));
+    /*
+     *  The code completion works on: the snippet at the caret up to the
+     *  caret, so that its local variables are in scope.
+     */
+    private String getCompletionContext(TextEditor textEditor, List<SourceSnippet> snippets) throws BadLocationException {
+        int caret = textEditor.getCaretPosition();
+        int start = textEditor.getLineStartOffsetOfCurrentLine();
+        for (SourceSnippet snippet : snippets) {
+            if (snippet.getStartOffset() <= caret && caret <= snippet.getEndOffset()) {
+                start = snippet.getStartOffset();
+                break;
+            }
         }
-        return sb.toString();
+        return textEditor.getText(start, caret - start);
+    }
+
+    private String getCompletionKey(AnalysisShell analysisShell, String context) {
+        // Indentation and line breaks do not change what completes
+        return analysisShell.getStateKey() + "\n" + WHITESPACE.matcher(context).replaceAll(" ");
     }
 
     public File setupTreeMouseListener(FileTree fileTree, MouseEvent event) {
@@ -289,101 +723,639 @@ public class EspressoPadController {
         }
     }
 
-    public void run(ViewModel viewModel, AbstractButton[] abstractButtons) {
-        for (AbstractButton abstractButton : abstractButtons)
-            abstractButton.setEnabled(false);
-        String code = viewModel.getTextEditor().getText();
+    private String getThroughput(MessageConsole console, long elapsedMillis) {
+        double seconds = Math.max(elapsedMillis, 1) / 1000.0;
+        return String.format(this.resourceBundle.getString("d.lines.s.s.s"),
+                Math.round(console.getLineCount() / seconds),
+                Utilities.formatBytes(Math.round(console.getByteCount() / seconds)));
+    }
+
+    private String getOutputPolicyLabel(RunConfiguration runConfiguration, MessageConsole console) {
+        return String.format(this.resourceBundle.getString(runConfiguration.getOutputPolicy().getStatusKey()),
+                console.getAffectedLines());
+    }
+
+    private void clearProfile(ViewModel viewModel) {
+        if (viewModel.getTextEditor().getScrollPane() != null) {
+            viewModel.getTextEditor().getScrollPane().getGutter().removeAllTrackingIcons();
+            if (viewModel.getDiagnosticsParser() != null)
+                viewModel.getDiagnosticsParser().showGutterMarkers();
+        }
+        viewModel.getProfilePanel().setProfiles(List.of());
+    }
+
+    /*
+     *  Mark every profiled snippet in the gutter, coloured from cool to hot
+     *  by its share of the slowest snippet's wall time.
+     */
+    private void showProfile(ViewModel viewModel, List<SnippetProfile> profiles) {
+        viewModel.getProfilePanel().setProfiles(profiles);
+        if (viewModel.getTextEditor().getScrollPane() == null || profiles.isEmpty()) return;
+        viewModel.getTextEditor().getScrollPane().setIconRowHeaderEnabled(true);
+        Gutter gutter = viewModel.getTextEditor().getScrollPane().getGutter();
+        long slowest = profiles.stream().mapToLong(SnippetProfile::getWallNanos).max().orElse(1);
+        for (SnippetProfile profile : profiles) {
+            float heat = slowest == 0 ? 0 : (float) profile.getWallNanos() / slowest;
+            Color color = Color.getHSBColor((1 - heat) / 3, 0.85f, 0.85f);
+            StringBuilder tooltip = new StringBuilder(String.format(
+                    this.resourceBundle.getString("wall.1f.ms"), profile.getWallNanos() / 1e6
+            ));
+            if (profile.getCpuNanos() >= 0)
+                tooltip.append(", ").append(String.format(this.resourceBundle.getString("cpu.1f.ms"),
+                        profile.getCpuNanos() / 1e6));
+            if (profile.getAllocatedBytes() >= 0)
+                tooltip.append(", ").append(String.format(this.resourceBundle.getString("allocated.s"),
+                        Utilities.formatBytes(profile.getAllocatedBytes())));
+            if (profile.getGcCount() > 0)
+                tooltip.append(", ").append(String.format(this.resourceBundle.getString("d.gcs.d.ms"),
+                        profile.getGcCount(), profile.getGcMillis()));
+            try {
+                gutter.addLineTrackingIcon(profile.getSnippet().getStartLine() - 1,
+                        FontIcon.of(FontAwesomeSolid.STOPWATCH, 12, color), tooltip.toString());
+            } catch (BadLocationException e) {
+                // The snippet was edited away while the run was going on
+                this.logger.debug("Could not mark snippet at line {}", profile.getSnippet().getStartLine(), e);
+            }
+        }
+    }
+
+    /*
+     *  Run a tab that is not running already. Must be called on the event
+     *  dispatch thread.
+     */
+    public RunHandle run(ViewModel viewModel) {
+        List<SourceSnippet> snippets = viewModel.getTextEditor().getSnippets();
         JTextPane resultView = viewModel.getResultView();
-        resultView.setText("");
+        ResultPanel resultPanel = viewModel.getResultPanel();
+        resultPanel.clear();
 
-        JProgressBar progressBar = viewModel.getStatusBar().getProgressBar();
+        StatusBar statusBar = viewModel.getStatusBar();
+        JProgressBar progressBar = statusBar.getProgressBar();
         progressBar.setIndeterminate(true);
-        viewModel.getStatusBar().setStatusLabel(this.resourceBundle.getString("running"));
-        MessageConsole stderrConsole = new MessageConsole(resultView);
-        MessageConsole stdoutConsole = new MessageConsole(resultView);
+        statusBar.setStatusLabel(this.resourceBundle.getString("running"));
+        // Both streams share one console so their output keeps its order
+        MessageConsole console = new MessageConsole(resultView);
+        RunConfiguration runConfiguration = viewModel.getRunConfiguration();
+        console.setOutputPolicy(runConfiguration.getOutputPolicy(), OUTPUT_BACKLOG_CHARACTERS,
+                runConfiguration.getSampleInterval(), runConfiguration.getKeptLines());
+        SettingsModel settings = this.handler.parseSettingsXml();
+        if (settings == null)
+            settings = new SettingsModel();
+        if (settings.isConsoleBounded())
+            console.setMessageLimit(settings.getConsoleMaxLines(), settings.getConsoleMaxKilobytes() * 1024,
+                    resultPanel::setDroppedLines);
+        else console.setOverflow(resultPanel.getOutputViewer(), OVERFLOW_CHARACTERS, resultPanel::showViewer);
+        boolean profiling = viewModel.getRunConfiguration().isProfiling();
+        this.clearProfile(viewModel);
+
+        RunHandle handle = new RunHandle(viewModel);
+        viewModel.setRunHandle(handle);
+        this.runStateListener.run();
+        Timer elapsedTimer = new Timer(100, event -> {
+            statusBar.setElapsedTime(Utilities.formatDuration(handle.getElapsedMillis()));
+            statusBar.setThroughput(this.getThroughput(console, handle.getElapsedMillis()));
+            statusBar.setOutputPolicy(this.getOutputPolicyLabel(runConfiguration, console));
+        });
+        elapsedTimer.start();
+        int timeoutSeconds = viewModel.getRunConfiguration().getTimeoutSeconds();
+        if (timeoutSeconds > 0)
+            handle.setTimeout(this.scheduler.schedule(
+                    TaskScheduler.Lane.WATCHDOG, () -> this.stop(handle, RunState.TIMED_OUT), timeoutSeconds, TimeUnit.SECONDS
+            ));
+
+        JShellPool shellPool = this.getShellPool(viewModel.getRunConfiguration());
+        Charset charset = this.getCharset(viewModel.getRunConfiguration());
+        String inputText = runConfiguration.getInputSource() == InputSource.TEXT ? viewModel.getInputPanel().getText() : null;
+        Runnable task = new Runnable() {
+            private boolean failed = false;
+            private String summary;
+            private SnippetCache.Context cacheContext;
+            private SnippetProfiler profiler;
 
-        Executors.newSingleThreadExecutor().submit(new Runnable() {
             @Override
             public void run() {
-                try (ConsoleOutputStream consoleOutputStream = stdoutConsole.redirectOut(Color.black, null);
-                     ConsoleOutputStream consoleErrorStream = stderrConsole.redirectErr(new Color(0xB22222), null);
-                     ConsoleInputStream consoleInputStream = new ConsoleInputStream(viewModel.getStatusBar());
-                     PrintStream out = new PrintStream(consoleOutputStream, true);
-                     PrintStream errStream = new PrintStream(consoleErrorStream, true);
-                     JShell shell = JShell.builder().out(out).err(errStream).in(consoleInputStream).build()) {
-
-                    EspressoPadController.this.addArtifactsAndImports(shell);
-                    SourceCodeAnalysis.CompletionInfo completion = shell.sourceCodeAnalysis().analyzeCompletion(code);
-                    List<SnippetEvent> l = shell.eval(EspressoPadController.this.handler.parseImportXml()
-                            .stream()
-                            .map(imports -> String.format("import %s;", imports))
-                            .collect(Collectors.joining()));
-
-                    while (!completion.source().isBlank()) {
-                        List<SnippetEvent> snippets = shell.eval(completion.source());
-
-                        for (var snippet : snippets) {
-                            // Check the status of the evaluation
-                            String src = snippet.snippet().source().trim();
-                            switch (snippet.status()) {
-                                case VALID:
-                                    EspressoPadController.this.logger.debug(src);
-                                    break;
-                                case REJECTED: //Compile time errors
-                                    List<String> errors = shell.diagnostics(snippet.snippet())
-                                            .map(x -> String.format("\n\"%s\" -> %s\n", src,
-                                                    x.getMessage(Locale.ENGLISH)))
-                                            .collect(Collectors.toList());
-                                    EspressoPadController.this.logger.error(
-                                            EspressoPadController.this.resourceBundle.getString(
-                                                    "code.evaluation.failed.diagnostic.info"
-                                            ), errors
-                                    );
-                                    errStream.println(errors);
-                            }
-                            //Runtime errors
-                            if (snippet.exception() != null) {
-                                EspressoPadController.this.logger.error(
-                                        EspressoPadController.this.resourceBundle.getString("code.evaluation.failed.at"),
-                                        src
-                                );
-                                errStream.printf(
-                                        EspressoPadController.this.resourceBundle.getString(
-                                                "code.evaluation.failed.at.s.diagnostic.info"
-                                        ),
-                                        src
-                                );
-                                snippet.exception().printStackTrace(errStream);
-                                EspressoPadController.this.logger.error(
-                                        EspressoPadController.this.resourceBundle.getString("evaluation.error"),
-                                        snippet.exception()
-                                );
-                                try {
-                                    throw snippet.exception();
-                                } catch (JShellException e) {
-                                    throw new RuntimeException(e);
+                EspressoPadController controller = EspressoPadController.this;
+                IncrementalSession session = null;
+                JShellPool.PooledShell pooledShell = null;
+                boolean evaluated = false;
+                OutputFile tee = null;
+                String teeError = null;
+                if (!runConfiguration.getTeeFile().isBlank()) {
+                    try {
+                        tee = new OutputFile(Path.of(runConfiguration.getTeeFile()));
+                    } catch (IOException | InvalidPathException e) {
+                        controller.logger.error("Could not open {}", runConfiguration.getTeeFile(), e);
+                        teeError = String.format(controller.resourceBundle.getString("could.not.write.output.to.s"),
+                                runConfiguration.getTeeFile());
+                    }
+                }
+                ConsoleInputStream input;
+                String inputError = null;
+                try {
+                    input = controller.openInput(runConfiguration, inputText, statusBar, charset);
+                } catch (IOException | InvalidPathException e) {
+                    controller.logger.error("Could not open {}", runConfiguration.getInputFile(), e);
+                    inputError = String.format(controller.resourceBundle.getString("could.not.read.input.from.s"),
+                            runConfiguration.getInputFile());
+                    input = new ConsoleInputStream("", charset);
+                }
+                try (ConsoleOutputStream consoleOutputStream = console.redirectOut(Color.black, null, charset);
+                     ConsoleOutputStream consoleErrorStream = console.redirectErr(new Color(0xB22222), null, charset);
+                     ConsoleInputStream consoleInputStream = input;
+                     PrintStream errStream = new PrintStream(consoleErrorStream, true, charset)) {
+
+                    consoleOutputStream.setTee(tee);
+                    consoleErrorStream.setTee(tee);
+                    if (teeError != null)
+                        errStream.println(teeError);
+                    if (inputError != null)
+                        errStream.println(inputError);
+                    if (runConfiguration.isEchoInput())
+                        consoleInputStream.setEcho(consoleOutputStream);
+                    if (viewModel.getRunConfiguration().isIncremental()) {
+                        session = controller.openSession(viewModel);
+                        pooledShell = session.getShell();
+                    } else pooledShell = shellPool.borrow();
+                    pooledShell.bind(consoleOutputStream, consoleErrorStream, consoleInputStream);
+                    String engine = String.format(controller.resourceBundle.getString("s.started.in.d.ms"),
+                            controller.resourceBundle.getString(pooledShell.getEngine().getKey()),
+                            pooledShell.getStartupMillis());
+                    SwingUtilities.invokeLater(() -> statusBar.setEngine(engine));
+                    handle.setShell(pooledShell);
+                    JShell shell = pooledShell.getShell();
+                    if (profiling) {
+                        // The profiler declares its probe in the shell, so the shell is not clean anymore
+                        evaluated = true;
+                        this.profiler = new SnippetProfiler(shell, pooledShell.getEngine());
+                    }
+                    try {
+                        if (session != null) {
+                            int count = session.update(snippets, snippet -> {
+                                if (this.failed || handle.isStopRequested()) return null;
+                                List<SnippetEvent> events = this.evaluate(shell, snippet);
+                                this.failed = controller.reportEvents(shell, snippet, events, handle, errStream);
+                                return events;
+                            });
+                            this.summary = String.format(controller.resourceBundle.getString("re.evaluated.d.of.d.snippets"),
+                                    count, snippets.size());
+                        } else {
+                            if (controller.snippetCache.isEnabled())
+                                this.cacheContext = controller.snippetCache.newContext();
+                            for (SourceSnippet snippet : snippets) {
+                                if (this.failed || handle.isStopRequested()) break;
+                                evaluated = true;
+                                String key = null;
+                                if (this.cacheContext != null) {
+                                    key = this.cacheContext.keyFor(snippet.getSource());
+                                    if (this.cacheContext.apply(shell, key)) continue;
                                 }
+                                List<SnippetEvent> events = this.evaluate(shell, snippet);
+                                this.failed = controller.reportEvents(shell, snippet, events, handle, errStream);
+                                if (this.cacheContext != null)
+                                    this.cacheContext.evaluated(snippet.getSource(), key, events);
                             }
                         }
-                        if (!completion.remaining().isBlank())
-                            completion = shell.sourceCodeAnalysis().analyzeCompletion(completion.remaining());
-                        else break;
+                    } catch (IllegalStateException e) {
+                        // The shell is closed underneath us when a stop request escalates
+                        if (!handle.isStopRequested()) throw e;
                     }
+                    if (handle.isStopRequested())
+                        errStream.println(controller.getStopMessage(handle));
                 } catch (IOException e) {
                     throw new RuntimeException(e);
                 } finally {
-                    progressBar.setValue(progressBar.getMinimum());
-                    progressBar.setIndeterminate(false);
-                    viewModel.getStatusBar().setStatusLabel(EspressoPadController.this.resourceBundle.getString("ready"));
-                    for (AbstractButton abstractButton : abstractButtons)
-                        abstractButton.setEnabled(true);
+                    ThreadRoutedStreams.clear();
+                    console.close();
+                    if (tee != null) {
+                        try {
+                            tee.close();
+                        } catch (IOException e) {
+                            controller.logger.error("Could not write output to {}", tee.getPath(), e);
+                        }
+                    }
+                    handle.finish(this.failed);
+                    SnippetCache.Context cacheContext = this.cacheContext;
+                    List<SnippetProfile> profiles = this.profiler == null ? null : this.profiler.getProfiles();
+                    if (cacheContext != null)
+                        controller.snippetCache.compileLater(cacheContext);
+                    if (session != null) {
+                        pooledShell.unbind();
+                        if (pooledShell.isClosed())
+                            controller.closeSession(viewModel);
+                        else if (viewModel.getIncrementalSession() != session)
+                            session.close();
+                    } else if (pooledShell != null) {
+                        if (evaluated)
+                            shellPool.discard(pooledShell);
+                        else shellPool.giveBack(pooledShell);
+                    }
+                    SwingUtilities.invokeLater(new Runnable() {
+                        @Override
+                        public void run() {
+                            elapsedTimer.stop();
+                            statusBar.setElapsedTime(Utilities.formatDuration(handle.getElapsedMillis()));
+                            statusBar.setThroughput(controller.getThroughput(console, handle.getElapsedMillis()));
+                            statusBar.setOutputPolicy(controller.getOutputPolicyLabel(runConfiguration, console));
+                            progressBar.setValue(progressBar.getMinimum());
+                            progressBar.setIndeterminate(false);
+                            String label = controller.getStateLabel(handle.getState());
+                            if (summary != null && handle.getState() == RunState.COMPLETED)
+                                label = String.format("%s - %s", label, summary);
+                            statusBar.setStatusLabel(label);
+                            if (cacheContext != null)
+                                statusBar.setCacheStatistics(String.format(
+                                        controller.resourceBundle.getString("cache.d.hits.d.misses"),
+                                        cacheContext.getHits(), cacheContext.getMisses()
+                                ));
+                            if (profiles != null)
+                                controller.showProfile(viewModel, profiles);
+                            controller.runStateListener.run();
+                        }
+                    });
+                }
+            }
+
+            private List<SnippetEvent> evaluate(JShell shell, SourceSnippet snippet) {
+                if (this.profiler == null)
+                    return shell.eval(snippet.getSource());
+                long[] before = this.profiler.sample();
+                long start = System.nanoTime();
+                List<SnippetEvent> events = shell.eval(snippet.getSource());
+                this.profiler.record(snippet, start, before);
+                return events;
+            }
+        };
+        try {
+            handle.setFuture(this.scheduler.submit(TaskScheduler.Lane.EXECUTION, task));
+        } catch (RejectedExecutionException e) {
+            this.logger.error(this.resourceBundle.getString("too.many.runs.queued"), viewModel.getTitle());
+            handle.finish(true);
+            elapsedTimer.stop();
+            console.close();
+            progressBar.setIndeterminate(false);
+            statusBar.setStatusLabel(this.resourceBundle.getString("too.many.runs.queued.try.again.later"));
+            this.runStateListener.run();
+        }
+        return handle;
+    }
+
+    /*
+     *  Run every given tab on its own shell, at most as many at a time as
+     *  there are cores. Must be called on the event dispatch thread; the
+     *  callback is told about every run as it starts. Tabs that are still
+     *  running when their turn comes are skipped, as are the ones left
+     *  once cancelled is true. The returned future completes when every
+     *  started run has finished.
+     */
+    public CompletableFuture<Void> runAll(List<ViewModel> viewModels, Consumer<RunHandle> started,
+                                          BooleanSupplier cancelled) {
+        CompletableFuture<Void> all = new CompletableFuture<>();
+        Deque<ViewModel> queue = new ArrayDeque<>(viewModels);
+        int limit = Math.min(Runtime.getRuntime().availableProcessors(), TaskScheduler.Lane.EXECUTION.getThreads());
+        AtomicInteger remaining = new AtomicInteger(viewModels.size());
+        if (viewModels.isEmpty()) all.complete(null);
+        Runnable next = new Runnable() {
+            @Override
+            public void run() {
+                if (cancelled.getAsBoolean()) {
+                    while (queue.poll() != null) {
+                        if (remaining.decrementAndGet() == 0) all.complete(null);
+                    }
+                    return;
+                }
+                ViewModel viewModel = queue.poll();
+                while (viewModel != null && viewModel.isRunning()) {
+                    if (remaining.decrementAndGet() == 0) all.complete(null);
+                    viewModel = queue.poll();
+                }
+                if (viewModel == null) return;
+                RunHandle handle = EspressoPadController.this.run(viewModel);
+                started.accept(handle);
+                handle.getCompletion().whenComplete((state, e) -> SwingUtilities.invokeLater(() -> {
+                    if (remaining.decrementAndGet() == 0) all.complete(null);
+                    else this.run();
+                }));
+            }
+        };
+        for (int i = 0; i < limit; i++)
+            next.run();
+        return all;
+    }
+
+    /*
+     *  Evaluate the whole tab from scratch, dropping the state an
+     *  incremental session has built up.
+     */
+    public void rerun(ViewModel viewModel) {
+        if (viewModel.isRunning()) return;
+        this.closeSession(viewModel);
+        this.run(viewModel);
+    }
+
+    /*
+     *  Print compile and runtime errors of an evaluation, pointing at the
+     *  editor lines they come from. Returns true if a snippet threw, which
+     *  ends the run.
+     */
+    private boolean reportEvents(JShell shell, SourceSnippet sourceSnippet, List<SnippetEvent> snippets,
+                                 RunHandle handle, PrintStream errStream) {
+        for (var snippet : snippets) {
+            // Check the status of the evaluation
+            String src = snippet.snippet().source().trim();
+            int base = Math.max(0, sourceSnippet.getSource().indexOf(snippet.snippet().source()));
+            switch (snippet.status()) {
+                case VALID:
+                    this.logger.debug(src);
+                    break;
+                case REJECTED: //Compile time errors
+                    List<String> errors = shell.diagnostics(snippet.snippet())
+                            .map(x -> String.format(this.resourceBundle.getString("line.d.s.s"),
+                                    sourceSnippet.getLine(base + (int) x.getStartPosition()), src,
+                                    x.getMessage(Locale.ENGLISH)))
+                            .collect(Collectors.toList());
+                    this.logger.error(this.resourceBundle.getString("code.evaluation.failed.diagnostic.info"), errors);
+                    errStream.println(errors);
+            }
+            //Runtime errors
+            if (snippet.exception() != null && !handle.isStopRequested()) {
+                this.logger.error(this.resourceBundle.getString("code.evaluation.failed.at"), src);
+                errStream.printf(this.resourceBundle.getString("code.evaluation.failed.at.line.d.s.diagnostic.info"),
+                        sourceSnippet.getLine(base), src);
+                snippet.exception().printStackTrace(errStream);
+                this.logger.error(this.resourceBundle.getString("evaluation.error"), snippet.exception());
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private IncrementalSession openSession(ViewModel viewModel) {
+        JShellPool shellPool = this.getShellPool(viewModel.getRunConfiguration());
+        IncrementalSession session = viewModel.getIncrementalSession();
+        if (session != null && !shellPool.isCurrent(session.getShell())) {
+            this.closeSession(viewModel);
+            session = null;
+        }
+        if (session == null) {
+            session = new IncrementalSession(shellPool.borrow());
+            viewModel.setIncrementalSession(session);
+            this.sessions.add(session);
+        }
+        return session;
+    }
+
+    private void closeSession(ViewModel viewModel) {
+        IncrementalSession session = viewModel.getIncrementalSession();
+        if (session == null) return;
+        viewModel.setIncrementalSession(null);
+        this.sessions.remove(session);
+        RunHandle handle = viewModel.getRunHandle();
+        // A running session is closed by the run itself once it notices the dead shell
+        if (handle != null && !handle.isFinished() && handle.getShell() == session.getShell())
+            this.stop(handle, RunState.STOPPED);
+        else session.close();
+    }
+
+    private ConsoleInputStream openInput(RunConfiguration runConfiguration, String inputText, StatusBar statusBar,
+                                         Charset charset) throws IOException {
+        switch (runConfiguration.getInputSource()) {
+            case TEXT:
+                return new ConsoleInputStream(inputText, charset);
+            case FILE:
+                return new ConsoleInputStream(Path.of(runConfiguration.getInputFile()));
+            default:
+                return new ConsoleInputStream(statusBar, charset);
+        }
+    }
+
+    /*
+     *  Write the output of the tab's last run to a file, compressed if its
+     *  name ends in .gz. Spilled output is copied file to file; the text
+     *  pane is encoded a segment at a time rather than as one string.
+     */
+    public void exportOutput(ViewModel viewModel, File file) {
+        ResultPanel resultPanel = viewModel.getResultPanel();
+        StatusBar statusBar = viewModel.getStatusBar();
+        Path spillPath = resultPanel.isShowingViewer() ? resultPanel.getOutputViewer().getSpillPath() : null;
+        long spilledBytes = resultPanel.getOutputViewer().getSpilledBytes();
+        Document document = viewModel.getResultView().getDocument();
+        statusBar.setStatusLabel(this.resourceBundle.getString("exporting.output"));
+        this.scheduler.submit(TaskScheduler.Lane.IO, () -> {
+            String status;
+            try (OutputFile outputFile = new OutputFile(file.toPath())) {
+                if (spillPath != null)
+                    outputFile.transferFrom(spillPath, spilledBytes);
+                else this.writeDocument(document, outputFile);
+                status = String.format(this.resourceBundle.getString("output.exported.to.s"), file.getName());
+            } catch (IOException e) {
+                this.logger.error("Could not export output to {}", file, e);
+                status = String.format(this.resourceBundle.getString("could.not.write.output.to.s"), file.getName());
+            }
+            String label = status;
+            SwingUtilities.invokeLater(() -> statusBar.setStatusLabel(label));
+        });
+    }
+
+    private void writeDocument(Document document, OutputFile outputFile) throws IOException {
+        IOException[] failure = new IOException[1];
+        document.render(() -> {
+            CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder();
+            ByteBuffer bytes = ByteBuffer.allocate(1 << 16);
+            Segment segment = new Segment();
+            segment.setPartialReturn(true);
+            int offset = 0;
+            int length = document.getLength();
+            try {
+                while (offset < length) {
+                    document.getText(offset, length - offset, segment);
+                    CharBuffer chars = CharBuffer.wrap(segment.array, segment.offset, segment.count);
+                    while (encoder.encode(chars, bytes, false).isOverflow())
+                        this.writeBytes(bytes, outputFile);
+                    this.writeBytes(bytes, outputFile);
+                    // A surrogate pair split across segments is read again with the next one
+                    offset += segment.count - chars.remaining();
+                    if (chars.remaining() == segment.count) break;
                 }
+                encoder.encode(CharBuffer.allocate(0), bytes, true);
+                encoder.flush(bytes);
+                this.writeBytes(bytes, outputFile);
+            } catch (BadLocationException e) {
+                failure[0] = new IOException(e);
+            } catch (IOException e) {
+                failure[0] = e;
             }
         });
+        if (failure[0] != null)
+            throw failure[0];
+    }
+
+    private void writeBytes(ByteBuffer bytes, OutputFile outputFile) throws IOException {
+        bytes.flip();
+        outputFile.write(bytes);
+        bytes.clear();
+    }
+
+    /*
+     *  Release everything a tab holds on to when it is closed.
+     */
+    public void closeTab(ViewModel viewModel) {
+        this.stop(viewModel);
+        this.releaseTab(viewModel);
+    }
+
+    /*
+     *  Release the analysis and incremental state of a tab that has been
+     *  replaced by another, e.g. when it was reopened under the file it was
+     *  saved as. Unlike closeTab this leaves its run alone.
+     */
+    public void releaseTab(ViewModel viewModel) {
+        this.analysisService.forget(viewModel.getTextEditor());
+        AnalysisShell analysisShell = viewModel.getAnalysisShell();
+        if (analysisShell != null) {
+            viewModel.setAnalysisShell(null);
+            this.analysisShells.remove(analysisShell);
+            analysisShell.close();
+        }
+        this.closeSession(viewModel);
+        viewModel.getResultPanel().getOutputViewer().clear();
+    }
+
+    public void stop(ViewModel viewModel) {
+        RunHandle handle = viewModel.getRunHandle();
+        if (handle != null)
+            this.stop(handle, RunState.STOPPED);
+    }
+
+    /*
+     *  Ask JShell to stop the running snippet first. If it has not returned
+     *  after a grace period the shell, and with it the remote VM, is killed.
+     *  An in-process run has no VM of its own to kill, so the user is told
+     *  it could not be stopped and the tab stays busy until it returns.
+     */
+    private void stop(RunHandle handle, RunState reason) {
+        if (!handle.requestStop(reason)) return;
+        JShellPool.PooledShell pooledShell = handle.getShell();
+        if (pooledShell != null) {
+            try {
+                pooledShell.getShell().stop();
+            } catch (IllegalStateException ignored) {
+            }
+        }
+        this.scheduler.schedule(TaskScheduler.Lane.WATCHDOG, () -> {
+            if (handle.isFinished()) return;
+            JShellPool.PooledShell shell = handle.getShell();
+            if (shell != null && shell.getEngine() == ExecutionEngine.LOCAL) {
+                this.logger.warn(this.resourceBundle.getString("in.process.run.of.did.not.respond.to.stop"),
+                        handle.getViewModel().getTitle());
+                SwingUtilities.invokeLater(() -> {
+                    if (!handle.isFinished())
+                        handle.getViewModel().getStatusBar().setStatusLabel(
+                                this.resourceBundle.getString("could.not.stop.the.in.process.run"));
+                });
+                return;
+            }
+            this.logger.warn(this.resourceBundle.getString("killing.unresponsive.run"), handle.getViewModel().getTitle());
+            handle.kill();
+        }, STOP_GRACE_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    private String getStopMessage(RunHandle handle) {
+        if (handle.getStopReason() == RunState.TIMED_OUT)
+            return String.format(this.resourceBundle.getString("run.timed.out.after.d.seconds"),
+                    handle.getViewModel().getRunConfiguration().getTimeoutSeconds());
+        return this.resourceBundle.getString("run.stopped");
+    }
+
+    private String getStateLabel(RunState state) {
+        switch (state) {
+            case STOPPED:
+                return this.resourceBundle.getString("stopped");
+            case TIMED_OUT:
+                return this.resourceBundle.getString("timed.out");
+            default:
+                return this.resourceBundle.getString("ready");
+        }
+    }
+
+    public RunConfiguration loadRunConfiguration(ViewModel viewModel) {
+        String key = this.getRunConfigurationKey(viewModel);
+        SettingsModel settings = this.handler.parseSettingsXml();
+        RunConfiguration runConfiguration = settings == null ? null : settings.findRunConfiguration(key);
+        if (runConfiguration == null)
+            runConfiguration = new RunConfiguration(key);
+        viewModel.setRunConfiguration(runConfiguration);
+        return runConfiguration;
+    }
+
+    public void saveRunConfiguration(ViewModel viewModel) {
+        RunConfiguration runConfiguration = viewModel.getRunConfiguration();
+        runConfiguration.setFile(this.getRunConfigurationKey(viewModel));
+        SettingsModel settings = this.handler.parseSettingsXml();
+        if (settings == null)
+            settings = new SettingsModel();
+        settings.putRunConfiguration(runConfiguration);
+        this.handler.writeSettingsXml(settings);
+    }
+
+    private String getRunConfigurationKey(ViewModel viewModel) {
+        File backingFile = viewModel.getBackingFile();
+        return backingFile == null ? viewModel.getTitle() : backingFile.getPath();
+    }
+
+    /*
+     *  The charset the run's output arrives in. In-process snippets write
+     *  through EspressoPad's own standard streams, which use the default.
+     */
+    private Charset getCharset(RunConfiguration runConfiguration) {
+        if (runConfiguration.getEngine() == ExecutionEngine.LOCAL)
+            return Charset.defaultCharset();
+        try {
+            return Charset.forName(runConfiguration.getCharset());
+        } catch (IllegalArgumentException e) {
+            this.logger.warn("Unknown charset {}, using UTF-8", runConfiguration.getCharset());
+            return StandardCharsets.UTF_8;
+        }
+    }
+
+    /*
+     *  Pools are created on first use per engine and set of remote VM
+     *  options. Only the default engine keeps more than one shell warm.
+     */
+    private JShellPool getShellPool(RunConfiguration runConfiguration) {
+        ExecutionEngine engine = runConfiguration.getEngine();
+        List<String> remoteVmOptions = new ArrayList<>();
+        if (engine == ExecutionEngine.REMOTE) {
+            String charset = this.getCharset(runConfiguration).name();
+            remoteVmOptions.addAll(List.of("-Dfile.encoding=" + charset, "-Dstdout.encoding=" + charset,
+                    "-Dstderr.encoding=" + charset));
+            if (!runConfiguration.getRemoteVmOptions().isBlank())
+                remoteVmOptions.addAll(List.of(runConfiguration.getRemoteVmOptions().trim().split("\\s+")));
+        }
+        boolean isDefault = engine == ExecutionEngine.REMOTE && runConfiguration.getRemoteVmOptions().isBlank();
+        return this.shellPools.computeIfAbsent(String.format("%s %s", engine, remoteVmOptions), key ->
+                new JShellPool(isDefault ? 2 : 1, engine, remoteVmOptions, this::addArtifactsAndImports));
+    }
+
+    public void clearSnippetCache() {
+        this.scheduler.submit(TaskScheduler.Lane.IO, this.snippetCache::clear);
+    }
+
+    public void reloadConfiguration() {
+        this.symbolIndex.refresh();
+        this.typeSolverService.refresh();
+        for (JShellPool shellPool : this.shellPools.values())
+            shellPool.rebuild();
     }
 
     public void close() {
-        shell.close();
+        for (IncrementalSession session : this.sessions)
+            session.close();
+        this.sessions.clear();
+        for (JShellPool shellPool : this.shellPools.values())
+            shellPool.close();
+        for (AnalysisShell analysisShell : this.analysisShells)
+            analysisShell.close();
+        this.analysisShells.clear();
     }
 
     private class TextEditorListener implements DocumentListener {
@@ -395,12 +1367,12 @@ public class EspressoPadController {
 
         @Override
         public void insertUpdate(DocumentEvent e) {
-            //setupTextChangeEvent(this.textEditor);
+            EspressoPadController.this.setupTextChangeEvent(this.textEditor);
         }
 
         @Override
         public void removeUpdate(DocumentEvent e) {
-            //setupTextChangeEvent(this.textEditor);
+            EspressoPadController.this.setupTextChangeEvent(this.textEditor);
         }
 
         @Override
@@ -0,0 +1,223 @@
+package com.github.espressopad.controller;
+
+import com.github.espressopad.models.SourceSnippet;
+import com.github.espressopad.utils.Utilities;
+import jdk.jshell.JShell;
+import jdk.jshell.MethodSnippet;
+import jdk.jshell.Snippet;
+import jdk.jshell.SnippetEvent;
+import jdk.jshell.TypeDeclSnippet;
+import jdk.jshell.VarSnippet;
+
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/*
+ *  Keeps a tab's shell alive between runs and remembers what every snippet
+ *  declared and referenced. On the next run only snippets whose source
+ *  changed, and snippets that depend on names those changes touched, are
+ *  evaluated again.
+ */
+public class IncrementalSession implements AutoCloseable {
+    private static final Pattern LITERALS_AND_COMMENTS = Pattern.compile(
+            "\"\"\"[\\s\\S]*?\"\"\"|\"(?:\\\\.|[^\"\\\\\\n])*\"|'(?:\\\\.|[^'\\\\\\n])*'|//[^\\n]*|/\\*[\\s\\S]*?\\*/"
+    );
+    private static final Pattern IDENTIFIER = Pattern.compile("\\b[\\p{L}_$][\\p{L}\\p{N}_$]*\\b");
+    // A name used as a receiver or assigned to, i.e. whose state a statement may have changed
+    private static final Pattern MUTATED = Pattern.compile(
+            "\\b([\\p{L}_$][\\p{L}\\p{N}_$]*)\\s*(?:\\.|\\[|\\+\\+|--|[-+*/%&|^]?=(?!=)|<<=|>>>?=)"
+    );
+    private final JShellPool.PooledShell shell;
+    private List<Entry> entries = new ArrayList<>();
+
+    IncrementalSession(JShellPool.PooledShell shell) {
+        this.shell = shell;
+    }
+
+    JShellPool.PooledShell getShell() {
+        return this.shell;
+    }
+
+    int getSnippetCount() {
+        return this.entries.size();
+    }
+
+    /*
+     *  Bring the shell up to date with the given snippets. The evaluator is
+     *  called for every snippet that has to run and returns null to abort
+     *  the pass; snippets that did not get to run are retried next time.
+     *  Returns the number of snippets that were evaluated.
+     */
+    int update(List<SourceSnippet> sources, Evaluator evaluator) {
+        JShell jShell = this.shell.getShell();
+        Map<String, Deque<Entry>> available = new HashMap<>();
+        for (Entry entry : this.entries) {
+            if (entry.isClean())
+                available.computeIfAbsent(entry.hash, k -> new ArrayDeque<>()).add(entry);
+        }
+
+        List<String> hashes = new ArrayList<>(sources.size());
+        List<Entry> matches = new ArrayList<>(sources.size());
+        Set<Entry> kept = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (SourceSnippet source : sources) {
+            String hash = Utilities.hash(source.getSource().strip());
+            Deque<Entry> candidates = available.get(hash);
+            Entry match = candidates == null ? null : candidates.poll();
+            hashes.add(hash);
+            matches.add(match);
+            if (match != null) kept.add(match);
+        }
+
+        Set<String> variables = new HashSet<>();
+        for (Entry entry : this.entries)
+            variables.addAll(entry.variables);
+
+        // Anything the removed or edited snippets declared or may have mutated is stale
+        Set<String> dirty = new HashSet<>();
+        boolean importsChanged = false;
+        for (Entry entry : this.entries) {
+            if (kept.contains(entry)) continue;
+            importsChanged |= entry.hasImport;
+            dirty.addAll(entry.declared);
+            for (String name : entry.mutated) {
+                if (variables.contains(name))
+                    dirty.add(name);
+            }
+            for (Snippet snippet : entry.snippets) {
+                if (jShell.status(snippet).isActive())
+                    jShell.drop(snippet);
+            }
+        }
+        if (importsChanged) {
+            // New imports can change what every name resolves to
+            for (Entry entry : kept) {
+                for (Snippet snippet : entry.snippets) {
+                    if (jShell.status(snippet).isActive())
+                        jShell.drop(snippet);
+                }
+            }
+            kept.clear();
+            Collections.fill(matches, null);
+        }
+
+        // Unchanged methods and types are recompiled by JShell itself, but
+        // whatever calls them has to run again
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (Entry entry : kept) {
+                if (entry.isDeclarationOnly() && !dirty.containsAll(entry.declared) &&
+                        !Collections.disjoint(entry.references, dirty))
+                    changed |= dirty.addAll(entry.declared);
+            }
+        }
+
+        List<Entry> updated = new ArrayList<>(sources.size());
+        boolean aborted = false;
+        int evaluated = 0;
+        for (int i = 0; i < sources.size(); i++) {
+            Entry match = matches.get(i);
+            if (match != null && !this.isStale(jShell, match, dirty)) {
+                updated.add(match);
+                continue;
+            }
+            SourceSnippet source = sources.get(i);
+            List<SnippetEvent> events = aborted ? null : evaluator.evaluate(source);
+            if (events == null) {
+                aborted = true;
+                updated.add(new Entry(source.getSource(), hashes.get(i), List.of(), false));
+                continue;
+            }
+            evaluated++;
+            Entry entry = new Entry(source.getSource(), hashes.get(i), events, true);
+            dirty.addAll(entry.declared);
+            // Whatever reads a variable this snippet changed has to see the new value
+            variables.addAll(entry.variables);
+            for (String name : entry.mutated) {
+                if (variables.contains(name))
+                    dirty.add(name);
+            }
+            updated.add(entry);
+        }
+        this.entries = updated;
+        return evaluated;
+    }
+
+    private boolean isStale(JShell jShell, Entry entry, Set<String> dirty) {
+        for (Snippet snippet : entry.snippets) {
+            if (!jShell.status(snippet).isActive())
+                return true;
+        }
+        if (entry.isDeclarationOnly()) return false;
+        return !Collections.disjoint(entry.declared, dirty) || !Collections.disjoint(entry.references, dirty);
+    }
+
+    @Override
+    public void close() {
+        this.shell.close();
+    }
+
+    interface Evaluator {
+        List<SnippetEvent> evaluate(SourceSnippet source);
+    }
+
+    private static class Entry {
+        private final String hash;
+        private final List<Snippet> snippets = new ArrayList<>();
+        private final Set<String> declared = new HashSet<>();
+        private final Set<String> variables = new HashSet<>();
+        private final Set<String> references = new HashSet<>();
+        private final Set<String> mutated = new HashSet<>();
+        private boolean hasImport = false;
+        private boolean clean;
+        private boolean declarationOnly = true;
+
+        Entry(String source, String hash, List<SnippetEvent> events, boolean evaluated) {
+            this.hash = hash;
+            this.clean = evaluated;
+            String code = LITERALS_AND_COMMENTS.matcher(source).replaceAll(" ");
+            Matcher matcher = IDENTIFIER.matcher(code);
+            while (matcher.find())
+                this.references.add(matcher.group());
+            matcher = MUTATED.matcher(code);
+            while (matcher.find())
+                this.mutated.add(matcher.group(1));
+
+            for (SnippetEvent event : events) {
+                Snippet snippet = event.snippet();
+                if (event.causeSnippet() != null) continue;
+                this.snippets.add(snippet);
+                this.clean &= event.status() == Snippet.Status.VALID && event.exception() == null;
+                switch (snippet.kind()) {
+                    case VAR:
+                        this.declared.add(((VarSnippet) snippet).name());
+                        this.variables.add(((VarSnippet) snippet).name());
+                        this.declarationOnly = false;
+                        break;
+                    case METHOD:
+                        this.declared.add(((MethodSnippet) snippet).name());
+                        break;
+                    case TYPE_DECL:
+                        this.declared.add(((TypeDeclSnippet) snippet).name());
+                        break;
+                    case IMPORT:
+                        this.hasImport = true;
+                        break;
+                    default:
+                        this.declarationOnly = false;
+                }
+            }
+            // A snippet never references the names it declares for our purposes
+            this.references.removeAll(this.declared);
+        }
+
+        boolean isClean() {
+            return this.clean;
+        }
+
+        boolean isDeclarationOnly() {
+            return this.declarationOnly && !this.snippets.isEmpty();
+        }
+    }
+}
@@ -0,0 +1,235 @@
+package com.github.espressopad.controller;
+
+import com.github.espressopad.io.DelegatingInputStream;
+import com.github.espressopad.io.DelegatingOutputStream;
+import com.github.espressopad.io.ThreadRoutedStreams;
+import com.github.espressopad.models.ExecutionEngine;
+import com.github.espressopad.utils.TaskScheduler;
+import com.github.espressopad.utils.XmlUtilities;
+import jdk.jshell.JShell;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/*
+ *  Keeps a small number of started JShell instances around so that a run
+ *  does not have to pay for launching the remote VM and loading the
+ *  classpath and default imports. Shells are built in the background and
+ *  are dropped whenever artifacts.xml or imports.xml change. Every pool
+ *  serves one execution engine and set of remote VM options.
+ */
+public class JShellPool implements AutoCloseable {
+    private final Logger logger = LoggerFactory.getLogger(JShellPool.class);
+    private final XmlUtilities handler = new XmlUtilities();
+    private final BlockingQueue<PooledShell> warmShells = new LinkedBlockingQueue<>();
+    private final AtomicInteger pendingBuilds = new AtomicInteger();
+    private final Consumer<JShell> initializer;
+    private final ExecutionEngine engine;
+    private final List<String> remoteVmOptions;
+    private final int size;
+    private volatile boolean closed = false;
+
+    public JShellPool(int size, ExecutionEngine engine, List<String> remoteVmOptions, Consumer<JShell> initializer) {
+        this.size = size;
+        this.engine = engine;
+        this.remoteVmOptions = List.copyOf(remoteVmOptions);
+        this.initializer = initializer;
+        if (engine == ExecutionEngine.LOCAL)
+            ThreadRoutedStreams.install();
+        this.refill();
+    }
+
+    public ExecutionEngine getEngine() {
+        return this.engine;
+    }
+
+    /*
+     *  Take a warm shell from the pool, or build one on the calling thread
+     *  if none is ready. Shells built for an outdated classpath or import
+     *  list are thrown away.
+     */
+    public PooledShell borrow() {
+        String fingerprint = this.fingerprint();
+        PooledShell shell;
+        while ((shell = this.warmShells.poll()) != null) {
+            if (shell.getFingerprint().equals(fingerprint)) break;
+            shell.close();
+        }
+        if (shell == null)
+            shell = this.build(fingerprint);
+        this.refill();
+        return shell;
+    }
+
+    /*
+     *  Return a shell that has not evaluated any user code.
+     */
+    public void giveBack(PooledShell shell) {
+        shell.unbind();
+        if (this.closed || !shell.getFingerprint().equals(this.fingerprint()) ||
+                this.warmShells.size() >= this.size || !this.warmShells.offer(shell))
+            shell.close();
+    }
+
+    /*
+     *  Close a shell that is no longer usable, e.g. one that has run user code.
+     */
+    public void discard(PooledShell shell) {
+        shell.unbind();
+        shell.close();
+        this.refill();
+    }
+
+    /*
+     *  Drop every warm shell and start building new ones. Called when the
+     *  classpath or default imports have been changed from the settings.
+     */
+    public void rebuild() {
+        PooledShell shell;
+        while ((shell = this.warmShells.poll()) != null)
+            shell.close();
+        this.refill();
+    }
+
+    public int getWarmCount() {
+        return this.warmShells.size();
+    }
+
+    /*
+     *  Whether a shell kept outside the pool still matches the current
+     *  classpath and default imports.
+     */
+    public boolean isCurrent(PooledShell shell) {
+        return !shell.isClosed() && shell.getFingerprint().equals(this.fingerprint());
+    }
+
+    private void refill() {
+        if (this.closed) return;
+        while (this.warmShells.size() + this.pendingBuilds.get() < this.size) {
+            this.pendingBuilds.incrementAndGet();
+            try {
+                TaskScheduler.getInstance().submit(TaskScheduler.Lane.IO, () -> {
+                    try {
+                        PooledShell shell = this.build(this.fingerprint());
+                        if (this.closed || !this.warmShells.offer(shell))
+                            shell.close();
+                    } catch (RuntimeException e) {
+                        this.logger.error("Could not start a pooled JShell", e);
+                    } finally {
+                        this.pendingBuilds.decrementAndGet();
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                this.pendingBuilds.decrementAndGet();
+                return;
+            }
+        }
+    }
+
+    private PooledShell build(String fingerprint) {
+        long start = System.nanoTime();
+        PooledShell shell = new PooledShell(fingerprint, this.engine, this.remoteVmOptions);
+        this.initializer.accept(shell.getShell());
+        shell.startupMillis = (System.nanoTime() - start) / 1_000_000;
+        this.logger.debug("Started pooled JShell in {} ms", shell.startupMillis);
+        return shell;
+    }
+
+    private String fingerprint() {
+        File artifactFile = this.handler.getArtifactFile();
+        File importsFile = this.handler.getImportsFile();
+        return String.format("%s:%s:%d:%d:%d:%d", this.engine, this.remoteVmOptions, artifactFile.lastModified(), artifactFile.length(),
+                importsFile.lastModified(), importsFile.length());
+    }
+
+    @Override
+    public void close() {
+        this.closed = true;
+        PooledShell shell;
+        while ((shell = this.warmShells.poll()) != null)
+            shell.close();
+    }
+
+    public static class PooledShell implements AutoCloseable {
+        private final DelegatingOutputStream out = new DelegatingOutputStream();
+        private final DelegatingOutputStream err = new DelegatingOutputStream();
+        private final DelegatingInputStream in = new DelegatingInputStream();
+        private final JShell shell;
+        private final ExecutionEngine engine;
+        private final String fingerprint;
+        private long startupMillis;
+        private volatile boolean closed = false;
+
+        private PooledShell(String fingerprint, ExecutionEngine engine, List<String> remoteVmOptions) {
+            this.fingerprint = fingerprint;
+            this.engine = engine;
+            this.shell = JShell.builder()
+                    .out(new PrintStream(this.out, true))
+                    .err(new PrintStream(this.err, true))
+                    .in(this.in)
+                    .executionEngine(engine.getSpec())
+                    .remoteVMOptions(remoteVmOptions.toArray(String[]::new))
+                    .build();
+        }
+
+        public JShell getShell() {
+            return this.shell;
+        }
+
+        public ExecutionEngine getEngine() {
+            return this.engine;
+        }
+
+        public String getFingerprint() {
+            return this.fingerprint;
+        }
+
+        public long getStartupMillis() {
+            return this.startupMillis;
+        }
+
+        /*
+         *  Point the shell's standard streams at the given run's console.
+         *  In-process snippets use System.out and System.in, so these are
+         *  routed for the calling thread as well; it has to be the thread
+         *  that evaluates the snippets and clears the route afterwards.
+         */
+        public void bind(OutputStream out, OutputStream err, InputStream in) {
+            this.out.setTarget(out);
+            this.err.setTarget(err);
+            this.in.setSource(in);
+            if (this.engine == ExecutionEngine.LOCAL)
+                ThreadRoutedStreams.route(this.out, this.err, this.in);
+        }
+
+        public void unbind() {
+            this.out.setTarget(null);
+            this.err.setTarget(null);
+            this.in.setSource(null);
+        }
+
+        public boolean isClosed() {
+            return this.closed;
+        }
+
+        @Override
+        public void close() {
+            this.closed = true;
+            this.unbind();
+            try {
+                this.shell.close();
+            } catch (RuntimeException ignored) {
+            }
+        }
+    }
+}
@@ -0,0 +1,343 @@
+package com.github.espressopad.controller;
+
+import com.github.espressopad.models.OutlineEntry;
+import com.github.espressopad.models.SourceSnippet;
+import com.github.espressopad.utils.LruCache;
+import com.github.javaparser.JavaParser;
+import com.github.javaparser.ParseResult;
+import com.github.javaparser.ParserConfiguration;
+import com.github.javaparser.Position;
+import com.github.javaparser.ast.CompilationUnit;
+import com.github.javaparser.ast.ImportDeclaration;
+import com.github.javaparser.ast.Node;
+import com.github.javaparser.ast.body.*;
+import com.github.javaparser.ast.expr.Expression;
+import com.github.javaparser.ast.expr.VariableDeclarationExpr;
+import com.github.javaparser.ast.nodeTypes.NodeWithSimpleName;
+import com.github.javaparser.ast.stmt.BlockStmt;
+import com.github.javaparser.ast.stmt.ExpressionStmt;
+import com.github.javaparser.ast.stmt.Statement;
+
+import java.util.*;
+import java.util.function.BooleanSupplier;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/*
+ *  Syntax trees of a tab's snippets. Each snippet is parsed on its own
+ *  with the tab's own parser and the tree is kept for as long as the
+ *  snippet's source stays the same, so a pass only parses the snippets
+ *  that were edited. The outline of every tree is worked out once along
+ *  with it and only moved to where the snippet currently is.
+ */
+public class ParseService {
+    static final String SCRIPT_CLASS = "$Script";
+    private static final int RESOLUTION_CACHE_ENTRIES = 256;
+    // Not names that merely start with it, like importantValue
+    private static final Pattern IMPORT = Pattern.compile("import\\s");
+    private final JavaParser parser = new JavaParser(
+            new ParserConfiguration().setLanguageLevel(ParserConfiguration.LanguageLevel.JAVA_17)
+    );
+    // Parsed snippets by their source
+    private Map<String, Parsed> cache = new HashMap<>();
+    private volatile long lastPassMillis;
+    private volatile int lastParsed;
+    private volatile int lastSnippets;
+    private Unit unit;
+
+    /*
+     *  Parse the snippets that changed and return the outline of all of
+     *  them, or null if the pass was cancelled.
+     */
+    synchronized List<OutlineEntry> update(List<SourceSnippet> snippets, BooleanSupplier isCancelled) {
+        long start = System.nanoTime();
+        Map<String, Parsed> cache = new HashMap<>();
+        List<OutlineEntry> outline = new ArrayList<>();
+        int parsed = 0;
+        for (SourceSnippet snippet : snippets) {
+            String source = snippet.getSource();
+            Parsed result = cache.get(source);
+            if (result == null)
+                result = this.cache.get(source);
+            if (result == null) {
+                if (isCancelled.getAsBoolean()) {
+                    // Keep what was parsed for the next pass
+                    this.cache.putAll(cache);
+                    return null;
+                }
+                result = this.parse(source);
+                parsed++;
+            }
+            cache.put(source, result);
+            for (OutlineEntry entry : result.outline)
+                outline.add(entry.shift(snippet.getStartOffset(), snippet.getStartLine() - 1));
+        }
+        this.cache = cache;
+        this.lastParsed = parsed;
+        this.lastSnippets = snippets.size();
+        this.lastPassMillis = (System.nanoTime() - start) / 1_000_000;
+        return outline;
+    }
+
+    /*
+     *  The snippets put together into one compilation unit to resolve
+     *  symbols in: imports first, declarations as members of one class and
+     *  statements, in order, in one method of it. The trees in it are
+     *  copies, so it stays usable while later passes go on. Built once for
+     *  a given list of snippets.
+     */
+    synchronized Unit getUnit(List<SourceSnippet> snippets, List<String> imports) {
+        if (this.unit != null && this.unit.snippets == snippets && this.unit.imports.equals(imports))
+            return this.unit;
+        CompilationUnit compilationUnit = new CompilationUnit();
+        for (String name : imports) {
+            ImportDeclaration declaration = this.result(this.parser.parseImport(String.format("import %s;", name)));
+            if (declaration != null)
+                compilationUnit.addImport(declaration);
+        }
+        ClassOrInterfaceDeclaration script = compilationUnit.addClass(SCRIPT_CLASS);
+        BlockStmt body = new BlockStmt();
+        script.addMethod("$run").setBody(body);
+        Node[] roots = new Node[snippets.size()];
+        for (int i = 0; i < roots.length; i++) {
+            String source = snippets.get(i).getSource();
+            Parsed parsed = this.cache.computeIfAbsent(source, this::parse);
+            if (parsed.tree == null) continue;
+            Node copy = parsed.tree.clone();
+            if (copy instanceof ImportDeclaration)
+                compilationUnit.addImport((ImportDeclaration) copy);
+            else if (copy instanceof BodyDeclaration)
+                script.addMember((BodyDeclaration<?>) copy);
+            else if (copy instanceof Statement)
+                body.addStatement((Statement) copy);
+            else body.addStatement(new ExpressionStmt((Expression) copy));
+            roots[i] = copy;
+        }
+        this.unit = new Unit(snippets, imports, compilationUnit, roots);
+        return this.unit;
+    }
+
+    long getLastPassMillis() {
+        return this.lastPassMillis;
+    }
+
+    /*
+     *  How many snippets the last pass had to parse, and how many there were.
+     */
+    int getLastParsed() {
+        return this.lastParsed;
+    }
+
+    int getLastSnippets() {
+        return this.lastSnippets;
+    }
+
+    /*
+     *  A snippet can be an import, a declaration, a statement or, at the
+     *  top level of a script, a bare expression or a statement missing its
+     *  semicolon.
+     */
+    private Parsed parse(String source) {
+        Node tree;
+        if (IMPORT.matcher(source).lookingAt())
+            tree = this.result(this.parser.parseImport(source));
+        else {
+            tree = this.result(this.parser.parseBodyDeclaration(source));
+            if (tree == null)
+                tree = this.result(this.parser.parseStatement(source));
+            if (tree == null)
+                tree = this.result(this.parser.parseExpression(source));
+            // JShell lets the last statement of a script go without its semicolon
+            if (tree == null)
+                tree = this.result(this.parser.parseStatement(source + ";"));
+        }
+        List<OutlineEntry> outline = new ArrayList<>();
+        if (tree != null)
+            this.outline(tree, this.lineStarts(source), 0, outline);
+        return new Parsed(tree, outline);
+    }
+
+    private <T extends Node> T result(ParseResult<T> result) {
+        return result.isSuccessful() ? result.getResult().orElse(null) : null;
+    }
+
+    private void outline(Node node, int[] lineStarts, int depth, List<OutlineEntry> outline) {
+        if (node instanceof TypeDeclaration) {
+            TypeDeclaration<?> type = (TypeDeclaration<?>) node;
+            String keyword;
+            if (type instanceof ClassOrInterfaceDeclaration)
+                keyword = ((ClassOrInterfaceDeclaration) type).isInterface() ? "interface" : "class";
+            else if (type instanceof EnumDeclaration)
+                keyword = "enum";
+            else if (type instanceof RecordDeclaration)
+                keyword = "record";
+            else keyword = "@interface";
+            this.add(type.getNameAsString(), keyword, OutlineEntry.Kind.CLASS, type.getName(), lineStarts, depth,
+                    outline);
+            for (BodyDeclaration<?> member : type.getMembers())
+                this.outline(member, lineStarts, depth + 1, outline);
+        } else if (node instanceof CallableDeclaration) {
+            CallableDeclaration<?> callable = (CallableDeclaration<?>) node;
+            String parameters = callable.getParameters().stream()
+                    .map(parameter -> parameter.getType().asString() + (parameter.isVarArgs() ? "..." : ""))
+                    .collect(Collectors.joining(", "));
+            String type = callable instanceof MethodDeclaration ?
+                    ((MethodDeclaration) callable).getType().asString() : null;
+            this.add(String.format("%s(%s)", callable.getNameAsString(), parameters), type,
+                    OutlineEntry.Kind.METHOD, callable.getName(), lineStarts, depth, outline);
+        } else if (node instanceof FieldDeclaration) {
+            for (VariableDeclarator variable : ((FieldDeclaration) node).getVariables())
+                this.add(variable, lineStarts, depth, outline);
+        } else if (node instanceof ExpressionStmt) {
+            this.outline(((ExpressionStmt) node).getExpression(), lineStarts, depth, outline);
+        } else if (node instanceof VariableDeclarationExpr) {
+            for (VariableDeclarator variable : ((VariableDeclarationExpr) node).getVariables())
+                this.add(variable, lineStarts, depth, outline);
+        }
+    }
+
+    private void add(VariableDeclarator variable, int[] lineStarts, int depth, List<OutlineEntry> outline) {
+        this.add(variable.getNameAsString(), variable.getType().asString(), OutlineEntry.Kind.VARIABLE,
+                variable.getName(), lineStarts, depth, outline);
+    }
+
+    private void add(String name, String detail, OutlineEntry.Kind kind, Node at, int[] lineStarts, int depth,
+                     List<OutlineEntry> outline) {
+        Position position = at.getBegin().orElse(new Position(1, 1));
+        int line = Math.min(Math.max(position.line, 1), lineStarts.length);
+        outline.add(new OutlineEntry(name, detail, kind, lineStarts[line - 1] + position.column - 1, line, depth));
+    }
+
+    private int[] lineStarts(String source) {
+        int lines = 1;
+        for (int i = 0; i < source.length(); i++) {
+            if (source.charAt(i) == '\n')
+                lines++;
+        }
+        int[] starts = new int[lines];
+        int line = 1;
+        for (int i = 0; i < source.length(); i++) {
+            if (source.charAt(i) == '\n')
+                starts[line++] = i + 1;
+        }
+        return starts;
+    }
+
+    static final class Unit {
+        private final List<SourceSnippet> snippets;
+        private final List<String> imports;
+        private final CompilationUnit compilationUnit;
+        private final Node[] roots;
+        private final Map<Node, Integer> indexes = new IdentityHashMap<>();
+        // What was found out about the nodes of this unit, by snippet and range
+        private final LruCache<String, TypeSolverService.Resolution> resolutions =
+                new LruCache<>(RESOLUTION_CACHE_ENTRIES);
+
+        private Unit(List<SourceSnippet> snippets, List<String> imports, CompilationUnit compilationUnit,
+                     Node[] roots) {
+            this.snippets = snippets;
+            this.imports = List.copyOf(imports);
+            this.compilationUnit = compilationUnit;
+            this.roots = roots;
+            for (int i = 0; i < roots.length; i++) {
+                if (roots[i] != null)
+                    this.indexes.put(roots[i], i);
+            }
+        }
+
+        CompilationUnit getCompilationUnit() {
+            return this.compilationUnit;
+        }
+
+        LruCache<String, TypeSolverService.Resolution> getResolutions() {
+            return this.resolutions;
+        }
+
+        /*
+         *  The innermost node at a document offset, or null if there is
+         *  none there.
+         */
+        Node nodeAt(int offset) {
+            int low = 0;
+            int high = this.snippets.size() - 1;
+            int index = -1;
+            while (low <= high) {
+                int middle = (low + high) >>> 1;
+                if (this.snippets.get(middle).getStartOffset() <= offset) {
+                    index = middle;
+                    low = middle + 1;
+                } else high = middle - 1;
+            }
+            if (index < 0 || this.roots[index] == null) return null;
+            String source = this.snippets.get(index).getSource();
+            int relative = offset - this.snippets.get(index).getStartOffset();
+            if (relative >= source.length()) return null;
+            int line = 1;
+            int lineStart = 0;
+            for (int i = 0; i < relative; i++) {
+                if (source.charAt(i) == '\n') {
+                    line++;
+                    lineStart = i + 1;
+                }
+            }
+            Position position = new Position(line, relative - lineStart + 1);
+            Node node = this.roots[index];
+            if (node.getRange().isEmpty() || !node.getRange().get().contains(position)) return null;
+            boolean descended = true;
+            while (descended) {
+                descended = false;
+                for (Node child : node.getChildNodes()) {
+                    if (child.getRange().isPresent() && child.getRange().get().contains(position)) {
+                        node = child;
+                        descended = true;
+                        break;
+                    }
+                }
+            }
+            return node;
+        }
+
+        /*
+         *  A key for the node that stays the same for the life of the unit.
+         */
+        String keyOf(Node node) {
+            return String.format("%d:%s", this.indexOf(node), node.getRange().map(Object::toString).orElse(""));
+        }
+
+        /*
+         *  Document offset of a declaration, at its name where it has one,
+         *  or -1 if the node is not part of the script.
+         */
+        int offsetOf(Node node) {
+            int index = this.indexOf(node);
+            if (index < 0) return -1;
+            Node at = node instanceof NodeWithSimpleName ? ((NodeWithSimpleName<?>) node).getName() : node;
+            if (at.getBegin().isEmpty()) return -1;
+            Position position = at.getBegin().get();
+            String source = this.snippets.get(index).getSource();
+            int offset = 0;
+            for (int line = 1; line < position.line; line++)
+                offset = source.indexOf('\n', offset) + 1;
+            return this.snippets.get(index).getStartOffset() + offset + position.column - 1;
+        }
+
+        private int indexOf(Node node) {
+            for (Node at = node; at != null; at = at.getParentNode().orElse(null)) {
+                Integer index = this.indexes.get(at);
+                if (index != null)
+                    return index;
+            }
+            return -1;
+        }
+    }
+
+    private static class Parsed {
+        private final Node tree;
+        private final List<OutlineEntry> outline;
+
+        Parsed(Node tree, List<OutlineEntry> outline) {
+            this.tree = tree;
+            this.outline = outline;
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package com.github.espressopad.controller;
+
+import com.github.espressopad.models.RunState;
+import com.github.espressopad.models.ViewModel;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicReference;
+
+/*
+ *  Tracks a single run of a tab so that it can be stopped from the UI or
+ *  by the timeout watchdog.
+ */
+public class RunHandle {
+    private final ViewModel viewModel;
+    private final long startNanos = System.nanoTime();
+    private final AtomicReference<RunState> state = new AtomicReference<>(RunState.RUNNING);
+    private final CompletableFuture<RunState> completion = new CompletableFuture<>();
+    private volatile RunState stopReason;
+    private volatile JShellPool.PooledShell shell;
+    private volatile Future<?> future;
+    private volatile Future<?> timeout;
+    private volatile long endNanos;
+
+    RunHandle(ViewModel viewModel) {
+        this.viewModel = viewModel;
+    }
+
+    public ViewModel getViewModel() {
+        return this.viewModel;
+    }
+
+    public RunState getState() {
+        return this.state.get();
+    }
+
+    public boolean isFinished() {
+        return this.state.get() != RunState.RUNNING;
+    }
+
+    /*
+     *  Completes with the final state once the run has finished.
+     */
+    public CompletableFuture<RunState> getCompletion() {
+        return this.completion;
+    }
+
+    public boolean isStopRequested() {
+        return this.stopReason != null;
+    }
+
+    RunState getStopReason() {
+        return this.stopReason;
+    }
+
+    public long getElapsedMillis() {
+        long end = this.isFinished() ? this.endNanos : System.nanoTime();
+        return (end - this.startNanos) / 1_000_000;
+    }
+
+    JShellPool.PooledShell getShell() {
+        return this.shell;
+    }
+
+    void setShell(JShellPool.PooledShell shell) {
+        this.shell = shell;
+    }
+
+    void setFuture(Future<?> future) {
+        this.future = future;
+    }
+
+    void setTimeout(Future<?> timeout) {
+        this.timeout = timeout;
+    }
+
+    /*
+     *  Record why the run is being stopped. Only the first request counts.
+     */
+    synchronized boolean requestStop(RunState reason) {
+        if (this.isFinished() || this.stopReason != null) return false;
+        this.stopReason = reason;
+        return true;
+    }
+
+    /*
+     *  Last resort when JShell.stop() did not bring the snippet back:
+     *  closing the shell tears down its remote VM. Only for remote runs;
+     *  an in-process snippet runs on a thread of EspressoPad's own that
+     *  nothing here can end.
+     */
+    void kill() {
+        JShellPool.PooledShell shell = this.shell;
+        if (shell != null)
+            shell.close();
+        Future<?> future = this.future;
+        if (future != null)
+            future.cancel(true);
+    }
+
+    void finish(boolean failed) {
+        this.endNanos = System.nanoTime();
+        RunState result;
+        synchronized (this) {
+            if (this.stopReason != null) result = this.stopReason;
+            else result = failed ? RunState.FAILED : RunState.COMPLETED;
+            this.state.set(result);
+        }
+        Future<?> timeout = this.timeout;
+        if (timeout != null)
+            timeout.cancel(false);
+        this.completion.complete(result);
+    }
+}
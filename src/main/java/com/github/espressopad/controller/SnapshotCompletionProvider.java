@@ -0,0 +1,146 @@
+package com.github.espressopad.controller;
+
+import com.github.espressopad.utils.LruCache;
+import org.fife.ui.autocomplete.Completion;
+import org.fife.ui.autocomplete.DefaultCompletionProvider;
+
+import javax.swing.text.JTextComponent;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicReference;
+
+/*
+ *  A tab's completion provider. What it offers is an immutable list,
+ *  sorted by input text, that is replaced as a whole, so completions can
+ *  be published from any thread while the EDT reads the previous list
+ *  without ever waiting or seeing one half built.
+ */
+public class SnapshotCompletionProvider extends DefaultCompletionProvider {
+    private static final Comparator<Completion> ORDER =
+            Comparator.comparing(Completion::getInputText, String.CASE_INSENSITIVE_ORDER);
+    private final AtomicReference<Snapshot> snapshot = new AtomicReference<>(new Snapshot(new Completion[0]));
+    // Snapshots published before, by what they were worked out for
+    private final LruCache<String, List<Completion>> cache;
+
+    public SnapshotCompletionProvider(int cacheEntries) {
+        this.cache = new LruCache<>(cacheEntries);
+    }
+
+    LruCache<String, List<Completion>> getCache() {
+        return this.cache;
+    }
+
+    /*
+     *  Offer these completions from now on. Returns the snapshot that is
+     *  offered, which can be published again later without sorting.
+     */
+    public List<Completion> publish(List<Completion> completions) {
+        if (completions instanceof Snapshot) {
+            this.snapshot.set((Snapshot) completions);
+            return completions;
+        }
+        Completion[] sorted = completions.toArray(new Completion[0]);
+        Arrays.sort(sorted, ORDER);
+        Snapshot snapshot = new Snapshot(sorted);
+        this.snapshot.set(snapshot);
+        return snapshot;
+    }
+
+    /*
+     *  What is offered right now.
+     */
+    public List<Completion> getSnapshot() {
+        return this.snapshot.get();
+    }
+
+    @Override
+    protected List<Completion> getCompletionsImpl(JTextComponent textComponent) {
+        String text = this.getAlreadyEnteredText(textComponent);
+        if (text == null) return new ArrayList<>();
+        Snapshot snapshot = this.snapshot.get();
+        List<Completion> completions = new ArrayList<>();
+        for (int i = snapshot.lowerBound(text); i < snapshot.size(); i++) {
+            Completion completion = snapshot.get(i);
+            if (!completion.getInputText().regionMatches(true, 0, text, 0, text.length())) break;
+            completions.add(completion);
+        }
+        return completions;
+    }
+
+    @Override
+    public List<Completion> getCompletionByInputText(String inputText) {
+        Snapshot snapshot = this.snapshot.get();
+        List<Completion> completions = new ArrayList<>();
+        for (int i = snapshot.lowerBound(inputText); i < snapshot.size(); i++) {
+            Completion completion = snapshot.get(i);
+            if (!completion.getInputText().equalsIgnoreCase(inputText)) break;
+            if (completion.getInputText().equals(inputText))
+                completions.add(completion);
+        }
+        return completions.isEmpty() ? null : completions;
+    }
+
+    /*
+     *  The methods that change the list one completion at a time publish a
+     *  new snapshot too, so the list inherited from the superclass stays
+     *  unused.
+     */
+    @Override
+    public void addCompletion(Completion completion) {
+        this.addCompletions(List.of(completion));
+    }
+
+    @Override
+    public void addCompletions(List<Completion> completions) {
+        List<Completion> merged = new ArrayList<>(this.snapshot.get());
+        merged.addAll(completions);
+        this.publish(merged);
+    }
+
+    @Override
+    public boolean removeCompletion(Completion completion) {
+        List<Completion> remaining = new ArrayList<>(this.snapshot.get());
+        boolean removed = remaining.remove(completion);
+        if (removed)
+            this.publish(remaining);
+        return removed;
+    }
+
+    @Override
+    public void clear() {
+        this.publish(List.of());
+    }
+
+    private static class Snapshot extends AbstractList<Completion> implements RandomAccess {
+        private final Completion[] completions;
+
+        Snapshot(Completion[] completions) {
+            this.completions = completions;
+        }
+
+        @Override
+        public Completion get(int index) {
+            return this.completions[index];
+        }
+
+        @Override
+        public int size() {
+            return this.completions.length;
+        }
+
+        /*
+         *  Index of the first completion whose input text does not sort
+         *  before the given text.
+         */
+        int lowerBound(String text) {
+            int low = 0;
+            int high = this.completions.length;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (String.CASE_INSENSITIVE_ORDER.compare(this.completions[middle].getInputText(), text) < 0)
+                    low = middle + 1;
+                else high = middle;
+            }
+            return low;
+        }
+    }
+}
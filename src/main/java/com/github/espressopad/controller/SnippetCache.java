@@ -0,0 +1,385 @@
+package com.github.espressopad.controller;
+
+import com.github.espressopad.models.CachedSnippet;
+import com.github.espressopad.models.SettingsModel;
+import com.github.espressopad.utils.TaskScheduler;
+import com.github.espressopad.utils.Utilities;
+import com.github.espressopad.utils.XmlUtilities;
+import jdk.jshell.JShell;
+import jdk.jshell.MethodSnippet;
+import jdk.jshell.Snippet;
+import jdk.jshell.SnippetEvent;
+import jdk.jshell.TypeDeclSnippet;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.tools.*;
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/*
+ *  On-disk cache of method and type declarations compiled outside of
+ *  JShell. Every entry lives in its own directory next to settings.xml
+ *  and holds classes in package REPL, which is where JShell puts snippet
+ *  classes, so a run can add the directory to its classpath instead of
+ *  compiling the declaration again. Methods are compiled into a holder
+ *  class and brought in with a static import.
+ *
+ *  Keys cover the normalized source, the imports in effect, the JDK
+ *  version, the classpath and the keys of the declarations it uses.
+ *  Misses are compiled in the background after the run.
+ */
+public class SnippetCache {
+    private static final String PACKAGE = "REPL";
+    private static final String METADATA = "snippet.xml";
+    // Entries used this recently are kept even when the cache is over its size limit
+    private static final long IN_USE_MILLIS = TimeUnit.MINUTES.toMillis(10);
+    private static final Pattern IDENTIFIER = Pattern.compile("\\b[\\p{L}_$][\\p{L}\\p{N}_$]*\\b");
+    // JShell only resolves static imports of public members
+    private static final Pattern LEADING_MODIFIERS = Pattern.compile("^(?:(?:public|protected|private|static)\\s+)+");
+    private final Logger logger = LoggerFactory.getLogger(SnippetCache.class);
+    private final XmlUtilities handler = new XmlUtilities();
+    private final File directory = this.handler.getSnippetCacheDirectory();
+    private final Map<String, CachedSnippet> index = new ConcurrentHashMap<>();
+    private volatile boolean loaded = false;
+
+    public SnippetCache() {
+        TaskScheduler.getInstance().submit(TaskScheduler.Lane.IO, this::evict);
+    }
+
+    public boolean isEnabled() {
+        return this.getSettings().isSnippetCacheEnabled();
+    }
+
+    /*
+     *  Start tracking a run. Reads the current imports and classpath.
+     */
+    public Context newContext() {
+        List<String> imports = this.handler.getImportsFile().exists() ? this.handler.parseImportXml() : List.of();
+        List<String> classpath = this.handler.getArtifactFile().exists() ? this.handler.parseArtifactXml() : List.of();
+        return new Context(classpath, imports.stream()
+                .map(x -> String.format("import %s;", x))
+                .collect(Collectors.toList()));
+    }
+
+    /*
+     *  Compile the declarations a run had to evaluate itself, in order so
+     *  that later ones can use the earlier ones.
+     */
+    public void compileLater(Context context) {
+        if (context.pending.isEmpty()) return;
+        List<Pending> pending = new ArrayList<>(context.pending);
+        context.pending.clear();
+        TaskScheduler.getInstance().submit(TaskScheduler.Lane.IO, () -> {
+            JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+            if (compiler == null) return;
+            for (Pending snippet : pending)
+                this.compile(compiler, context.classpath, snippet);
+            this.evict();
+        });
+    }
+
+    public void clear() {
+        this.index.clear();
+        File[] entries = this.directory.listFiles(this::isEntry);
+        if (entries == null) return;
+        for (File entry : entries)
+            this.delete(entry.toPath());
+    }
+
+    /*
+     *  Drop entries older than the configured age, then the least recently
+     *  used ones until the cache fits its size limit.
+     */
+    public synchronized void evict() {
+        File[] entries = this.directory.listFiles(this::isEntry);
+        if (entries == null) return;
+        SettingsModel settings = this.getSettings();
+        long now = System.currentTimeMillis();
+        long maxAge = TimeUnit.DAYS.toMillis(settings.getSnippetCacheMaxAgeDays());
+        long maxBytes = settings.getSnippetCacheMaxMegabytes() * 1024L * 1024L;
+        Arrays.sort(entries, Comparator.comparingLong(File::lastModified));
+        long[] sizes = new long[entries.length];
+        long total = 0;
+        for (int i = 0; i < entries.length; i++) {
+            sizes[i] = this.sizeOf(entries[i].toPath());
+            total += sizes[i];
+        }
+        for (int i = 0; i < entries.length; i++) {
+            long age = now - entries[i].lastModified();
+            if (age > maxAge || (total > maxBytes && age > IN_USE_MILLIS)) {
+                this.index.remove(entries[i].getName());
+                this.delete(entries[i].toPath());
+                total -= sizes[i];
+            }
+        }
+    }
+
+    private boolean isEntry(File file) {
+        // Skips the temporary directories compilations write into
+        return file.isDirectory() && !file.getName().startsWith(".");
+    }
+
+    private CachedSnippet lookup(String key) {
+        if (!this.loaded) this.load();
+        return this.index.get(key);
+    }
+
+    private synchronized void load() {
+        if (this.loaded) return;
+        File[] entries = this.directory.listFiles(this::isEntry);
+        if (entries != null) {
+            for (File entry : entries) {
+                File metadata = new File(entry, METADATA);
+                if (!metadata.isFile()) continue;
+                try {
+                    CachedSnippet cached = this.handler.parseCachedSnippetXml(metadata);
+                    if (entry.getName().equals(cached.getKey()))
+                        this.index.put(cached.getKey(), cached);
+                } catch (RuntimeException e) {
+                    this.logger.warn("Dropping unreadable snippet cache entry {}", entry.getName());
+                    this.delete(entry.toPath());
+                }
+            }
+        }
+        this.loaded = true;
+    }
+
+    private boolean apply(JShell shell, CachedSnippet cached) {
+        File entry = new File(this.directory, cached.getKey());
+        if (!entry.isDirectory()) {
+            this.index.remove(cached.getKey());
+            return false;
+        }
+        entry.setLastModified(System.currentTimeMillis());
+        shell.addToClasspath(entry.getPath());
+        if (cached.getKind() == CachedSnippet.Kind.METHOD) {
+            List<SnippetEvent> events = shell.eval(String.format(
+                    "import static %s.%s.%s;", PACKAGE, cached.getHolder(), cached.getName()
+            ));
+            return events.stream().allMatch(event -> event.status() == Snippet.Status.VALID);
+        }
+        return true;
+    }
+
+    private void compile(JavaCompiler compiler, List<String> classpath, Pending pending) {
+        if (this.index.containsKey(pending.key)) return;
+        Path target = this.directory.toPath().resolve(pending.key);
+        Path build = null;
+        try {
+            Files.createDirectories(this.directory.toPath());
+            build = Files.createTempDirectory(this.directory.toPath(), ".build-");
+
+            StringBuilder source = new StringBuilder(String.format("package %s;\n", PACKAGE));
+            List<String> paths = new ArrayList<>(classpath);
+            for (String dependency : pending.dependencies) {
+                CachedSnippet cached = this.index.get(dependency);
+                if (cached == null || cached.getKind() == CachedSnippet.Kind.UNCACHEABLE) continue;
+                paths.add(new File(this.directory, dependency).getPath());
+                if (cached.getKind() == CachedSnippet.Kind.METHOD)
+                    source.append(String.format("import static %s.%s.%s;\n", PACKAGE, cached.getHolder(), cached.getName()));
+            }
+            for (String line : pending.imports)
+                source.append(line).append('\n');
+            String holder = null;
+            String unit = pending.name;
+            if (pending.kind == CachedSnippet.Kind.METHOD) {
+                holder = String.format("Cached_%s", pending.key.substring(0, 16));
+                unit = holder;
+                source.append(String.format("public final class %s {\n", holder));
+                source.append("public static ")
+                        .append(LEADING_MODIFIERS.matcher(pending.source).replaceFirst(""))
+                        .append("\n}\n");
+            } else source.append(pending.source).append('\n');
+
+            JavaFileObject file = new SimpleJavaFileObject(
+                    URI.create(String.format("string:///%s/%s.java", PACKAGE, unit)), JavaFileObject.Kind.SOURCE
+            ) {
+                @Override
+                public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+                    return source;
+                }
+            };
+            DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+            boolean compiled;
+            try (StandardJavaFileManager fileManager = compiler.getStandardFileManager(
+                    diagnostics, null, StandardCharsets.UTF_8)) {
+                compiled = compiler.getTask(new StringWriter(), fileManager, diagnostics, List.of(
+                        "-d", build.toString(),
+                        "-classpath", String.join(File.pathSeparator, paths),
+                        "-proc:none", "-nowarn"
+                ), null, List.of(file)).call();
+            }
+            if (!compiled) {
+                // Remember the failure so that it is not attempted on every run
+                this.delete(build);
+                Files.createDirectories(build);
+                this.logger.debug("Snippet {} is not cacheable: {}", pending.name, diagnostics.getDiagnostics());
+            }
+            CachedSnippet cached = new CachedSnippet(pending.key,
+                    compiled ? pending.kind : CachedSnippet.Kind.UNCACHEABLE, pending.name, holder);
+            this.handler.writeCachedSnippetXml(build.resolve(METADATA).toFile(), cached);
+            Files.move(build, target, StandardCopyOption.ATOMIC_MOVE);
+            build = null;
+            this.index.put(pending.key, cached);
+        } catch (FileAlreadyExistsException | DirectoryNotEmptyException e) {
+            // Another run compiled the same snippet first
+        } catch (IOException | RuntimeException e) {
+            this.logger.warn("Could not cache snippet {}", pending.name, e);
+        } finally {
+            if (build != null)
+                this.delete(build);
+        }
+    }
+
+    private SettingsModel getSettings() {
+        SettingsModel settings = this.handler.parseSettingsXml();
+        return settings == null ? new SettingsModel() : settings;
+    }
+
+    private long sizeOf(Path path) {
+        try (Stream<Path> files = Files.walk(path)) {
+            return files.filter(Files::isRegularFile).mapToLong(x -> x.toFile().length()).sum();
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    private void delete(Path path) {
+        try (Stream<Path> files = Files.walk(path)) {
+            files.sorted(Comparator.reverseOrder()).forEach(x -> x.toFile().delete());
+        } catch (IOException e) {
+            this.logger.warn("Could not delete {}", path, e);
+        }
+    }
+
+    private static String normalize(String source) {
+        return source.strip().lines().map(String::stripTrailing).collect(Collectors.joining("\n"));
+    }
+
+    /*
+     *  Per run state: the imports evaluated so far, the declarations made
+     *  so far and the hits and misses.
+     */
+    public class Context {
+        private final List<String> classpath;
+        private final List<String> imports;
+        private final String environment;
+        private final Map<String, String> declared = new HashMap<>();
+        private final List<Pending> pending = new ArrayList<>();
+        private int hits = 0;
+        private int misses = 0;
+
+        private Context(List<String> classpath, List<String> imports) {
+            this.classpath = classpath;
+            this.imports = new ArrayList<>(imports);
+            this.environment = String.format("%s\n%s", Runtime.version(), Utilities.hash(String.join("\n", classpath)));
+        }
+
+        public int getHits() {
+            return this.hits;
+        }
+
+        public int getMisses() {
+            return this.misses;
+        }
+
+        public String keyFor(String source) {
+            String normalized = normalize(source);
+            return Utilities.hash(String.format("%s\n%s\n%s\n%s", this.environment, String.join("\n", this.imports),
+                    String.join("\n", this.dependencies(normalized)), normalized));
+        }
+
+        /*
+         *  Put a cached declaration in place of evaluating it. Returns false
+         *  if the snippet has to be evaluated.
+         */
+        public boolean apply(JShell shell, String key) {
+            CachedSnippet cached = SnippetCache.this.lookup(key);
+            if (cached == null) return false;
+            // A redeclaration has to replace the earlier one, which only JShell can do
+            if (cached.getKind() == CachedSnippet.Kind.UNCACHEABLE || this.declared.containsKey(cached.getName()) ||
+                    !SnippetCache.this.apply(shell, cached)) {
+                this.misses++;
+                return false;
+            }
+            this.declared.put(cached.getName(), key);
+            this.hits++;
+            return true;
+        }
+
+        /*
+         *  Record a snippet JShell has evaluated, queueing it for compilation
+         *  if it is a single valid declaration.
+         */
+        public void evaluated(String source, String key, List<SnippetEvent> events) {
+            List<SnippetEvent> direct = events.stream()
+                    .filter(event -> event.causeSnippet() == null)
+                    .collect(Collectors.toList());
+            if (direct.size() != 1 || direct.get(0).status() != Snippet.Status.VALID) return;
+            Snippet snippet = direct.get(0).snippet();
+            String name;
+            CachedSnippet.Kind kind;
+            switch (snippet.kind()) {
+                case IMPORT:
+                    this.imports.add(normalize(source));
+                    return;
+                case METHOD:
+                    name = ((MethodSnippet) snippet).name();
+                    kind = CachedSnippet.Kind.METHOD;
+                    break;
+                case TYPE_DECL:
+                    name = ((TypeDeclSnippet) snippet).name();
+                    kind = CachedSnippet.Kind.TYPE;
+                    break;
+                default:
+                    return;
+            }
+            List<String> dependencies = this.dependencies(normalize(source));
+            this.declared.put(name, key);
+            if (SnippetCache.this.lookup(key) != null) return;
+            this.misses++;
+            this.pending.add(new Pending(key, normalize(source), kind, name, new ArrayList<>(this.imports), dependencies));
+        }
+
+        private List<String> dependencies(String source) {
+            Set<String> keys = new TreeSet<>();
+            Matcher matcher = IDENTIFIER.matcher(source);
+            while (matcher.find()) {
+                String key = this.declared.get(matcher.group());
+                if (key != null) keys.add(key);
+            }
+            return new ArrayList<>(keys);
+        }
+    }
+
+    private static class Pending {
+        private final String key;
+        private final String source;
+        private final CachedSnippet.Kind kind;
+        private final String name;
+        private final List<String> imports;
+        private final List<String> dependencies;
+
+        Pending(String key, String source, CachedSnippet.Kind kind, String name, List<String> imports,
+                List<String> dependencies) {
+            this.key = key;
+            this.source = source;
+            this.kind = kind;
+            this.name = name;
+            this.imports = imports;
+            this.dependencies = dependencies;
+        }
+    }
+}
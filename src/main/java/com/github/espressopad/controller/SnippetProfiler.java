@@ -0,0 +1,99 @@
+package com.github.espressopad.controller;
+
+import com.github.espressopad.models.ExecutionEngine;
+import com.github.espressopad.models.SnippetProfile;
+import com.github.espressopad.models.SourceSnippet;
+import jdk.jshell.JShell;
+import jdk.jshell.Snippet;
+import jdk.jshell.SnippetEvent;
+import jdk.jshell.VarSnippet;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/*
+ *  Measures every evaluated snippet of a run. Readings are taken inside
+ *  the execution VM by a probe variable whose toString() reads the
+ *  ThreadMXBean and GarbageCollectorMXBeans, so fetching its value with
+ *  JShell.varValue() costs a round trip but no compilation.
+ *
+ *  The remote agent runs snippets and varValue() on the same thread, so
+ *  CPU time and allocations are exact there. The in-process engine runs
+ *  every snippet on a new thread, so CPU time falls back to the process
+ *  total and allocations are not available.
+ */
+class SnippetProfiler {
+    private static final String PROBE_NAME = "$espressoPadProbe";
+    private static final String PROBE = "Object " + PROBE_NAME + " = new Object() {\n" +
+            "    public String toString() {\n" +
+            "        java.lang.management.ThreadMXBean threads = java.lang.management.ManagementFactory.getThreadMXBean();\n" +
+            "        long gcCount = 0, gcMillis = 0;\n" +
+            "        for (java.lang.management.GarbageCollectorMXBean gc : " +
+            "java.lang.management.ManagementFactory.getGarbageCollectorMXBeans()) {\n" +
+            "            gcCount += Math.max(0, gc.getCollectionCount());\n" +
+            "            gcMillis += Math.max(0, gc.getCollectionTime());\n" +
+            "        }\n" +
+            "        %s\n" +
+            "        return cpu + \" \" + allocated + \" \" + gcCount + \" \" + gcMillis;\n" +
+            "    }\n" +
+            "};";
+    private static final String REMOTE_READINGS = "long cpu = threads.getCurrentThreadCpuTime();\n" +
+            "        long allocated = threads instanceof com.sun.management.ThreadMXBean ? " +
+            "((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread().getId()) : -1;";
+    private static final String LOCAL_READINGS = "java.lang.management.OperatingSystemMXBean os = " +
+            "java.lang.management.ManagementFactory.getOperatingSystemMXBean();\n" +
+            "        long cpu = os instanceof com.sun.management.OperatingSystemMXBean ? " +
+            "((com.sun.management.OperatingSystemMXBean) os).getProcessCpuTime() : -1;\n" +
+            "        long allocated = -1;";
+    private final Logger logger = LoggerFactory.getLogger(SnippetProfiler.class);
+    private final List<SnippetProfile> profiles = new ArrayList<>();
+    private final JShell shell;
+    private VarSnippet probe;
+
+    SnippetProfiler(JShell shell, ExecutionEngine engine) {
+        this.shell = shell;
+        String source = String.format(PROBE, engine == ExecutionEngine.LOCAL ? LOCAL_READINGS : REMOTE_READINGS);
+        for (SnippetEvent event : shell.eval(source)) {
+            if (event.status() == Snippet.Status.VALID && event.snippet() instanceof VarSnippet)
+                this.probe = (VarSnippet) event.snippet();
+        }
+        if (this.probe == null)
+            this.logger.warn("Could not install the profiling probe; only wall time will be recorded");
+    }
+
+    /*
+     *  Current readings of the execution VM: CPU nanos, allocated bytes,
+     *  GC count and GC millis.
+     */
+    long[] sample() {
+        long[] readings = {-1, -1, -1, -1};
+        if (this.probe == null) return readings;
+        try {
+            String[] values = this.shell.varValue(this.probe).split(" ");
+            for (int i = 0; i < readings.length && i < values.length; i++)
+                readings[i] = Long.parseLong(values[i]);
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            this.logger.debug("Profiling probe failed", e);
+        }
+        return readings;
+    }
+
+    void record(SourceSnippet snippet, long startNanos, long[] before) {
+        long wall = System.nanoTime() - startNanos;
+        long[] after = this.sample();
+        this.profiles.add(new SnippetProfile(snippet, wall,
+                delta(before[0], after[0]), delta(before[1], after[1]),
+                delta(before[2], after[2]), delta(before[3], after[3])));
+    }
+
+    List<SnippetProfile> getProfiles() {
+        return Collections.unmodifiableList(this.profiles);
+    }
+
+    private static long delta(long before, long after) {
+        return before < 0 || after < 0 ? -1 : Math.max(0, after - before);
+    }
+}
@@ -0,0 +1,256 @@
+package com.github.espressopad.controller;
+
+import com.github.espressopad.utils.SymbolTrie;
+import com.github.espressopad.utils.TaskScheduler;
+import com.github.espressopad.utils.XmlUtilities;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.lang.module.ModuleDescriptor;
+import java.lang.module.ModuleFinder;
+import java.lang.module.ModuleReader;
+import java.lang.module.ModuleReference;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/*
+ *  Names of the packages, public classes and public static members of the
+ *  JDK's exported packages and of every jar in artifacts.xml, so that
+ *  type, import and static member completion never has to ask JShell.
+ *  The index is built in the background by reading class files directly
+ *  and kept on disk until the JDK or the artifacts change.
+ */
+public class SymbolIndex {
+    private static final int FORMAT = 1;
+    private static final int ACC_PUBLIC = 0x0001;
+    private static final int ACC_STATIC = 0x0008;
+    private static final int ACC_BRIDGE = 0x0040;
+    private static final int ACC_SYNTHETIC = 0x1000;
+    private final Logger logger = LoggerFactory.getLogger(SymbolIndex.class);
+    private final XmlUtilities handler = new XmlUtilities();
+    // Classes by simple name and packages by full name, with the qualified name as detail
+    private volatile SymbolTrie types = SymbolTrie.empty();
+    // Static members as Class.member, with the qualified class name as detail
+    private volatile SymbolTrie members = SymbolTrie.empty();
+    private volatile String fingerprint;
+
+    public SymbolTrie getTypes() {
+        return this.types;
+    }
+
+    public SymbolTrie getMembers() {
+        return this.members;
+    }
+
+    /*
+     *  Load the index from disk, or build it if the JDK or the artifacts
+     *  have changed since it was written. Returns right away; completion is
+     *  served from an empty index until then.
+     */
+    public void refresh() {
+        try {
+            TaskScheduler.getInstance().submit(TaskScheduler.Lane.IO, () -> {
+                try {
+                    this.load();
+                } catch (RuntimeException e) {
+                    this.logger.error("Could not build the symbol index", e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            this.logger.warn("Symbol index refresh rejected");
+        }
+    }
+
+    private synchronized void load() {
+        List<Path> jars = Classpath.getJars(this.handler);
+        String fingerprint = Classpath.fingerprint(jars);
+        if (fingerprint.equals(this.fingerprint)) return;
+        File file = this.handler.getSymbolIndexFile();
+        if (file.isFile()) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                    new GZIPInputStream(new FileInputStream(file), 1 << 16)))) {
+                if (in.readInt() == FORMAT && in.readUTF().equals(fingerprint)) {
+                    this.types = SymbolTrie.read(in);
+                    this.members = SymbolTrie.read(in);
+                    this.fingerprint = fingerprint;
+                    return;
+                }
+            } catch (IOException e) {
+                this.logger.warn("Discarding unreadable symbol index {}", file, e);
+            }
+        }
+
+        long start = System.nanoTime();
+        SymbolTrie.Builder types = new SymbolTrie.Builder();
+        SymbolTrie.Builder members = new SymbolTrie.Builder();
+        this.scanJdk(types, members);
+        for (Path jar : jars)
+            this.scanJar(jar, types, members);
+        this.types = types.build();
+        this.members = members.build();
+        this.fingerprint = fingerprint;
+        this.logger.debug("Indexed {} types and {} static members in {} ms", this.types.getSymbolCount(),
+                this.members.getSymbolCount(), (System.nanoTime() - start) / 1_000_000);
+
+        try {
+            Path temporary = Files.createTempFile(file.getParentFile().toPath(), "symbols", ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                    new GZIPOutputStream(Files.newOutputStream(temporary), 1 << 16)))) {
+                out.writeInt(FORMAT);
+                out.writeUTF(fingerprint);
+                this.types.write(out);
+                this.members.write(out);
+            }
+            Files.move(temporary, file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            this.logger.warn("Could not write symbol index {}", file, e);
+        }
+    }
+
+    private void scanJdk(SymbolTrie.Builder types, SymbolTrie.Builder members) {
+        for (ModuleReference module : ModuleFinder.ofSystem().findAll()) {
+            Set<String> exported = module.descriptor().exports().stream()
+                    .filter(export -> !export.isQualified())
+                    .map(ModuleDescriptor.Exports::source)
+                    .collect(Collectors.toSet());
+            if (exported.isEmpty()) continue;
+            try (ModuleReader reader = module.open(); Stream<String> resources = reader.list()) {
+                for (String resource : (Iterable<String>) resources::iterator) {
+                    if (!this.isClassFile(resource) || !exported.contains(this.packageOf(resource))) continue;
+                    Optional<InputStream> in = reader.open(resource);
+                    if (in.isEmpty()) continue;
+                    try (InputStream classFile = in.get()) {
+                        this.scanClass(classFile, types, members);
+                    } catch (IOException | IndexOutOfBoundsException e) {
+                        this.logger.debug("Skipping unreadable class file {}", resource, e);
+                    }
+                }
+            } catch (IOException e) {
+                this.logger.warn("Could not index module {}", module.descriptor().name(), e);
+            }
+        }
+    }
+
+    private void scanJar(Path jar, SymbolTrie.Builder types, SymbolTrie.Builder members) {
+        try (ZipFile zip = new ZipFile(jar.toFile())) {
+            Enumeration<? extends ZipEntry> entries = zip.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                // Versioned entries of multi-release jars repeat the same classes
+                if (!this.isClassFile(entry.getName()) || entry.getName().startsWith("META-INF/")) continue;
+                try (InputStream in = zip.getInputStream(entry)) {
+                    this.scanClass(in, types, members);
+                } catch (IOException | IndexOutOfBoundsException e) {
+                    this.logger.debug("Skipping unreadable class file {}", entry.getName(), e);
+                }
+            }
+        } catch (IOException e) {
+            this.logger.warn("Could not index {}", jar, e);
+        }
+    }
+
+    private boolean isClassFile(String resource) {
+        return resource.endsWith(".class") && !resource.endsWith("module-info.class") &&
+                !resource.endsWith("package-info.class");
+    }
+
+    private String packageOf(String resource) {
+        int slash = resource.lastIndexOf('/');
+        return slash < 0 ? "" : resource.substring(0, slash).replace('/', '.');
+    }
+
+    /*
+     *  Read just enough of a class file for its name, access flags and
+     *  public static members.
+     */
+    private void scanClass(InputStream in, SymbolTrie.Builder types, SymbolTrie.Builder members) throws IOException {
+        DataInputStream data = new DataInputStream(new ByteArrayInputStream(in.readAllBytes()));
+        if (data.readInt() != 0xCAFEBABE) return;
+        data.readUnsignedShort();
+        data.readUnsignedShort();
+        int constants = data.readUnsignedShort();
+        String[] utf8 = new String[constants];
+        int[] classNames = new int[constants];
+        for (int i = 1; i < constants; i++) {
+            int tag = data.readUnsignedByte();
+            switch (tag) {
+                case 1:
+                    utf8[i] = data.readUTF();
+                    break;
+                case 7:
+                    classNames[i] = data.readUnsignedShort();
+                    break;
+                case 8:
+                case 16:
+                case 19:
+                case 20:
+                    data.skipBytes(2);
+                    break;
+                case 15:
+                    data.skipBytes(3);
+                    break;
+                case 3:
+                case 4:
+                case 9:
+                case 10:
+                case 11:
+                case 12:
+                case 17:
+                case 18:
+                    data.skipBytes(4);
+                    break;
+                case 5:
+                case 6:
+                    // Longs and doubles take up two entries
+                    data.skipBytes(8);
+                    i++;
+                    break;
+                default:
+                    return;
+            }
+        }
+        int access = data.readUnsignedShort();
+        String binaryName = utf8[classNames[data.readUnsignedShort()]];
+        if ((access & ACC_PUBLIC) == 0 || (access & ACC_SYNTHETIC) != 0 || binaryName == null) return;
+        String qualifiedName = binaryName.replace('/', '.').replace('$', '.');
+        int lastSlash = binaryName.lastIndexOf('/');
+        String packageName = lastSlash < 0 ? "" : binaryName.substring(0, lastSlash).replace('/', '.');
+        String simpleName = binaryName.substring(Math.max(lastSlash, binaryName.lastIndexOf('$')) + 1);
+        // Anonymous and local classes
+        if (simpleName.isEmpty() || Character.isDigit(simpleName.charAt(0))) return;
+        types.add(simpleName, SymbolTrie.CLASS, qualifiedName);
+        if (!packageName.isEmpty())
+            types.add(packageName, SymbolTrie.PACKAGE, packageName);
+
+        data.skipBytes(2);
+        data.skipBytes(2 * data.readUnsignedShort());
+        for (int kind = 0; kind < 2; kind++) {
+            int count = data.readUnsignedShort();
+            for (int i = 0; i < count; i++) {
+                int flags = data.readUnsignedShort();
+                String name = utf8[data.readUnsignedShort()];
+                data.skipBytes(2);
+                int attributes = data.readUnsignedShort();
+                for (int j = 0; j < attributes; j++) {
+                    data.skipBytes(2);
+                    data.skipBytes(data.readInt());
+                }
+                // Bridge methods share their flag with volatile fields
+                int hidden = kind == 0 ? ACC_SYNTHETIC : ACC_SYNTHETIC | ACC_BRIDGE;
+                if ((flags & (ACC_PUBLIC | ACC_STATIC)) != (ACC_PUBLIC | ACC_STATIC) || (flags & hidden) != 0 ||
+                        name == null || name.startsWith("<")) continue;
+                members.add(simpleName + "." + name, kind == 0 ? SymbolTrie.FIELD : SymbolTrie.METHOD, qualifiedName);
+            }
+        }
+    }
+}
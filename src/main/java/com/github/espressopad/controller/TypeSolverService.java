@@ -0,0 +1,300 @@
+package com.github.espressopad.controller;
+
+import com.github.espressopad.utils.LruCache;
+import com.github.espressopad.utils.TaskScheduler;
+import com.github.espressopad.utils.XmlUtilities;
+import com.github.javaparser.ast.Node;
+import com.github.javaparser.ast.expr.*;
+import com.github.javaparser.ast.type.ClassOrInterfaceType;
+import com.github.javaparser.resolution.Resolvable;
+import com.github.javaparser.resolution.TypeSolver;
+import com.github.javaparser.resolution.declarations.*;
+import com.github.javaparser.resolution.model.SymbolReference;
+import com.github.javaparser.resolution.types.ResolvedType;
+import com.github.javaparser.symbolsolver.JavaSymbolSolver;
+import com.github.javaparser.symbolsolver.cache.NoCache;
+import com.github.javaparser.symbolsolver.javaparsermodel.JavaParserFacade;
+import com.github.javaparser.symbolsolver.javaparsermodel.JavaParserFactory;
+import com.github.javaparser.symbolsolver.resolution.typesolvers.CombinedTypeSolver;
+import com.github.javaparser.symbolsolver.resolution.typesolvers.JarTypeSolver;
+import com.github.javaparser.symbolsolver.resolution.typesolvers.ReflectionTypeSolver;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+
+/*
+ *  Resolves symbols of a script against the JDK and the jars in
+ *  artifacts.xml, for hover type information and go to declaration. The
+ *  type solvers are built once in the background, shared by every tab
+ *  and only built again when the JDK or the artifacts change. Every
+ *  solver keeps what it has looked up in a bounded cache and counts how
+ *  long it took, so a slow jar stands out.
+ */
+public class TypeSolverService {
+    private static final int CACHE_ENTRIES = 4096;
+    private final Logger logger = LoggerFactory.getLogger(TypeSolverService.class);
+    private final XmlUtilities handler = new XmlUtilities();
+    private volatile Solvers solvers;
+    private volatile List<String> imports = List.of();
+    private volatile long lastResolveMillis;
+
+    /*
+     *  Build the type solvers if the JDK or the artifacts have changed.
+     *  Returns right away; nothing is resolved until they are built.
+     */
+    public void refresh() {
+        try {
+            TaskScheduler.getInstance().submit(TaskScheduler.Lane.IO, () -> {
+                try {
+                    this.load();
+                } catch (RuntimeException e) {
+                    this.logger.error("Could not build the type solvers", e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            this.logger.warn("Type solver refresh rejected");
+        }
+    }
+
+    private synchronized void load() {
+        this.imports = this.handler.getImportsFile().exists() ?
+                List.copyOf(this.handler.parseImportXml()) : List.of();
+        List<Path> jars = Classpath.getJars(this.handler);
+        String fingerprint = Classpath.fingerprint(jars);
+        Solvers solvers = this.solvers;
+        if (solvers != null && solvers.fingerprint.equals(fingerprint)) return;
+
+        long start = System.nanoTime();
+        List<TimedTypeSolver> timed = new ArrayList<>();
+        timed.add(new TimedTypeSolver("JDK", new ReflectionTypeSolver(true)));
+        for (Path jar : jars) {
+            try {
+                timed.add(new TimedTypeSolver(jar.getFileName().toString(), new JarTypeSolver(jar)));
+            } catch (IOException | RuntimeException e) {
+                this.logger.warn("Could not read {} for symbol resolution", jar, e);
+            }
+        }
+        // The solvers cache for themselves, so the combined one need not
+        CombinedTypeSolver combined = new CombinedTypeSolver(CombinedTypeSolver.ExceptionHandlers.IGNORE_ALL,
+                new ArrayList<>(timed), NoCache.create());
+        this.solvers = new Solvers(fingerprint, combined, timed);
+        // Let go of everything the facade learnt with the previous solvers
+        JavaParserFacade.clearInstances();
+        this.logger.debug("Built type solvers for {} jars in {} ms", jars.size(),
+                (System.nanoTime() - start) / 1_000_000);
+    }
+
+    /*
+     *  Default imports of the shells, to resolve script symbols with.
+     */
+    List<String> getImports() {
+        return this.imports;
+    }
+
+    long getLastResolveMillis() {
+        return this.lastResolveMillis;
+    }
+
+    /*
+     *  The solver that has spent the most time looking types up, or null
+     *  if none has looked anything up yet.
+     */
+    TimedTypeSolver getSlowestSolver() {
+        Solvers solvers = this.solvers;
+        if (solvers == null) return null;
+        return solvers.timed.stream()
+                .filter(solver -> solver.getLookups() > 0)
+                .max(Comparator.comparingLong(TimedTypeSolver::getNanos))
+                .orElse(null);
+    }
+
+    /*
+     *  What the symbol or expression at a document offset is and where it
+     *  is declared, or null if that can not be worked out (yet).
+     */
+    synchronized Resolution resolve(ParseService.Unit unit, int offset) {
+        Solvers solvers = this.solvers;
+        if (solvers == null) return null;
+        Node node = unit.nodeAt(offset);
+        if (node == null) return null;
+        String key = unit.keyOf(node);
+        Resolution resolution = unit.getResolutions().get(key);
+        if (resolution != null) return resolution;
+
+        long start = System.nanoTime();
+        new JavaSymbolSolver(solvers.combined).inject(unit.getCompilationUnit());
+        JavaParserFacade facade = JavaParserFacade.get(solvers.combined);
+        try {
+            resolution = this.resolve(unit, facade, node);
+        } catch (RuntimeException | StackOverflowError e) {
+            // The symbol solver has its gaps; they are not worth more than a missing tooltip
+            this.logger.debug("Could not resolve {}", node, e);
+            resolution = Resolution.NONE;
+        }
+        this.lastResolveMillis = (System.nanoTime() - start) / 1_000_000;
+        unit.getResolutions().put(key, resolution);
+        return resolution;
+    }
+
+    private Resolution resolve(ParseService.Unit unit, JavaParserFacade facade, Node node) {
+        Node parent = node.getParentNode().orElse(null);
+        if (node instanceof SimpleName && parent != null)
+            node = parent;
+        Object resolved;
+        if (node instanceof NameExpr) {
+            NameExpr name = (NameExpr) node;
+            resolved = this.declaration(facade.solve(name));
+            // A class name in front of a static member, used without type arguments
+            if (resolved == null)
+                resolved = this.declaration(JavaParserFactory.getContext(name, facade.getTypeSolver())
+                        .solveType(name.getNameAsString(), null));
+        }
+        else if (node instanceof MethodCallExpr)
+            resolved = this.declaration(facade.solve((MethodCallExpr) node));
+        else if (node instanceof FieldAccessExpr)
+            resolved = this.declaration(facade.solve((FieldAccessExpr) node));
+        else if (node instanceof ObjectCreationExpr)
+            resolved = this.declaration(facade.solve((ObjectCreationExpr) node));
+        else if (node instanceof ClassOrInterfaceType) {
+            ResolvedType type = facade.convertToUsage((ClassOrInterfaceType) node);
+            resolved = type.isReferenceType() ? type.asReferenceType().getTypeDeclaration().orElse(null) : type;
+        } else if (node instanceof Resolvable)
+            resolved = ((Resolvable<?>) node).resolve();
+        else if (node instanceof Expression)
+            resolved = facade.getType(node);
+        else resolved = null;
+
+        if (resolved instanceof ResolvedType)
+            return new Resolution(this.describe(((ResolvedType) resolved).describe()), -1);
+        if (!(resolved instanceof ResolvedDeclaration))
+            return Resolution.NONE;
+        ResolvedDeclaration declaration = (ResolvedDeclaration) resolved;
+        String description;
+        if (declaration instanceof ResolvedMethodDeclaration) {
+            ResolvedMethodDeclaration method = (ResolvedMethodDeclaration) declaration;
+            description = String.format("%s %s", method.getReturnType().describe(), method.getQualifiedSignature());
+        } else if (declaration instanceof ResolvedMethodLikeDeclaration)
+            description = ((ResolvedMethodLikeDeclaration) declaration).getQualifiedSignature();
+        else if (declaration instanceof ResolvedValueDeclaration) {
+            ResolvedValueDeclaration value = (ResolvedValueDeclaration) declaration;
+            description = String.format("%s %s", value.getType().describe(), value.getName());
+        } else if (declaration instanceof ResolvedTypeDeclaration)
+            description = ((ResolvedTypeDeclaration) declaration).getQualifiedName();
+        else description = declaration.getName();
+        int declared = declaration.toAst()
+                .filter(ast -> ast.findCompilationUnit().orElse(null) == unit.getCompilationUnit())
+                .map(unit::offsetOf)
+                .orElse(-1);
+        return new Resolution(this.describe(description), declared);
+    }
+
+    private Object declaration(SymbolReference<?> reference) {
+        return reference.isSolved() ? reference.getCorrespondingDeclaration() : null;
+    }
+
+    /*
+     *  Script symbols are members of the class the script is wrapped in,
+     *  which is no business of the user's.
+     */
+    private String describe(String description) {
+        return description.replace(ParseService.SCRIPT_CLASS + ".", "");
+    }
+
+    static final class Resolution {
+        static final Resolution NONE = new Resolution(null, -1);
+        private final String description;
+        private final int declarationOffset;
+
+        Resolution(String description, int declarationOffset) {
+            this.description = description;
+            this.declarationOffset = declarationOffset;
+        }
+
+        /*
+         *  The type of the symbol or expression, or its signature.
+         */
+        String getDescription() {
+            return this.description;
+        }
+
+        /*
+         *  Document offset of the declaration, or -1 if it is not declared
+         *  in the script.
+         */
+        int getDeclarationOffset() {
+            return this.declarationOffset;
+        }
+    }
+
+    /*
+     *  A type solver that remembers what it looked up and how long that took.
+     */
+    static final class TimedTypeSolver implements TypeSolver {
+        private final String name;
+        private final TypeSolver solver;
+        private final LruCache<String, SymbolReference<ResolvedReferenceTypeDeclaration>> cache =
+                new LruCache<>(CACHE_ENTRIES);
+        private TypeSolver parent;
+        private volatile long nanos;
+        private volatile long lookups;
+
+        TimedTypeSolver(String name, TypeSolver solver) {
+            this.name = name;
+            this.solver = solver;
+        }
+
+        String getName() {
+            return this.name;
+        }
+
+        long getNanos() {
+            return this.nanos;
+        }
+
+        long getLookups() {
+            return this.lookups;
+        }
+
+        @Override
+        public TypeSolver getParent() {
+            return this.parent;
+        }
+
+        @Override
+        public void setParent(TypeSolver parent) {
+            this.parent = parent;
+            // Types found by the wrapped solver resolve their own references from the root
+            this.solver.setParent(parent);
+        }
+
+        @Override
+        public SymbolReference<ResolvedReferenceTypeDeclaration> tryToSolveType(String name) {
+            SymbolReference<ResolvedReferenceTypeDeclaration> reference = this.cache.get(name);
+            if (reference != null) return reference;
+            long start = System.nanoTime();
+            reference = this.solver.tryToSolveType(name);
+            this.nanos += System.nanoTime() - start;
+            this.lookups++;
+            this.cache.put(name, reference);
+            return reference;
+        }
+    }
+
+    private static final class Solvers {
+        private final String fingerprint;
+        private final CombinedTypeSolver combined;
+        private final List<TimedTypeSolver> timed;
+
+        Solvers(String fingerprint, CombinedTypeSolver combined, List<TimedTypeSolver> timed) {
+            this.fingerprint = fingerprint;
+            this.combined = combined;
+            this.timed = timed;
+        }
+    }
+}
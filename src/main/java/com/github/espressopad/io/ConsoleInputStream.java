@@ -3,37 +3,158 @@ package com.github.espressopad.io;
 import com.github.espressopad.views.components.StatusBar;
 
 import javax.swing.JOptionPane;
+import javax.swing.SwingUtilities;
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.Locale;
 import java.util.ResourceBundle;
 
+/*
+ *  Standard input of a run. Input comes from text given up front, from a
+ *  file that is mapped into memory a region at a time, or from a dialog
+ *  that asks for a line whenever the snippets have read everything typed
+ *  so far. Scripted input ends where the text or file ends, so such runs
+ *  never wait for the user. What is read can be echoed to the console.
+ */
 public class ConsoleInputStream extends InputStream {
-    private final StringBuilder buffer = new StringBuilder();
-    private final StatusBar statusBar;
+    private static final long REGION_SIZE = 1L << 26;
+    private static final ByteBuffer EMPTY = ByteBuffer.allocate(0);
     private final ResourceBundle resourceBundle = ResourceBundle.getBundle("messages", Locale.getDefault());
+    private final StatusBar statusBar;
+    private final Charset charset;
+    private final FileChannel channel;
+    private final long size;
+    private long mapped = 0;
+    private ByteBuffer buffer = EMPTY;
+    private OutputStream echo;
+    private boolean endOfInput = false;
 
-    public ConsoleInputStream(StatusBar statusBar) {
+    /*
+     *  Ask for input with a dialog, encoding what is typed in the given charset
+     */
+    public ConsoleInputStream(StatusBar statusBar, Charset charset) {
         this.statusBar = statusBar;
+        this.charset = charset;
+        this.channel = null;
+        this.size = 0;
+    }
+
+    /*
+     *  Read the given text and nothing else
+     */
+    public ConsoleInputStream(String text, Charset charset) {
+        this.statusBar = null;
+        this.charset = charset;
+        this.channel = null;
+        this.size = 0;
+        this.buffer = ByteBuffer.wrap(text.getBytes(charset));
+    }
+
+    /*
+     *  Read the contents of a file as is
+     */
+    public ConsoleInputStream(Path file) throws IOException {
+        this.statusBar = null;
+        this.charset = null;
+        this.channel = FileChannel.open(file, StandardOpenOption.READ);
+        this.size = this.channel.size();
+    }
+
+    public synchronized void setEcho(OutputStream echo) {
+        this.echo = echo;
+    }
+
+    @Override
+    public synchronized int read() throws IOException {
+        if (!this.fill()) return -1;
+        int b = this.buffer.get() & 0xFF;
+        if (this.echo != null)
+            this.echo.write(b);
+        return b;
     }
 
     @Override
-    public int read() {
-        if (this.buffer.length() == 0) {
-            this.statusBar.setStatusLabel(this.resourceBundle.getString("awaiting.input"));
-            this.buffer.append(
-                    JOptionPane.showInputDialog(
-                            JOptionPane.getFrameForComponent(this.statusBar),
-                            this.resourceBundle.getString("enter.input"),
-                            this.resourceBundle.getString("awaiting.input"),
-                            JOptionPane.QUESTION_MESSAGE
-                    )
-            );
-            this.buffer.append("\n");
+    public synchronized int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) return 0;
+        if (!this.fill()) return -1;
+        int count = Math.min(len, this.buffer.remaining());
+        this.buffer.get(b, off, count);
+        if (this.echo != null)
+            this.echo.write(b, off, count);
+        return count;
+    }
+
+    @Override
+    public synchronized int available() {
+        return this.buffer.remaining();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        this.endOfInput = true;
+        this.buffer = EMPTY;
+        if (this.channel != null)
+            this.channel.close();
+    }
+
+    /*
+     *  Make sure there is something to read, returning false at the end of input
+     */
+    private boolean fill() throws IOException {
+        while (!this.buffer.hasRemaining()) {
+            if (this.endOfInput) return false;
+            if (this.channel != null) {
+                if (this.mapped >= this.size) {
+                    this.endOfInput = true;
+                    return false;
+                }
+                long length = Math.min(REGION_SIZE, this.size - this.mapped);
+                this.buffer = this.channel.map(FileChannel.MapMode.READ_ONLY, this.mapped, length);
+                this.mapped += length;
+            } else if (this.statusBar != null) {
+                String line = this.prompt();
+                if (line == null) {
+                    // Cancelling the dialog closes standard input
+                    this.endOfInput = true;
+                    return false;
+                }
+                this.buffer = ByteBuffer.wrap((line + "\n").getBytes(this.charset));
+            } else {
+                this.endOfInput = true;
+                return false;
+            }
         }
+        return true;
+    }
 
-        char charToRead = this.buffer.charAt(0);
-        this.buffer.deleteCharAt(0);
-        System.out.print(charToRead);
-        return charToRead;
+    private String prompt() throws IOException {
+        String[] line = new String[1];
+        try {
+            SwingUtilities.invokeAndWait(() -> {
+                String status = this.statusBar.getStatusLabel();
+                this.statusBar.setStatusLabel(this.resourceBundle.getString("awaiting.input"));
+                line[0] = JOptionPane.showInputDialog(
+                        JOptionPane.getFrameForComponent(this.statusBar),
+                        this.resourceBundle.getString("enter.input"),
+                        this.resourceBundle.getString("awaiting.input"),
+                        JOptionPane.QUESTION_MESSAGE
+                );
+                this.statusBar.setStatusLabel(status);
+            });
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        } catch (InvocationTargetException e) {
+            throw new IOException(e.getCause());
+        }
+        return line[0];
     }
 }
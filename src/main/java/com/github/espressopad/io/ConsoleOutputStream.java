@@ -1,32 +1,59 @@
 package com.github.espressopad.io;
 
 import com.github.espressopad.views.components.MessageConsole;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
-import javax.swing.text.BadLocationException;
 import javax.swing.text.SimpleAttributeSet;
 import javax.swing.text.StyleConstants;
 import java.awt.Color;
-import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
 
 /*
  *	Class to intercept output from a PrintStream and add it to a Document.
  *  The output can optionally be redirected to a different PrintStream.
  *  The text displayed in the Document can be color coded to indicate
  *  the output source.
+ *
+ *  Bytes are decoded with one reusable decoder and buffer pair. A
+ *  character whose bytes are split across flushes stays in the byte
+ *  buffer until the rest of it arrives. Flushing only hands the text to
+ *  the console's queue; the Document is updated later on the EDT.
  */
-public class ConsoleOutputStream extends ByteArrayOutputStream {
-    private final String EOL = System.lineSeparator();
+public class ConsoleOutputStream extends OutputStream {
+    private static final int BUFFER_SIZE = 8192;
+    private final ByteBuffer bytes = ByteBuffer.allocate(BUFFER_SIZE);
+    private final CharBuffer chars = CharBuffer.allocate(BUFFER_SIZE);
+    // The byte of write(int), so that the tee gets an array without one being made per byte
+    private final byte[] single = new byte[1];
+    private final CharsetDecoder decoder;
     private SimpleAttributeSet attributes;
     private final PrintStream printStream;
-    private final StringBuffer buffer = new StringBuffer(80);
-    private boolean isFirstLine;
     private final MessageConsole messageConsole;
+    private final Logger logger = LoggerFactory.getLogger(ConsoleOutputStream.class);
+    private OutputFile tee;
 
     /*
      *  Specify the option text color and PrintStream
      */
     public ConsoleOutputStream(MessageConsole messageConsole, Color textColor, PrintStream printStream) {
+        this(messageConsole, textColor, printStream, Charset.defaultCharset());
+    }
+
+    /*
+     *  Specify the option text color and PrintStream, and the charset
+     *  the output is encoded in
+     */
+    public ConsoleOutputStream(MessageConsole messageConsole, Color textColor, PrintStream printStream,
+                               Charset charset) {
         this.messageConsole = messageConsole;
         if (textColor != null) {
             this.attributes = new SimpleAttributeSet();
@@ -34,100 +61,94 @@ public class ConsoleOutputStream extends ByteArrayOutputStream {
         }
 
         this.printStream = printStream;
-
-        if (this.messageConsole.isAppend())
-            this.isFirstLine = true;
+        this.decoder = charset.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
     }
 
     /*
-     *  Override this method to intercept the output text. Each line of text
-     *  output will actually involve invoking this method twice:
-     *
-     *  a) for the actual text message
-     *  b) for the newLine string
-     *
-     *  The message will be treated differently depending on whether the line
-     *  will be appended or inserted into the Document
+     *  Also write every byte, undecoded and before any output policy has
+     *  had a say, to the given file.
      */
-    @Override
-    public void flush() {
-        String message = this.toString();
-
-        if (message.length() == 0) return;
-
-        if (this.messageConsole.isAppend())
-            this.handleAppend(message);
-        else
-            this.handleInsert(message);
-
-        this.reset();
+    public synchronized void setTee(OutputFile tee) {
+        this.tee = tee;
     }
 
-    /*
-     *	We don't want to have blank lines in the Document. The first line
-     *  added will simply be the message. For additional lines it will be:
-     *
-     *  newLine + message
-     */
-    private void handleAppend(String message) {
-        //  This check is needed in case the text in the Document has been
-        //	cleared. The buffer may contain the EOL string from the previous
-        //  message.
-
-        if (this.messageConsole.getDocument().getLength() == 0)
-            this.buffer.setLength(0);
+    @Override
+    public synchronized void write(int b) {
+        if (this.tee != null) {
+            this.single[0] = (byte) b;
+            this.tee(this.single, 0, 1);
+        }
+        if (!this.bytes.hasRemaining())
+            this.decode(false);
+        this.bytes.put((byte) b);
+    }
 
-        if (this.EOL.equals(message))
-            this.buffer.append(message);
-        else {
-            this.buffer.append(message);
-            this.clearBuffer();
+    @Override
+    public synchronized void write(byte[] b, int off, int len) {
+        this.tee(b, off, len);
+        while (len > 0) {
+            if (!this.bytes.hasRemaining())
+                this.decode(false);
+            int count = Math.min(len, this.bytes.remaining());
+            this.bytes.put(b, off, count);
+            off += count;
+            len -= count;
         }
     }
 
     /*
-     *  We don't want to merge the new message with the existing message
-     *  so the line will be inserted as:
-     *
-     *  message + newLine
+     *  Override this method to intercept the output text. A PrintStream
+     *  with auto flushing calls it for every line, so it must stay cheap.
      */
-    private void handleInsert(String message) {
-        this.buffer.append(message);
-
-        if (this.EOL.equals(message))
-            this.clearBuffer();
+    @Override
+    public synchronized void flush() {
+        this.decode(false);
     }
 
     /*
-     *  The message and the newLine have been added to the buffer in the
-     *  appropriate order so we can now update the Document and send the
-     *  text to the optional PrintStream.
+     *  Anything left of an incomplete character is shown as a replacement.
      */
-    private void clearBuffer() {
-        //  In case both the standard out and standard err are being redirected
-        //  we need to insert a newline character for the first line only
-
-        if (this.isFirstLine && this.messageConsole.getDocument().getLength() != 0)
-            this.buffer.insert(0, "\n");
-
-        this.isFirstLine = false;
-        String line = this.buffer.toString();
+    @Override
+    public synchronized void close() {
+        this.decode(true);
+        this.decoder.flush(this.chars);
+        this.emit(0);
+        this.decoder.reset();
+    }
 
+    private void tee(byte[] b, int off, int len) {
+        if (this.tee == null) return;
         try {
-            if (this.messageConsole.isAppend()) {
-                int offset = this.messageConsole.getDocument().getLength();
-                this.messageConsole.getDocument().insertString(offset, line, this.attributes);
-                this.messageConsole.getTextComponent().setCaretPosition(this.messageConsole.getDocument().getLength());
-            } else {
-                this.messageConsole.getDocument().insertString(0, line, this.attributes);
-                this.messageConsole.getTextComponent().setCaretPosition(0);
-            }
-        } catch (BadLocationException e) {
+            this.tee.write(b, off, len);
+        } catch (IOException e) {
+            this.logger.error("Could not write output to {}", this.tee.getPath(), e);
+            this.tee = null;
         }
+    }
 
-        if (this.printStream != null)
-            this.printStream.print(line);
+    private void decode(boolean endOfInput) {
+        this.bytes.flip();
+        int mark = 0;
+        while (true) {
+            CoderResult result = this.decoder.decode(this.bytes, this.chars, endOfInput);
+            if (!result.isOverflow()) break;
+            this.emit(this.bytes.position() - mark);
+            mark = this.bytes.position();
+        }
+        int consumed = this.bytes.position() - mark;
+        // Keeps the start of a character that has not been written completely
+        this.bytes.compact();
+        this.emit(consumed);
+    }
+
+    private void emit(int byteCount) {
+        if (this.chars.position() == 0) return;
+        this.messageConsole.write(this.chars.array(), 0, this.chars.position(), this.attributes, byteCount);
 
-        this.buffer.setLength(0);
+        if (this.printStream != null)
+            this.printStream.print(new String(this.chars.array(), 0, this.chars.position()));
+        this.chars.clear();
     }
 }
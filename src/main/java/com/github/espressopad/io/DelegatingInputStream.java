@@ -0,0 +1,38 @@
+package com.github.espressopad.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/*
+ *  An InputStream whose source can be swapped while it is in use.
+ *  Reading while no source is set behaves as end of stream.
+ */
+public class DelegatingInputStream extends InputStream {
+    private volatile InputStream source;
+
+    public InputStream getSource() {
+        return this.source;
+    }
+
+    public void setSource(InputStream source) {
+        this.source = source;
+    }
+
+    @Override
+    public int read() throws IOException {
+        InputStream in = this.source;
+        return in == null ? -1 : in.read();
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        InputStream in = this.source;
+        return in == null ? -1 : in.read(b, off, len);
+    }
+
+    @Override
+    public int available() throws IOException {
+        InputStream in = this.source;
+        return in == null ? 0 : in.available();
+    }
+}
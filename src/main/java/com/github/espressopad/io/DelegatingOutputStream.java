@@ -0,0 +1,41 @@
+package com.github.espressopad.io;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/*
+ *  An OutputStream whose destination can be swapped while it is in use.
+ *  Output written while no destination is set is discarded.
+ */
+public class DelegatingOutputStream extends OutputStream {
+    private volatile OutputStream target;
+
+    public OutputStream getTarget() {
+        return this.target;
+    }
+
+    public void setTarget(OutputStream target) {
+        this.target = target;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        OutputStream out = this.target;
+        if (out != null)
+            out.write(b);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        OutputStream out = this.target;
+        if (out != null)
+            out.write(b, off, len);
+    }
+
+    @Override
+    public void flush() throws IOException {
+        OutputStream out = this.target;
+        if (out != null)
+            out.flush();
+    }
+}
@@ -0,0 +1,112 @@
+package com.github.espressopad.io;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.GZIPOutputStream;
+
+/*
+ *  Writes run output to disk through a file channel, compressing it when
+ *  the file name ends in .gz. Writes are buffered and safe to make from
+ *  several threads, so standard output and standard error can share one
+ *  file. Nothing but the buffer is held in memory.
+ */
+public class OutputFile implements AutoCloseable {
+    private static final int BUFFER_SIZE = 1 << 16;
+    private final Path path;
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private final OutputStream compressor;
+
+    public OutputFile(Path path) throws IOException {
+        this.path = path;
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        this.compressor = path.getFileName().toString().endsWith(".gz") ?
+                new GZIPOutputStream(Channels.newOutputStream(this.channel), BUFFER_SIZE) : null;
+    }
+
+    public Path getPath() {
+        return this.path;
+    }
+
+    public synchronized void write(byte[] bytes, int offset, int length) throws IOException {
+        if (this.compressor != null) {
+            this.compressor.write(bytes, offset, length);
+            return;
+        }
+        while (length > 0) {
+            if (!this.buffer.hasRemaining())
+                this.drain();
+            int count = Math.min(length, this.buffer.remaining());
+            this.buffer.put(bytes, offset, count);
+            offset += count;
+            length -= count;
+        }
+    }
+
+    public synchronized void write(ByteBuffer bytes) throws IOException {
+        if (this.compressor != null) {
+            byte[] chunk = new byte[Math.min(bytes.remaining(), BUFFER_SIZE)];
+            while (bytes.hasRemaining()) {
+                int count = Math.min(chunk.length, bytes.remaining());
+                bytes.get(chunk, 0, count);
+                this.compressor.write(chunk, 0, count);
+            }
+            return;
+        }
+        this.drain();
+        while (bytes.hasRemaining())
+            this.channel.write(bytes);
+    }
+
+    /*
+     *  Copy the first length bytes of another file. Uncompressed output is
+     *  handed to the file system without passing through the heap.
+     */
+    public synchronized void transferFrom(Path source, long length) throws IOException {
+        try (FileChannel input = FileChannel.open(source, StandardOpenOption.READ)) {
+            if (this.compressor == null) {
+                this.drain();
+                long position = 0;
+                while (position < length) {
+                    long count = input.transferTo(position, length - position, this.channel);
+                    if (count <= 0) break;
+                    position += count;
+                }
+                return;
+            }
+            ByteBuffer chunk = ByteBuffer.allocate(BUFFER_SIZE);
+            long position = 0;
+            while (position < length) {
+                chunk.clear().limit((int) Math.min(BUFFER_SIZE, length - position));
+                int count = input.read(chunk, position);
+                if (count < 0) break;
+                this.compressor.write(chunk.array(), 0, count);
+                position += count;
+            }
+        }
+    }
+
+    private void drain() throws IOException {
+        this.buffer.flip();
+        while (this.buffer.hasRemaining())
+            this.channel.write(this.buffer);
+        this.buffer.clear();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            if (this.compressor != null)
+                this.compressor.close();
+            else this.drain();
+        } finally {
+            this.channel.close();
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package com.github.espressopad.io;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/*
+ *  Append-only UTF-8 text kept in a memory-mapped temporary file. The
+ *  offset of every line and of every change of style is indexed in
+ *  primitive arrays, so any line can be read back without scanning.
+ *  Not thread safe; the output viewer only uses it from the EDT.
+ */
+public class SpillFile implements AutoCloseable {
+    private static final int REGION_SIZE = 1 << 24;
+    private final Path path;
+    private final FileChannel channel;
+    private final List<MappedByteBuffer> regions = new ArrayList<>();
+    private long size = 0;
+    private long[] lineStarts = new long[1024];
+    private int lineCount = 1;
+    private long[] runStarts = new long[64];
+    private int[] runStyles = new int[64];
+    private int runCount = 0;
+    private int longestLine = 0;
+
+    public SpillFile() throws IOException {
+        this.path = Files.createTempFile("espressopad-output-", ".spill");
+        this.path.toFile().deleteOnExit();
+        this.channel = FileChannel.open(this.path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+
+    public void append(String text, int style) throws IOException {
+        if (text.isEmpty()) return;
+        if (this.runCount == 0 || this.runStyles[this.runCount - 1] != style) {
+            if (this.runCount == this.runStarts.length) {
+                this.runStarts = Arrays.copyOf(this.runStarts, this.runCount * 2);
+                this.runStyles = Arrays.copyOf(this.runStyles, this.runCount * 2);
+            }
+            this.runStarts[this.runCount] = this.size;
+            this.runStyles[this.runCount++] = style;
+        }
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        int offset = 0;
+        while (offset < bytes.length) {
+            MappedByteBuffer region = this.region(this.size);
+            int position = (int) (this.size % REGION_SIZE);
+            int length = Math.min(bytes.length - offset, REGION_SIZE - position);
+            region.duplicate().position(position).put(bytes, offset, length);
+            offset += length;
+            this.size += length;
+        }
+        long start = this.size - bytes.length;
+        for (int i = 0; i < bytes.length; i++) {
+            if (bytes[i] != '\n') continue;
+            this.longestLine = (int) Math.max(this.longestLine,
+                    Math.min(Integer.MAX_VALUE, start + i - this.lineStarts[this.lineCount - 1]));
+            if (this.lineCount == this.lineStarts.length)
+                this.lineStarts = Arrays.copyOf(this.lineStarts, this.lineCount * 2);
+            this.lineStarts[this.lineCount++] = start + i + 1;
+        }
+        this.longestLine = (int) Math.max(this.longestLine,
+                Math.min(Integer.MAX_VALUE, this.size - this.lineStarts[this.lineCount - 1]));
+    }
+
+    public Path getPath() {
+        return this.path;
+    }
+
+    public int getLineCount() {
+        return this.lineCount;
+    }
+
+    public long getSize() {
+        return this.size;
+    }
+
+    /*
+     *  Length in bytes of the longest line, which bounds its width in characters.
+     */
+    public int getLongestLine() {
+        return this.longestLine;
+    }
+
+    /*
+     *  Hand the styled pieces of a line, without its line terminator, to
+     *  the consumer. Lines longer than maximumBytes are cut off.
+     */
+    public void readLine(int line, int maximumBytes, LineConsumer consumer) {
+        long start = this.lineStarts[line];
+        long end = line + 1 < this.lineCount ? this.lineStarts[line + 1] - 1 : this.size;
+        if (end > start && this.byteAt(end - 1) == '\r') end--;
+        end = Math.min(end, start + maximumBytes);
+        int run = Arrays.binarySearch(this.runStarts, 0, this.runCount, start);
+        if (run < 0) run = -run - 2;
+        long position = start;
+        while (position < end) {
+            long runEnd = run + 1 < this.runCount ? Math.min(end, this.runStarts[run + 1]) : end;
+            if (runEnd > position)
+                consumer.accept(new String(this.read(position, (int) (runEnd - position)), StandardCharsets.UTF_8),
+                        this.runStyles[Math.max(run, 0)]);
+            position = runEnd;
+            run++;
+        }
+    }
+
+    private byte byteAt(long position) {
+        return this.regions.get((int) (position / REGION_SIZE)).get((int) (position % REGION_SIZE));
+    }
+
+    private byte[] read(long position, int length) {
+        byte[] bytes = new byte[length];
+        int offset = 0;
+        while (offset < length) {
+            MappedByteBuffer region = this.regions.get((int) (position / REGION_SIZE));
+            int regionPosition = (int) (position % REGION_SIZE);
+            int count = Math.min(length - offset, REGION_SIZE - regionPosition);
+            region.duplicate().position(regionPosition).get(bytes, offset, count);
+            offset += count;
+            position += count;
+        }
+        return bytes;
+    }
+
+    private MappedByteBuffer region(long position) throws IOException {
+        int index = (int) (position / REGION_SIZE);
+        while (this.regions.size() <= index)
+            this.regions.add(this.channel.map(FileChannel.MapMode.READ_WRITE,
+                    (long) this.regions.size() * REGION_SIZE, REGION_SIZE));
+        return this.regions.get(index);
+    }
+
+    @Override
+    public void close() {
+        this.regions.clear();
+        try {
+            this.channel.close();
+            Files.deleteIfExists(this.path);
+        } catch (IOException ignored) {
+            // Still mapped on some platforms; deleteOnExit takes care of it
+        }
+    }
+
+    public interface LineConsumer {
+        void accept(String text, int style);
+    }
+}
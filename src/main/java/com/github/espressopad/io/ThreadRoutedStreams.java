@@ -0,0 +1,123 @@
+package com.github.espressopad.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+
+/*
+ *  Snippets run by the in-process execution engine write to System.out
+ *  and read from System.in directly. Once installed, the standard streams
+ *  are replaced with ones that look up the streams of the run that
+ *  started the current thread, and fall back to the original streams
+ *  for everything else. The route is inherited by the threads the
+ *  engine and the snippets start, but not used by the routing thread
+ *  itself so that EspressoPad's own logging stays where it was.
+ */
+public class ThreadRoutedStreams {
+    private static final InheritableThreadLocal<Route> route = new InheritableThreadLocal<>();
+    private static boolean installed = false;
+
+    private ThreadRoutedStreams() {
+    }
+
+    public static synchronized void install() {
+        if (installed) return;
+        installed = true;
+        PrintStream out = System.out;
+        PrintStream err = System.err;
+        InputStream in = System.in;
+        System.setOut(new PrintStream(new RoutedOutputStream(out, false), true));
+        System.setErr(new PrintStream(new RoutedOutputStream(err, true), true));
+        System.setIn(new RoutedInputStream(in));
+    }
+
+    /*
+     *  Send the standard streams of threads started from the current
+     *  thread from now on to the given streams.
+     */
+    public static void route(OutputStream out, OutputStream err, InputStream in) {
+        route.set(new Route(out, err, in));
+    }
+
+    private static Route current() {
+        Route current = route.get();
+        return current == null || current.owner == Thread.currentThread() ? null : current;
+    }
+
+    public static void clear() {
+        route.remove();
+    }
+
+    private static class Route {
+        private final Thread owner = Thread.currentThread();
+        private final OutputStream out;
+        private final OutputStream err;
+        private final InputStream in;
+
+        Route(OutputStream out, OutputStream err, InputStream in) {
+            this.out = out;
+            this.err = err;
+            this.in = in;
+        }
+    }
+
+    private static class RoutedOutputStream extends OutputStream {
+        private final OutputStream fallback;
+        private final boolean error;
+
+        RoutedOutputStream(OutputStream fallback, boolean error) {
+            this.fallback = fallback;
+            this.error = error;
+        }
+
+        private OutputStream target() {
+            Route current = current();
+            if (current == null) return this.fallback;
+            return this.error ? current.err : current.out;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            this.target().write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            this.target().write(b, off, len);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            this.target().flush();
+        }
+    }
+
+    private static class RoutedInputStream extends InputStream {
+        private final InputStream fallback;
+
+        RoutedInputStream(InputStream fallback) {
+            this.fallback = fallback;
+        }
+
+        private InputStream source() {
+            Route current = current();
+            return current == null ? this.fallback : current.in;
+        }
+
+        @Override
+        public int read() throws IOException {
+            return this.source().read();
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            return this.source().read(b, off, len);
+        }
+
+        @Override
+        public int available() throws IOException {
+            return this.source().available();
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package com.github.espressopad.models;
+
+import com.fasterxml.jackson.dataformat.xml.annotation.JacksonXmlProperty;
+import com.fasterxml.jackson.dataformat.xml.annotation.JacksonXmlRootElement;
+
+import java.io.Serializable;
+
+@JacksonXmlRootElement(localName = "cachedSnippet")
+public class CachedSnippet implements Serializable {
+    public enum Kind {
+        // A class, interface, enum or record compiled into package REPL
+        TYPE,
+        // A method compiled into a holder class and brought in with a static import
+        METHOD,
+        // Could not be compiled on its own, e.g. because it uses a variable
+        UNCACHEABLE
+    }
+
+    @JacksonXmlProperty(localName = "key")
+    private String key;
+    @JacksonXmlProperty(localName = "kind")
+    private Kind kind;
+    @JacksonXmlProperty(localName = "name")
+    private String name;
+    @JacksonXmlProperty(localName = "holder")
+    private String holder;
+
+    public CachedSnippet() {
+    }
+
+    public CachedSnippet(String key, Kind kind, String name, String holder) {
+        this.key = key;
+        this.kind = kind;
+        this.name = name;
+        this.holder = holder;
+    }
+
+    public String getKey() {
+        return this.key;
+    }
+
+    public void setKey(String key) {
+        this.key = key;
+    }
+
+    public Kind getKind() {
+        return this.kind;
+    }
+
+    public void setKind(Kind kind) {
+        this.kind = kind;
+    }
+
+    public String getName() {
+        return this.name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public String getHolder() {
+        return this.holder;
+    }
+
+    public void setHolder(String holder) {
+        this.holder = holder;
+    }
+}
@@ -0,0 +1,24 @@
+package com.github.espressopad.models;
+
+public enum ExecutionEngine {
+    // Snippets run in a separate VM attached through JDI
+    REMOTE("jdi", "remote.vm"),
+    // Snippets run inside EspressoPad's own VM
+    LOCAL("local", "in.process");
+
+    private final String spec;
+    private final String key;
+
+    ExecutionEngine(String spec, String key) {
+        this.spec = spec;
+        this.key = key;
+    }
+
+    public String getSpec() {
+        return this.spec;
+    }
+
+    public String getKey() {
+        return this.key;
+    }
+}
@@ -0,0 +1,26 @@
+package com.github.espressopad.models;
+
+/*
+ *  Where a run's standard input comes from.
+ */
+public enum InputSource {
+    // Ask for a line with a dialog whenever the snippets want more
+    DIALOG("input.from.dialog"),
+    // The text of the tab's input panel
+    TEXT("input.from.panel"),
+    // A file, read as is
+    FILE("input.from.file");
+
+    private final String key;
+
+    InputSource(String key) {
+        this.key = key;
+    }
+
+    /*
+     *  Resource bundle key of the source's display name
+     */
+    public String getKey() {
+        return this.key;
+    }
+}
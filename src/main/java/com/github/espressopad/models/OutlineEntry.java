@@ -0,0 +1,81 @@
+package com.github.espressopad.models;
+
+import java.util.Objects;
+
+/*
+ *  A class, method or variable declared by a script, as listed in the
+ *  outline. Offsets are document offsets and lines start at 1; members
+ *  of a class are one level deeper than the class.
+ */
+public final class OutlineEntry {
+    private final String name;
+    private final String detail;
+    private final Kind kind;
+    private final int offset;
+    private final int line;
+    private final int depth;
+
+    public enum Kind {
+        CLASS,
+        METHOD,
+        VARIABLE
+    }
+
+    public OutlineEntry(String name, String detail, Kind kind, int offset, int line, int depth) {
+        this.name = name;
+        this.detail = detail;
+        this.kind = kind;
+        this.offset = offset;
+        this.line = line;
+        this.depth = depth;
+    }
+
+    public String getName() {
+        return this.name;
+    }
+
+    public String getDetail() {
+        return this.detail;
+    }
+
+    public Kind getKind() {
+        return this.kind;
+    }
+
+    public int getOffset() {
+        return this.offset;
+    }
+
+    public int getLine() {
+        return this.line;
+    }
+
+    public int getDepth() {
+        return this.depth;
+    }
+
+    /*
+     *  The same entry moved by the given number of characters and lines.
+     */
+    public OutlineEntry shift(int offset, int lines) {
+        return new OutlineEntry(this.name, this.detail, this.kind, this.offset + offset, this.line + lines, this.depth);
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (!(other instanceof OutlineEntry)) return false;
+        OutlineEntry entry = (OutlineEntry) other;
+        return this.offset == entry.offset && this.line == entry.line && this.depth == entry.depth &&
+                this.kind == entry.kind && this.name.equals(entry.name) && Objects.equals(this.detail, entry.detail);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(this.name, this.detail, this.kind, this.offset, this.line, this.depth);
+    }
+
+    @Override
+    public String toString() {
+        return this.name;
+    }
+}
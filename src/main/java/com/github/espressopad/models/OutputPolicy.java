@@ -0,0 +1,36 @@
+package com.github.espressopad.models;
+
+/*
+ *  What a run does with output that arrives faster than the console can
+ *  show it.
+ */
+public enum OutputPolicy {
+    // Make the writer wait until the console has caught up
+    BLOCK("block.output", "block.d.lines.delayed"),
+    // Keep what was queued and the latest lines, skip everything in between
+    DROP("drop.output", "drop.d.lines.skipped"),
+    // Keep every Nth line until the console has caught up
+    SAMPLE("sample.output", "sample.d.lines.skipped");
+
+    private final String key;
+    private final String statusKey;
+
+    OutputPolicy(String key, String statusKey) {
+        this.key = key;
+        this.statusKey = statusKey;
+    }
+
+    /*
+     *  Resource bundle key of the policy's display name
+     */
+    public String getKey() {
+        return this.key;
+    }
+
+    /*
+     *  Resource bundle key of the status bar text, taking the affected line count
+     */
+    public String getStatusKey() {
+        return this.statusKey;
+    }
+}
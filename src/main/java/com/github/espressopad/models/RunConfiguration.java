@@ -0,0 +1,155 @@
+package com.github.espressopad.models;
+
+import com.fasterxml.jackson.dataformat.xml.annotation.JacksonXmlProperty;
+
+import java.io.Serializable;
+
+public class RunConfiguration implements Serializable {
+    @JacksonXmlProperty(localName = "file")
+    private String file;
+    @JacksonXmlProperty(localName = "timeoutSeconds")
+    private int timeoutSeconds = 0;
+    @JacksonXmlProperty(localName = "incremental")
+    private boolean incremental = false;
+    @JacksonXmlProperty(localName = "profiling")
+    private boolean profiling = false;
+    @JacksonXmlProperty(localName = "engine")
+    private ExecutionEngine engine = ExecutionEngine.REMOTE;
+    @JacksonXmlProperty(localName = "remoteVmOptions")
+    private String remoteVmOptions = "";
+    @JacksonXmlProperty(localName = "charset")
+    private String charset = "UTF-8";
+    @JacksonXmlProperty(localName = "outputPolicy")
+    private OutputPolicy outputPolicy = OutputPolicy.BLOCK;
+    @JacksonXmlProperty(localName = "sampleInterval")
+    private int sampleInterval = 10;
+    @JacksonXmlProperty(localName = "keptLines")
+    private int keptLines = 100;
+    @JacksonXmlProperty(localName = "teeFile")
+    private String teeFile = "";
+    @JacksonXmlProperty(localName = "inputSource")
+    private InputSource inputSource = InputSource.DIALOG;
+    @JacksonXmlProperty(localName = "inputFile")
+    private String inputFile = "";
+    @JacksonXmlProperty(localName = "echoInput")
+    private boolean echoInput = true;
+
+    public RunConfiguration() {
+    }
+
+    public RunConfiguration(String file) {
+        this.file = file;
+    }
+
+    public String getFile() {
+        return this.file;
+    }
+
+    public void setFile(String file) {
+        this.file = file;
+    }
+
+    public int getTimeoutSeconds() {
+        return this.timeoutSeconds;
+    }
+
+    public void setTimeoutSeconds(int timeoutSeconds) {
+        this.timeoutSeconds = Math.max(0, timeoutSeconds);
+    }
+
+    public boolean isIncremental() {
+        return this.incremental;
+    }
+
+    public void setIncremental(boolean incremental) {
+        this.incremental = incremental;
+    }
+
+    public ExecutionEngine getEngine() {
+        return this.engine;
+    }
+
+    public void setEngine(ExecutionEngine engine) {
+        this.engine = engine == null ? ExecutionEngine.REMOTE : engine;
+    }
+
+    public String getRemoteVmOptions() {
+        return this.remoteVmOptions;
+    }
+
+    public void setRemoteVmOptions(String remoteVmOptions) {
+        this.remoteVmOptions = remoteVmOptions == null ? "" : remoteVmOptions;
+    }
+
+    public boolean isProfiling() {
+        return this.profiling;
+    }
+
+    public void setProfiling(boolean profiling) {
+        this.profiling = profiling;
+    }
+
+    public String getCharset() {
+        return this.charset;
+    }
+
+    public void setCharset(String charset) {
+        this.charset = charset == null || charset.isBlank() ? "UTF-8" : charset;
+    }
+
+    public OutputPolicy getOutputPolicy() {
+        return this.outputPolicy;
+    }
+
+    public void setOutputPolicy(OutputPolicy outputPolicy) {
+        this.outputPolicy = outputPolicy == null ? OutputPolicy.BLOCK : outputPolicy;
+    }
+
+    public int getSampleInterval() {
+        return this.sampleInterval;
+    }
+
+    public void setSampleInterval(int sampleInterval) {
+        this.sampleInterval = Math.max(1, sampleInterval);
+    }
+
+    public int getKeptLines() {
+        return this.keptLines;
+    }
+
+    public void setKeptLines(int keptLines) {
+        this.keptLines = Math.max(1, keptLines);
+    }
+
+    public String getTeeFile() {
+        return this.teeFile;
+    }
+
+    public void setTeeFile(String teeFile) {
+        this.teeFile = teeFile == null ? "" : teeFile.strip();
+    }
+
+    public InputSource getInputSource() {
+        return this.inputSource;
+    }
+
+    public void setInputSource(InputSource inputSource) {
+        this.inputSource = inputSource == null ? InputSource.DIALOG : inputSource;
+    }
+
+    public String getInputFile() {
+        return this.inputFile;
+    }
+
+    public void setInputFile(String inputFile) {
+        this.inputFile = inputFile == null ? "" : inputFile.strip();
+    }
+
+    public boolean isEchoInput() {
+        return this.echoInput;
+    }
+
+    public void setEchoInput(boolean echoInput) {
+        this.echoInput = echoInput;
+    }
+}
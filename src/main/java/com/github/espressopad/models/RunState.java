@@ -0,0 +1,9 @@
+package com.github.espressopad.models;
+
+public enum RunState {
+    RUNNING,
+    COMPLETED,
+    FAILED,
+    STOPPED,
+    TIMED_OUT
+}
@@ -4,6 +4,9 @@ import com.fasterxml.jackson.dataformat.xml.annotation.JacksonXmlProperty;
 import com.fasterxml.jackson.dataformat.xml.annotation.JacksonXmlRootElement;
 
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
 
 @JacksonXmlRootElement(localName = "settings")
 public class SettingsModel implements Serializable {
@@ -17,6 +20,22 @@ public class SettingsModel implements Serializable {
     private boolean wordWrap;
     @JacksonXmlProperty(localName = "lookAndFeel")
     private String lookAndFeel;
+    @JacksonXmlProperty(localName = "snippetCacheEnabled")
+    private boolean snippetCacheEnabled = true;
+    @JacksonXmlProperty(localName = "snippetCacheMaxMegabytes")
+    private int snippetCacheMaxMegabytes = 64;
+    @JacksonXmlProperty(localName = "snippetCacheMaxAgeDays")
+    private int snippetCacheMaxAgeDays = 30;
+    @JacksonXmlProperty(localName = "consoleBounded")
+    private boolean consoleBounded = true;
+    @JacksonXmlProperty(localName = "consoleMaxLines")
+    private int consoleMaxLines = 10_000;
+    @JacksonXmlProperty(localName = "consoleMaxKilobytes")
+    private int consoleMaxKilobytes = 1024;
+    @JacksonXmlProperty(localName = "analysisDelayMillis")
+    private int analysisDelayMillis = 300;
+    @JacksonXmlProperty(localName = "runConfiguration")
+    private List<RunConfiguration> runConfigurations = new ArrayList<>();
 
     public String getFont() {
         return this.font;
@@ -57,4 +76,81 @@ public class SettingsModel implements Serializable {
     public void setLookAndFeel(String lookAndFeel) {
         this.lookAndFeel = lookAndFeel;
     }
+
+    public boolean isConsoleBounded() {
+        return this.consoleBounded;
+    }
+
+    public void setConsoleBounded(boolean consoleBounded) {
+        this.consoleBounded = consoleBounded;
+    }
+
+    public int getConsoleMaxLines() {
+        return this.consoleMaxLines;
+    }
+
+    public void setConsoleMaxLines(int consoleMaxLines) {
+        this.consoleMaxLines = Math.max(1, consoleMaxLines);
+    }
+
+    public int getConsoleMaxKilobytes() {
+        return this.consoleMaxKilobytes;
+    }
+
+    public void setConsoleMaxKilobytes(int consoleMaxKilobytes) {
+        this.consoleMaxKilobytes = Math.max(1, consoleMaxKilobytes);
+    }
+
+    public int getAnalysisDelayMillis() {
+        return this.analysisDelayMillis;
+    }
+
+    public void setAnalysisDelayMillis(int analysisDelayMillis) {
+        this.analysisDelayMillis = Math.max(0, analysisDelayMillis);
+    }
+
+    public boolean isSnippetCacheEnabled() {
+        return this.snippetCacheEnabled;
+    }
+
+    public void setSnippetCacheEnabled(boolean snippetCacheEnabled) {
+        this.snippetCacheEnabled = snippetCacheEnabled;
+    }
+
+    public int getSnippetCacheMaxMegabytes() {
+        return this.snippetCacheMaxMegabytes;
+    }
+
+    public void setSnippetCacheMaxMegabytes(int snippetCacheMaxMegabytes) {
+        this.snippetCacheMaxMegabytes = Math.max(1, snippetCacheMaxMegabytes);
+    }
+
+    public int getSnippetCacheMaxAgeDays() {
+        return this.snippetCacheMaxAgeDays;
+    }
+
+    public void setSnippetCacheMaxAgeDays(int snippetCacheMaxAgeDays) {
+        this.snippetCacheMaxAgeDays = Math.max(1, snippetCacheMaxAgeDays);
+    }
+
+    public List<RunConfiguration> getRunConfigurations() {
+        return this.runConfigurations;
+    }
+
+    public void setRunConfigurations(List<RunConfiguration> runConfigurations) {
+        this.runConfigurations = runConfigurations == null ? new ArrayList<>() : runConfigurations;
+    }
+
+    public RunConfiguration findRunConfiguration(String file) {
+        for (RunConfiguration runConfiguration : this.runConfigurations) {
+            if (Objects.equals(runConfiguration.getFile(), file))
+                return runConfiguration;
+        }
+        return null;
+    }
+
+    public void putRunConfiguration(RunConfiguration runConfiguration) {
+        this.runConfigurations.removeIf(x -> Objects.equals(x.getFile(), runConfiguration.getFile()));
+        this.runConfigurations.add(runConfiguration);
+    }
 }
@@ -0,0 +1,40 @@
+package com.github.espressopad.models;
+
+/*
+ *  A compiler error or warning found by editor analysis, placed in the
+ *  document of the version that was analysed.
+ */
+public final class SnippetDiagnostic {
+    private final int offset;
+    private final int length;
+    private final String message;
+    private final boolean error;
+
+    public SnippetDiagnostic(int offset, int length, String message, boolean error) {
+        this.offset = offset;
+        this.length = length;
+        this.message = message;
+        this.error = error;
+    }
+
+    public int getOffset() {
+        return this.offset;
+    }
+
+    public int getLength() {
+        return this.length;
+    }
+
+    public String getMessage() {
+        return this.message;
+    }
+
+    public boolean isError() {
+        return this.error;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d+%d: %s", this.offset, this.length, this.message);
+    }
+}
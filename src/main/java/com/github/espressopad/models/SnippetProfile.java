@@ -0,0 +1,48 @@
+package com.github.espressopad.models;
+
+/*
+ *  Resource usage of one evaluated snippet. CPU time and allocations are
+ *  -1 when the execution engine can not attribute them to the snippet.
+ */
+public final class SnippetProfile {
+    private final SourceSnippet snippet;
+    private final long wallNanos;
+    private final long cpuNanos;
+    private final long allocatedBytes;
+    private final long gcCount;
+    private final long gcMillis;
+
+    public SnippetProfile(SourceSnippet snippet, long wallNanos, long cpuNanos, long allocatedBytes,
+                          long gcCount, long gcMillis) {
+        this.snippet = snippet;
+        this.wallNanos = wallNanos;
+        this.cpuNanos = cpuNanos;
+        this.allocatedBytes = allocatedBytes;
+        this.gcCount = gcCount;
+        this.gcMillis = gcMillis;
+    }
+
+    public SourceSnippet getSnippet() {
+        return this.snippet;
+    }
+
+    public long getWallNanos() {
+        return this.wallNanos;
+    }
+
+    public long getCpuNanos() {
+        return this.cpuNanos;
+    }
+
+    public long getAllocatedBytes() {
+        return this.allocatedBytes;
+    }
+
+    public long getGcCount() {
+        return this.gcCount;
+    }
+
+    public long getGcMillis() {
+        return this.gcMillis;
+    }
+}
@@ -0,0 +1,59 @@
+package com.github.espressopad.models;
+
+/*
+ *  One top level snippet of an editor, with its position in the document.
+ *  Offsets are document offsets, end exclusive; lines start at 1.
+ */
+public final class SourceSnippet {
+    private final String source;
+    private final int startOffset;
+    private final int endOffset;
+    private final int startLine;
+    private final int endLine;
+
+    public SourceSnippet(String source, int startOffset, int endOffset, int startLine, int endLine) {
+        this.source = source;
+        this.startOffset = startOffset;
+        this.endOffset = endOffset;
+        this.startLine = startLine;
+        this.endLine = endLine;
+    }
+
+    public String getSource() {
+        return this.source;
+    }
+
+    public int getStartOffset() {
+        return this.startOffset;
+    }
+
+    public int getEndOffset() {
+        return this.endOffset;
+    }
+
+    public int getStartLine() {
+        return this.startLine;
+    }
+
+    public int getEndLine() {
+        return this.endLine;
+    }
+
+    /*
+     *  Editor line of a position within this snippet's source.
+     */
+    public int getLine(int position) {
+        int line = this.startLine;
+        int end = Math.min(Math.max(position, 0), this.source.length());
+        for (int i = 0; i < end; i++) {
+            if (this.source.charAt(i) == '\n')
+                line++;
+        }
+        return line;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d-%d: %s", this.startLine, this.endLine, this.source);
+    }
+}
@@ -1,5 +1,15 @@
 package com.github.espressopad.models;
 
+import com.github.espressopad.controller.AnalysisShell;
+import com.github.espressopad.controller.DiagnosticsParser;
+import com.github.espressopad.controller.IncrementalSession;
+import com.github.espressopad.controller.ParseService;
+import com.github.espressopad.controller.RunHandle;
+import com.github.espressopad.controller.SnapshotCompletionProvider;
+import com.github.espressopad.views.components.InputPanel;
+import com.github.espressopad.views.components.OutlinePanel;
+import com.github.espressopad.views.components.ProfilePanel;
+import com.github.espressopad.views.components.ResultPanel;
 import com.github.espressopad.views.components.StatusBar;
 import com.github.espressopad.views.components.TextEditor;
 
@@ -12,8 +22,19 @@ public class ViewModel {
     private TextEditor textEditor;
     private JTextPane resultView;
     private StatusBar statusBar;
+    private ProfilePanel profilePanel;
+    private OutlinePanel outlinePanel;
+    private ResultPanel resultPanel;
+    private InputPanel inputPanel;
     private File backingFile = null;
     private String title;
+    private RunConfiguration runConfiguration = new RunConfiguration();
+    private volatile RunHandle runHandle;
+    private volatile IncrementalSession incrementalSession;
+    private volatile AnalysisShell analysisShell;
+    private volatile DiagnosticsParser diagnosticsParser;
+    private volatile SnapshotCompletionProvider completionProvider;
+    private volatile ParseService parseService;
 
     public ViewModel() {
         this(null, null, null, null, null);
@@ -47,6 +68,30 @@ public class ViewModel {
         this.textEditor = textEditor;
     }
 
+    public ProfilePanel getProfilePanel() {
+        if (this.profilePanel == null)
+            this.profilePanel = new ProfilePanel(this.textEditor);
+        return this.profilePanel;
+    }
+
+    public OutlinePanel getOutlinePanel() {
+        if (this.outlinePanel == null)
+            this.outlinePanel = new OutlinePanel(this.textEditor);
+        return this.outlinePanel;
+    }
+
+    public ResultPanel getResultPanel() {
+        if (this.resultPanel == null)
+            this.resultPanel = new ResultPanel(this.resultView);
+        return this.resultPanel;
+    }
+
+    public InputPanel getInputPanel() {
+        if (this.inputPanel == null)
+            this.inputPanel = new InputPanel();
+        return this.inputPanel;
+    }
+
     public JTextPane getResultView() {
         return this.resultView;
     }
@@ -56,7 +101,6 @@ public class ViewModel {
             resultView = new JTextPane();
         this.resultView = resultView;
         this.resultView.setEditable(false);
-        this.resultView.setContentType("text/html");
     }
 
     public StatusBar getStatusBar() {
@@ -84,4 +128,68 @@ public class ViewModel {
     public void setTitle(String title) {
         this.title = title;
     }
+
+    public RunConfiguration getRunConfiguration() {
+        return this.runConfiguration;
+    }
+
+    public void setRunConfiguration(RunConfiguration runConfiguration) {
+        this.runConfiguration = runConfiguration;
+    }
+
+    public RunHandle getRunHandle() {
+        return this.runHandle;
+    }
+
+    public void setRunHandle(RunHandle runHandle) {
+        this.runHandle = runHandle;
+    }
+
+    /*
+     *  Whether a run of this tab has started and not finished yet.
+     */
+    public boolean isRunning() {
+        RunHandle runHandle = this.runHandle;
+        return runHandle != null && !runHandle.isFinished();
+    }
+
+    public IncrementalSession getIncrementalSession() {
+        return this.incrementalSession;
+    }
+
+    public void setIncrementalSession(IncrementalSession incrementalSession) {
+        this.incrementalSession = incrementalSession;
+    }
+
+    public AnalysisShell getAnalysisShell() {
+        return this.analysisShell;
+    }
+
+    public void setAnalysisShell(AnalysisShell analysisShell) {
+        this.analysisShell = analysisShell;
+    }
+
+    public DiagnosticsParser getDiagnosticsParser() {
+        return this.diagnosticsParser;
+    }
+
+    public void setDiagnosticsParser(DiagnosticsParser diagnosticsParser) {
+        this.diagnosticsParser = diagnosticsParser;
+    }
+
+    public SnapshotCompletionProvider getCompletionProvider() {
+        return this.completionProvider;
+    }
+
+    public void setCompletionProvider(SnapshotCompletionProvider completionProvider) {
+        this.completionProvider = completionProvider;
+    }
+
+    public ParseService getParseService() {
+        return this.parseService;
+    }
+
+    public void setParseService(ParseService parseService) {
+        this.parseService = parseService;
+    }
 }
@@ -1,112 +1,190 @@
 package com.github.espressopad.utils;
 
+import java.util.HashMap;
 import java.util.Locale;
+import java.util.Map;
 import java.util.ResourceBundle;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 public class HtmlUtilities {
+    // Inline tags anywhere, block tags at the start of a line
+    private static final Pattern TAG = Pattern.compile("\\{@(\\w+)\\s*|(?m)^[ \\t]*@(\\w+)[ \\t]*");
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+    private static final Map<String, String> TEMPLATES = new HashMap<>();
 
-    public static String convertJavaDoc(String input) {
-        // Define regular expressions for JavaDoc tags
-        // You can add more patterns for other JavaDoc tags as needed
-        if (input == null || input.isBlank()) return "";
-
+    static {
         ResourceBundle resourceBundle = ResourceBundle.getBundle("messages", Locale.getDefault());
-        Pattern pattern = Pattern.compile("@author[\\s\\t\\n\\r\\f\\v]+(.*?)");
-        Matcher matcher = pattern.matcher(input);
-        input = matcher.replaceAll(resourceBundle.getString("div.b.author.b.1.div"));
-
-        pattern = Pattern.compile("@apiNote[\\s\\t\\n\\r\\f\\v]+(.*?)");
-        matcher = pattern.matcher(input);
-        input = matcher.replaceAll(resourceBundle.getString("div.b.api.note.b.1.div"));
-
-        pattern = Pattern.compile("\\{\\@code[\\s\\t\\n\\r\\f\\v]+(.*?)\\}");
-        // Replace {@code ...} with <code>...</code>
-        matcher = pattern.matcher(input);
-        input = matcher.replaceAll("<code>$1</code>");
-
-        pattern = Pattern.compile("<pre>\\{@code\\s*([^}]*)\\s*}</pre>");
-        // Replace {@code ...} with <code>...</code>
-        matcher = pattern.matcher(input);
-        input = matcher.replaceAll("<pre><code>$1</code></pre>");
-
-        pattern = Pattern.compile("@deprecated[\\s\\t\\n\\r\\f\\v]+(.*?)");
-        matcher = pattern.matcher(input);
-        input = matcher.replaceAll(resourceBundle.getString("div.b.deprecated.b.1.div"));
-
-        pattern = Pattern.compile("\\{*\\@(exception|throws)[\\s\\t\\n\\r\\f\\v]+(.*?)\\}*");
-        matcher = pattern.matcher(input);
-        while (matcher.find())
-            input = matcher.replaceAll(resourceBundle.getString("div.b.exception.b.2.div"));
-
-        pattern = Pattern.compile("<div><b>Exception:</b>\\s*</div>\\b(\\w+)\\b");
-        matcher = pattern.matcher(input);
-        input = matcher.replaceAll(resourceBundle.getString("div.b.exception.b.nbsp.span.class.red.1.span"));
-
-        pattern = Pattern.compile("@implNote[\\s\\t\\n\\r\\f\\v]+(.*?)");
-        matcher = pattern.matcher(input);
-        input = matcher.replaceAll(resourceBundle.getString("div.b.implementation.note.b.1.div"));
-
-        pattern = Pattern.compile("@implSpec[\\s\\t\\n\\r\\f\\v]+(.*?)");
-        matcher = pattern.matcher(input);
-        input = matcher.replaceAll(resourceBundle.getString("div.b.implementation.spec.b.1.div"));
-
-        pattern = Pattern.compile("@jls[\\s\\t\\n\\r\\f\\v]+(.*?)");
-        matcher = pattern.matcher(input);
-        input = matcher.replaceAll("\n\t\t<div><b>jls: </b>$1</div>");
-
-        // Replace {@link ...} with <a href="...">...</a>
-        pattern = Pattern.compile("\\{\\@(link|linkplain)[\\s\\t\\n\\r\\f\\v]+(.*?)\\}");
-        matcher = pattern.matcher(input);
-        input = matcher.replaceAll("<a href=\"$2\">$2</a>");
-
-        pattern = Pattern.compile("\\{*@param[\\s\\t\\n\\r\\f\\v]+(.*?)\\}*");
-        matcher = pattern.matcher(input);
-        while (matcher.find())
-            input = matcher.replaceAll(resourceBundle.getString("div.b.parameter.b.nbsp.1.div"));
-
-        //"\n\t\t<div><b>Params:</b>&nbsp;$1</div>"
-        pattern = Pattern.compile("<b>Parameter:</b>&nbsp;</div>((\\b(\\w+)\\b)|(&lt;\\w+&gt;))");
-        matcher = pattern.matcher(input);
-        input = matcher.replaceAll(resourceBundle.getString("b.parameter.b.nbsp.div.span.class.red.1.span.nbsp"));
-
-        pattern = Pattern.compile("\\{*\\@return[\\s\\t\\n\\r\\f\\v]+(.*?)\\}*");
-        matcher = pattern.matcher(input);
-        input = matcher.replaceAll(resourceBundle.getString("div.b.returns.b.1.div"));
-
-        pattern = Pattern.compile("\\{*\\@see[\\s\\t\\n\\r\\f\\v]+(.*?)\\}*");
-        matcher = pattern.matcher(input);
-        input = matcher.replaceAll(resourceBundle.getString("div.b.see.also.b.1.div"));
+        TEMPLATES.put("apiNote", resourceBundle.getString("div.b.api.note.b.1.div"));
+        TEMPLATES.put("author", resourceBundle.getString("div.b.author.b.1.div"));
+        TEMPLATES.put("deprecated", resourceBundle.getString("div.b.deprecated.b.1.div"));
+        TEMPLATES.put("exception", resourceBundle.getString("div.b.exception.b.nbsp.span.class.red.1.span.2.div"));
+        TEMPLATES.put("throws", resourceBundle.getString("div.b.exception.b.nbsp.span.class.red.1.span.2.div"));
+        TEMPLATES.put("implNote", resourceBundle.getString("div.b.implementation.note.b.1.div"));
+        TEMPLATES.put("implSpec", resourceBundle.getString("div.b.implementation.spec.b.1.div"));
+        TEMPLATES.put("jls", "\n\t\t<div><b>jls: </b>$1</div>");
+        TEMPLATES.put("param", resourceBundle.getString("div.b.parameter.b.nbsp.span.class.red.1.span.nbsp.2.div"));
+        TEMPLATES.put("return", resourceBundle.getString("div.b.returns.b.1.div"));
+        TEMPLATES.put("see", resourceBundle.getString("div.b.see.also.b.1.div"));
+        TEMPLATES.put("serial", resourceBundle.getString("div.b.serial.b.1.div"));
+        TEMPLATES.put("serialData", resourceBundle.getString("div.b.serial.data.b.1.div"));
+        TEMPLATES.put("serialField", resourceBundle.getString("div.b.serial.field.b.1.div"));
+        TEMPLATES.put("since", resourceBundle.getString("div.b.since.b.1.div"));
+        TEMPLATES.put("spec", resourceBundle.getString("div.b.spec.b.1.div"));
+        TEMPLATES.put("version", resourceBundle.getString("div.b.version.b.1.div"));
+    }
 
-        pattern = Pattern.compile("\\{*\\@serial[\\s\\t\\n\\r\\f\\v]+(.*?)\\}*");
-        matcher = pattern.matcher(input);
-        input = matcher.replaceAll(resourceBundle.getString("div.b.serial.b.1.div"));
+    /*
+     *  Turn a Javadoc comment into HTML in a single pass over it. The main
+     *  description is kept as it is, inline tags are replaced where they
+     *  stand and every block tag becomes a section of its own.
+     */
+    public static String convertJavaDoc(String input) {
+        if (input == null || input.isBlank()) return "";
 
-        pattern = Pattern.compile("\\{*\\@serialData[\\s\\t\\n\\r\\f\\v]+(.*?)\\}*");
-        matcher = pattern.matcher(input);
-        input = matcher.replaceAll(resourceBundle.getString("div.b.serial.data.b.1.div"));
+        StringBuilder html = new StringBuilder(input.length() + 256);
+        StringBuilder section = new StringBuilder();
+        String blockTag = null;
+        Matcher matcher = TAG.matcher(input);
+        int position = 0;
+        while (position < input.length() && matcher.find(position)) {
+            section.append(input, position, matcher.start());
+            String inlineTag = matcher.group(1);
+            String tag = inlineTag == null ? matcher.group(2) : inlineTag;
+            if (inlineTag != null) {
+                int close = closingBrace(input, matcher.end());
+                appendInlineTag(section, tag, input.substring(matcher.end(), close));
+                position = Math.min(close + 1, input.length());
+            } else if (TEMPLATES.containsKey(tag)) {
+                appendSection(html, blockTag, section);
+                section.setLength(0);
+                blockTag = tag;
+                position = matcher.end();
+            } else {
+                // An annotation in a code sample rather than a block tag
+                section.append(matcher.group());
+                position = matcher.end();
+            }
+        }
+        if (position < input.length())
+            section.append(input, position, input.length());
+        appendSection(html, blockTag, section);
+        return html.toString();
+    }
 
-        pattern = Pattern.compile("\\{*\\@serialField[\\s\\t\\n\\r\\f\\v]+(.*?)\\}*");
-        matcher = pattern.matcher(input);
-        input = matcher.replaceAll(resourceBundle.getString("div.b.serial.field.b.1.div"));
+    private static void appendInlineTag(StringBuilder html, String tag, String content) {
+        switch (tag) {
+            case "code":
+                html.append("<code>");
+                escape(html, content);
+                html.append("</code>");
+                break;
+            case "literal":
+                escape(html, content);
+                break;
+            case "link":
+            case "linkplain":
+                String text = content.trim();
+                // The parameters of a member reference may be separated by spaces too
+                int end = 0;
+                for (int depth = 0; end < text.length(); end++) {
+                    char c = text.charAt(end);
+                    if (c == '(') depth++;
+                    else if (c == ')') depth--;
+                    else if (depth <= 0 && Character.isWhitespace(c)) break;
+                }
+                String reference = text.substring(0, end);
+                String label = text.substring(end).trim();
+                html.append("<a href=\"");
+                escape(html, reference);
+                html.append("\">");
+                escape(html, label.isEmpty() ? reference.replaceFirst("^#", "").replace('#', '.') : label);
+                html.append("</a>");
+                break;
+            case "value":
+                html.append("\n\t\t<div><pre><code>").append(content).append("</code></pre></div>");
+                break;
+            default:
+                // {@return ...} and the like read like their block tags
+                if (TEMPLATES.containsKey(tag))
+                    appendSection(html, tag, content);
+                else html.append(content);
+                break;
+        }
+    }
 
-        pattern = Pattern.compile("\\{*\\@since[\\s\\t\\n\\r\\f\\v]+(.*?)\\}*");
-        matcher = pattern.matcher(input);
-        input = matcher.replaceAll(resourceBundle.getString("div.b.since.b.1.div"));
+    private static void appendSection(StringBuilder html, String tag, CharSequence content) {
+        if (tag == null) {
+            html.append(content);
+            return;
+        }
+        String text = content.toString().trim();
+        String template = TEMPLATES.get(tag);
+        if (tag.equals("param") || tag.equals("exception") || tag.equals("throws")) {
+            String[] parts = WHITESPACE.split(text, 2);
+            StringBuilder name = new StringBuilder();
+            // Type parameters are documented as <T>
+            escape(name, parts[0]);
+            fill(html, template, name.toString(), parts.length > 1 ? parts[1] : "");
+        } else fill(html, template, text);
+    }
 
-        pattern = Pattern.compile("@spec[\\s\\t\\n\\r\\f\\v]+(.*?)");
-        matcher = pattern.matcher(input);
-        input = matcher.replaceAll(resourceBundle.getString("div.b.spec.b.1.div"));
+    /*
+     *  Append a template with $1, $2... replaced by the given values.
+     */
+    private static void fill(StringBuilder html, String template, String... values) {
+        for (int i = 0; i < template.length(); i++) {
+            char c = template.charAt(i);
+            if (c == '$' && i + 1 < template.length() && Character.isDigit(template.charAt(i + 1))) {
+                int index = template.charAt(++i) - '1';
+                if (index >= 0 && index < values.length)
+                    html.append(values[index]);
+            } else html.append(c);
+        }
+    }
 
-        pattern = Pattern.compile("\\{\\@value[\\s\\t\\n\\r\\f\\v]+(.*?)\\}");
-        matcher = pattern.matcher(input);
-        input = matcher.replaceAll("\n\t\t<div><pre><code>$1</code></pre></div>");
+    /*
+     *  Where an inline tag starting at the given offset ends, allowing for
+     *  braces nested in it, as in {@code new int[] {1, 2}}.
+     */
+    private static int closingBrace(String input, int start) {
+        int depth = 0;
+        for (int i = start; i < input.length(); i++) {
+            char c = input.charAt(i);
+            if (c == '{')
+                depth++;
+            else if (c == '}' && depth-- == 0)
+                return i;
+        }
+        return input.length();
+    }
 
-        pattern = Pattern.compile("\\{*\\@version[\\s\\t\\n\\r\\f\\v]+(.*?)\\}*");
-        matcher = pattern.matcher(input);
-        input = matcher.replaceAll(resourceBundle.getString("div.b.version.b.1.div"));
+    public static String escape(String text) {
+        StringBuilder html = new StringBuilder(text.length() + 16);
+        escape(html, text);
+        return html.toString();
+    }
 
-        return input;
+    private static void escape(StringBuilder html, String text) {
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '<':
+                    html.append("&lt;");
+                    break;
+                case '>':
+                    html.append("&gt;");
+                    break;
+                case '&':
+                    html.append("&amp;");
+                    break;
+                case '"':
+                    html.append("&quot;");
+                    break;
+                default:
+                    html.append(c);
+                    break;
+            }
+        }
     }
 }
@@ -6,10 +6,20 @@ import javax.swing.event.DocumentListener;
 import javax.swing.text.BadLocationException;
 import javax.swing.text.Document;
 import javax.swing.text.Element;
+import javax.swing.text.Segment;
+import java.util.function.LongConsumer;
 
 public class LimitLinesDocumentListener implements DocumentListener {
     private int maximumLines;
+    private int maximumBytes = Integer.MAX_VALUE;
     private final boolean isRemoveFromStart;
+    private final Segment segment = new Segment();
+    // UTF-8 size of the Document, or -1 if it has to be counted again
+    private long bytes = -1;
+    private boolean removing = false;
+    private boolean trimPending = false;
+    private long droppedLines = 0;
+    private LongConsumer droppedLinesListener;
 
     /*
      *  Specify the number of lines to be stored in the Document.
@@ -48,23 +58,66 @@ public class LimitLinesDocumentListener implements DocumentListener {
         this.maximumLines = maximumLines;
     }
 
+    public int getLimitBytes() {
+        return this.maximumBytes;
+    }
+
+    /*
+     *  Set the maximum size of the text in the Document, in bytes of UTF-8.
+     *  Whole lines are removed until the Document fits.
+     */
+    public void setLimitBytes(int maximumBytes) {
+        if (maximumBytes < 1) {
+            String message = "Maximum bytes must be greater than 0";
+            throw new IllegalArgumentException(message);
+        }
+
+        this.maximumBytes = maximumBytes;
+    }
+
+    /*
+     *  Total number of lines removed so far
+     */
+    public long getDroppedLines() {
+        return this.droppedLines;
+    }
+
+    /*
+     *  Be told the total number of dropped lines after every trim
+     */
+    public void setDroppedLinesListener(LongConsumer droppedLinesListener) {
+        this.droppedLinesListener = droppedLinesListener;
+    }
+
     //  Handle insertion of new text into the Document
 
     @Override
     public void insertUpdate(final DocumentEvent e) {
+        //  Keep the size up to date one insert at a time rather than
+        //  counting the whole Document on every trim
+        if (this.bytes >= 0 && this.maximumBytes != Integer.MAX_VALUE)
+            this.bytes += this.countBytes(e.getDocument(), e.getOffset(), e.getLength());
+
         //  Changes to the Document can not be done within the listener
-        //  so we need to add the processing to the end of the EDT
+        //  so we need to add the processing to the end of the EDT. All
+        //  inserts made before it runs are trimmed together.
 
+        if (this.trimPending) return;
+        this.trimPending = true;
         SwingUtilities.invokeLater(new Runnable() {
             @Override
             public void run() {
-                removeLines(e);
+                trimPending = false;
+                removeLines(e.getDocument());
             }
         });
     }
 
     @Override
     public void removeUpdate(DocumentEvent e) {
+        //  What someone else removed is gone before it can be counted
+        if (!this.removing)
+            this.bytes = -1;
     }
 
     @Override
@@ -72,29 +125,54 @@ public class LimitLinesDocumentListener implements DocumentListener {
     }
 
     /*
-     *  Remove lines from the Document when necessary
+     *  Remove lines from the Document when necessary, using a single
+     *  removal however many lines are over the limit
      */
-    private void removeLines(DocumentEvent e) {
+    private void removeLines(Document document) {
         //  The root Element of the Document will tell us the total number
         //  of line in the Document.
-        Document document = e.getDocument();
         Element root = document.getDefaultRootElement();
+        int excess = Math.max(0, root.getElementCount() - this.maximumLines);
+
+        if (this.maximumBytes != Integer.MAX_VALUE) {
+            if (this.bytes < 0)
+                this.bytes = this.countBytes(document, 0, document.getLength());
+            long extraBytes = this.bytes - this.maximumBytes;
+            // Count whole lines from the end being trimmed until enough are over
+            for (int lines = 0; extraBytes > 0 && lines < root.getElementCount(); lines++) {
+                Element line = root.getElement(this.isRemoveFromStart ? lines : root.getElementCount() - 1 - lines);
+                extraBytes -= this.countBytes(document, line.getStartOffset(),
+                        Math.min(line.getEndOffset(), document.getLength()) - line.getStartOffset());
+                excess = Math.max(excess, lines + 1);
+            }
+        }
+        // Keep at least the line being written to
+        excess = Math.min(excess, root.getElementCount() - 1);
+        if (excess == 0) return;
 
-        while (root.getElementCount() > this.maximumLines) {
+        this.removing = true;
+        try {
             if (this.isRemoveFromStart)
-                removeFromStart(document, root);
-            else removeFromEnd(document, root);
+                removeFromStart(document, root, excess);
+            else removeFromEnd(document, root, excess);
+        } finally {
+            this.removing = false;
         }
+
+        this.droppedLines += excess;
+        if (this.droppedLinesListener != null)
+            this.droppedLinesListener.accept(this.droppedLines);
     }
 
     /*
      *  Remove lines from the start of the Document
      */
-    private void removeFromStart(Document document, Element root) {
-        Element line = root.getElement(0);
+    private void removeFromStart(Document document, Element root, int lines) {
+        Element line = root.getElement(lines - 1);
         int end = line.getEndOffset();
 
         try {
+            this.forgetBytes(document, 0, end);
             document.remove(0, end);
         } catch (BadLocationException ble) {
             throw new RuntimeException(ble);
@@ -104,17 +182,49 @@ public class LimitLinesDocumentListener implements DocumentListener {
     /*
      *  Remove lines from the end of the Document
      */
-    private void removeFromEnd(Document document, Element root) {
+    private void removeFromEnd(Document document, Element root, int lines) {
         //  We use start minus 1 to make sure we remove the newline
         //  character of the previous line
-        Element line = root.getElement(root.getElementCount() - 1);
+        Element line = root.getElement(root.getElementCount() - lines);
         int start = line.getStartOffset();
-        int end = line.getEndOffset();
+        int end = root.getElement(root.getElementCount() - 1).getEndOffset();
 
         try {
+            this.forgetBytes(document, start - 1, end - start);
             document.remove(start - 1, end - start);
         } catch (BadLocationException ble) {
             throw new RuntimeException(ble);
         }
     }
+
+    private void forgetBytes(Document document, int offset, int length) {
+        if (this.bytes >= 0 && this.maximumBytes != Integer.MAX_VALUE)
+            this.bytes -= this.countBytes(document, offset, length);
+    }
+
+    /*
+     *  UTF-8 size of part of the Document, without copying it out
+     */
+    private long countBytes(Document document, int offset, int length) {
+        long count = 0;
+        this.segment.setPartialReturn(true);
+        try {
+            while (length > 0) {
+                document.getText(offset, length, this.segment);
+                for (int i = this.segment.offset; i < this.segment.offset + this.segment.count; i++) {
+                    char c = this.segment.array[i];
+                    if (c < 0x80) count++;
+                    else if (c < 0x800) count += 2;
+                    // Each half of a surrogate pair makes up half of a 4 byte character
+                    else if (Character.isSurrogate(c)) count += 2;
+                    else count += 3;
+                }
+                offset += this.segment.count;
+                length -= this.segment.count;
+            }
+        } catch (BadLocationException ble) {
+            throw new RuntimeException(ble);
+        }
+        return count;
+    }
 }
@@ -0,0 +1,60 @@
+package com.github.espressopad.utils;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/*
+ *  A map holding at most a given number of entries that makes room by
+ *  dropping the one used least recently. Lookups are counted so the hit
+ *  rate can be shown. Safe to use from several threads.
+ */
+public class LruCache<K, V> {
+    private final Map<K, V> entries;
+    private long hits = 0;
+    private long misses = 0;
+
+    public LruCache(int capacity) {
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+                return this.size() > capacity;
+            }
+        };
+    }
+
+    public synchronized V get(K key) {
+        V value = this.entries.get(key);
+        if (value == null)
+            this.misses++;
+        else this.hits++;
+        return value;
+    }
+
+    public synchronized void put(K key, V value) {
+        this.entries.put(key, value);
+    }
+
+    public synchronized void clear() {
+        this.entries.clear();
+    }
+
+    public synchronized int size() {
+        return this.entries.size();
+    }
+
+    public synchronized long getHits() {
+        return this.hits;
+    }
+
+    public synchronized long getMisses() {
+        return this.misses;
+    }
+
+    /*
+     *  Share of lookups that found an entry, between 0 and 1.
+     */
+    public synchronized double getHitRate() {
+        long lookups = this.hits + this.misses;
+        return lookups == 0 ? 0 : (double) this.hits / lookups;
+    }
+}
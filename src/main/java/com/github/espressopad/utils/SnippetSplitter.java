@@ -0,0 +1,161 @@
+package com.github.espressopad.utils;
+
+import com.github.espressopad.models.SourceSnippet;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/*
+ *  Splits editor text into top level snippets in a single pass, keeping
+ *  track of nesting, comments, string, character and text block literals.
+ *  A snippet ends at a semicolon or closing brace at nesting level zero
+ *  unless what follows continues the statement (else, catch, a method
+ *  call on an anonymous class, ...). Whatever is left at the end is
+ *  returned as a last, possibly incomplete, snippet.
+ */
+public class SnippetSplitter {
+    private static final String[] CONTINUATIONS = {"else", "catch", "finally"};
+    // Characters after a closing brace that can only continue an expression
+    private static final String BRACE_CONTINUATIONS = ";,).[?:=&|^*/%<>";
+
+    private SnippetSplitter() {
+    }
+
+    public static List<SourceSnippet> split(String text) {
+        List<SourceSnippet> snippets = new ArrayList<>();
+        int length = text.length();
+        int depth = 0;
+        int line = 1;
+        int start = -1;
+        int startLine = 1;
+        boolean doWhile = false;
+        int i = 0;
+        while (i < length) {
+            char c = text.charAt(i);
+            if (c == '\n') {
+                line++;
+                i++;
+                continue;
+            }
+            if (Character.isWhitespace(c)) {
+                i++;
+                continue;
+            }
+            // Comments never start a snippet on their own
+            if (c == '/' && i + 1 < length && (text.charAt(i + 1) == '/' || text.charAt(i + 1) == '*')) {
+                int end = skipComment(text, i);
+                line += countLines(text, i, end);
+                i = end;
+                continue;
+            }
+            if (start < 0) {
+                start = i;
+                startLine = line;
+                doWhile = text.startsWith("do", i) && !isIdentifierPart(text, i + 2);
+            }
+            if (c == '"' || c == '\'') {
+                int end = skipLiteral(text, i);
+                line += countLines(text, i, end);
+                i = end;
+                continue;
+            }
+            i++;
+            boolean ends = false;
+            if (c == '(' || c == '[' || c == '{')
+                depth++;
+            else if (c == ')' || c == ']')
+                depth = Math.max(0, depth - 1);
+            else if (c == '}') {
+                depth = Math.max(0, depth - 1);
+                ends = depth == 0;
+            } else if (c == ';')
+                ends = depth == 0;
+            if (!ends) continue;
+
+            int next = skipInsignificant(text, i);
+            if (next < length) {
+                if (c == '}' && BRACE_CONTINUATIONS.indexOf(text.charAt(next)) >= 0) continue;
+                if (startsWithKeyword(text, next, CONTINUATIONS)) continue;
+                if (doWhile && startsWithKeyword(text, next, "while")) {
+                    doWhile = false;
+                    continue;
+                }
+            }
+            if (i - start > 1 || c != ';')
+                snippets.add(new SourceSnippet(text.substring(start, i), start, i, startLine, line));
+            start = -1;
+        }
+        if (start >= 0) {
+            int end = length;
+            while (end > start && Character.isWhitespace(text.charAt(end - 1)))
+                end--;
+            snippets.add(new SourceSnippet(text.substring(start, end), start, end, startLine,
+                    startLine + countLines(text, start, end)));
+        }
+        return Collections.unmodifiableList(snippets);
+    }
+
+    private static int skipComment(String text, int i) {
+        if (text.charAt(i + 1) == '/') {
+            int end = text.indexOf('\n', i);
+            return end < 0 ? text.length() : end;
+        }
+        int end = text.indexOf("*/", i + 2);
+        return end < 0 ? text.length() : end + 2;
+    }
+
+    private static int skipLiteral(String text, int i) {
+        char quote = text.charAt(i);
+        if (quote == '"' && text.startsWith("\"\"\"", i)) {
+            int j = i + 3;
+            while (j < text.length()) {
+                if (text.charAt(j) == '\\') j += 2;
+                else if (text.startsWith("\"\"\"", j)) return j + 3;
+                else j++;
+            }
+            return text.length();
+        }
+        int j = i + 1;
+        while (j < text.length()) {
+            char c = text.charAt(j);
+            if (c == '\\') j += 2;
+            else if (c == quote) return j + 1;
+            else if (c == '\n') return j;
+            else j++;
+        }
+        return text.length();
+    }
+
+    private static int skipInsignificant(String text, int i) {
+        while (i < text.length()) {
+            char c = text.charAt(i);
+            if (Character.isWhitespace(c)) i++;
+            else if (c == '/' && i + 1 < text.length() && (text.charAt(i + 1) == '/' || text.charAt(i + 1) == '*'))
+                i = skipComment(text, i);
+            else break;
+        }
+        return i;
+    }
+
+    private static boolean startsWithKeyword(String text, int i, String... keywords) {
+        for (String keyword : keywords) {
+            if (text.startsWith(keyword, i) && !isIdentifierPart(text, i + keyword.length()))
+                return true;
+        }
+        return false;
+    }
+
+    private static boolean isIdentifierPart(String text, int i) {
+        return i < text.length() && Character.isJavaIdentifierPart(text.charAt(i));
+    }
+
+    private static int countLines(String text, int from, int to) {
+        int lines = 0;
+        for (int i = from; i < to; i++) {
+            if (text.charAt(i) == '\n')
+                lines++;
+        }
+        return lines;
+    }
+}
@@ -0,0 +1,284 @@
+package com.github.espressopad.utils;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.*;
+
+/*
+ *  A read-only prefix trie from names to symbols, kept in a handful of
+ *  primitive arrays. Nodes are laid out depth first with the children of
+ *  a node next to each other and sorted, and symbols are sorted by name,
+ *  so every node knows the contiguous range of symbols below it and a
+ *  prefix lookup is a walk down the trie and nothing more.
+ */
+public class SymbolTrie {
+    public static final byte PACKAGE = 1;
+    public static final byte CLASS = 2;
+    public static final byte METHOD = 3;
+    public static final byte FIELD = 4;
+    private static final SymbolTrie EMPTY = new Builder().build();
+    // Per node: label, where its children start, how many there are and the symbols below it
+    private final char[] labels;
+    private final int[] firstChild;
+    private final int[] childCount;
+    private final int[] symbolStart;
+    private final int[] symbolEnd;
+    // Per symbol, in name order
+    private final String[] names;
+    private final byte[] kinds;
+    private final int[] details;
+    private final String[] detailTable;
+
+    private SymbolTrie(char[] labels, int[] firstChild, int[] childCount, int[] symbolStart, int[] symbolEnd,
+                       String[] names, byte[] kinds, int[] details, String[] detailTable) {
+        this.labels = labels;
+        this.firstChild = firstChild;
+        this.childCount = childCount;
+        this.symbolStart = symbolStart;
+        this.symbolEnd = symbolEnd;
+        this.names = names;
+        this.kinds = kinds;
+        this.details = details;
+        this.detailTable = detailTable;
+    }
+
+    public static SymbolTrie empty() {
+        return EMPTY;
+    }
+
+    /*
+     *  Visit the symbols whose name starts with the given prefix, in name
+     *  order, until the visitor returns false.
+     */
+    public void forEach(String prefix, Visitor visitor) {
+        int node = 0;
+        for (int i = 0; i < prefix.length() && node >= 0; i++)
+            node = this.findChild(node, prefix.charAt(i));
+        if (node < 0) return;
+        for (int symbol = this.symbolStart[node]; symbol < this.symbolEnd[node]; symbol++) {
+            if (!visitor.visit(this.names[symbol], this.kinds[symbol], this.detailTable[this.details[symbol]]))
+                return;
+        }
+    }
+
+    /*
+     *  Whether a symbol has exactly this name.
+     */
+    public boolean contains(String name) {
+        boolean[] found = new boolean[1];
+        this.forEach(name, (symbolName, kind, detail) -> !(found[0] = symbolName.equals(name)));
+        return found[0];
+    }
+
+    public int getSymbolCount() {
+        return this.names.length;
+    }
+
+    private int findChild(int node, char label) {
+        int low = this.firstChild[node];
+        int high = low + this.childCount[node] - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            char current = this.labels[middle];
+            if (current < label) low = middle + 1;
+            else if (current > label) high = middle - 1;
+            else return middle;
+        }
+        return -1;
+    }
+
+    public void write(DataOutputStream out) throws IOException {
+        out.writeInt(this.labels.length);
+        for (int node = 0; node < this.labels.length; node++) {
+            out.writeChar(this.labels[node]);
+            out.writeInt(this.firstChild[node]);
+            out.writeInt(this.childCount[node]);
+            out.writeInt(this.symbolStart[node]);
+            out.writeInt(this.symbolEnd[node]);
+        }
+        out.writeInt(this.detailTable.length);
+        for (String detail : this.detailTable)
+            out.writeUTF(detail);
+        out.writeInt(this.names.length);
+        for (int symbol = 0; symbol < this.names.length; symbol++) {
+            out.writeUTF(this.names[symbol]);
+            out.writeByte(this.kinds[symbol]);
+            out.writeInt(this.details[symbol]);
+        }
+    }
+
+    public static SymbolTrie read(DataInputStream in) throws IOException {
+        int nodes = in.readInt();
+        char[] labels = new char[nodes];
+        int[] firstChild = new int[nodes];
+        int[] childCount = new int[nodes];
+        int[] symbolStart = new int[nodes];
+        int[] symbolEnd = new int[nodes];
+        for (int node = 0; node < nodes; node++) {
+            labels[node] = in.readChar();
+            firstChild[node] = in.readInt();
+            childCount[node] = in.readInt();
+            symbolStart[node] = in.readInt();
+            symbolEnd[node] = in.readInt();
+        }
+        String[] detailTable = new String[in.readInt()];
+        for (int i = 0; i < detailTable.length; i++)
+            detailTable[i] = in.readUTF();
+        int symbols = in.readInt();
+        String[] names = new String[symbols];
+        byte[] kinds = new byte[symbols];
+        int[] details = new int[symbols];
+        for (int symbol = 0; symbol < symbols; symbol++) {
+            names[symbol] = in.readUTF();
+            kinds[symbol] = in.readByte();
+            details[symbol] = in.readInt();
+        }
+        return new SymbolTrie(labels, firstChild, childCount, symbolStart, symbolEnd, names, kinds, details, detailTable);
+    }
+
+    public interface Visitor {
+        boolean visit(String name, byte kind, String detail);
+    }
+
+    /*
+     *  Collects symbols and lays them out as a trie. Adding the same symbol
+     *  twice keeps one copy.
+     */
+    public static class Builder {
+        private final Map<String, Integer> detailIds = new HashMap<>();
+        private final List<String> detailTable = new ArrayList<>();
+        private final Set<Symbol> symbols = new HashSet<>();
+
+        public Builder add(String name, byte kind, String detail) {
+            if (name.isEmpty()) return this;
+            Integer id = this.detailIds.get(detail);
+            if (id == null) {
+                id = this.detailTable.size();
+                this.detailIds.put(detail, id);
+                this.detailTable.add(detail);
+            }
+            this.symbols.add(new Symbol(name, kind, id));
+            return this;
+        }
+
+        public SymbolTrie build() {
+            Symbol[] sorted = this.symbols.toArray(Symbol[]::new);
+            Arrays.sort(sorted);
+            String[] names = new String[sorted.length];
+            byte[] kinds = new byte[sorted.length];
+            int[] details = new int[sorted.length];
+            for (int i = 0; i < sorted.length; i++) {
+                names[i] = sorted[i].name;
+                kinds[i] = sorted[i].kind;
+                details[i] = sorted[i].detail;
+            }
+
+            // Count the nodes first: one per distinct prefix, plus the root
+            int nodes = 1;
+            for (int i = 0; i < names.length; i++) {
+                int common = i == 0 ? 0 : commonPrefix(names[i - 1], names[i]);
+                nodes += names[i].length() - common;
+            }
+            Layout layout = new Layout(nodes);
+            layout.symbolStart[0] = 0;
+            layout.symbolEnd[0] = names.length;
+            layout.next = 1;
+            layout.place(0, names, 0, names.length, 0);
+            return new SymbolTrie(layout.labels, layout.firstChild, layout.childCount, layout.symbolStart,
+                    layout.symbolEnd, names, kinds, details, this.detailTable.toArray(String[]::new));
+        }
+
+        private static int commonPrefix(String a, String b) {
+            int length = Math.min(a.length(), b.length());
+            int i = 0;
+            while (i < length && a.charAt(i) == b.charAt(i))
+                i++;
+            return i;
+        }
+    }
+
+    private static class Layout {
+        private final char[] labels;
+        private final int[] firstChild;
+        private final int[] childCount;
+        private final int[] symbolStart;
+        private final int[] symbolEnd;
+        private int next;
+
+        Layout(int nodes) {
+            this.labels = new char[nodes];
+            this.firstChild = new int[nodes];
+            this.childCount = new int[nodes];
+            this.symbolStart = new int[nodes];
+            this.symbolEnd = new int[nodes];
+        }
+
+        /*
+         *  Lay out the children of a node whose symbols are names[from, to),
+         *  all sharing their first depth characters. Children get one block
+         *  so they can be binary searched.
+         */
+        void place(int node, String[] names, int from, int to, int depth) {
+            // Names that end at this node come first in sorted order
+            int start = from;
+            while (start < to && names[start].length() == depth)
+                start++;
+            int children = 0;
+            for (int i = start; i < to; i++) {
+                if (i == start || names[i].charAt(depth) != names[i - 1].charAt(depth))
+                    children++;
+            }
+            int block = this.next;
+            this.firstChild[node] = block;
+            this.childCount[node] = children;
+            this.next += children;
+            int child = block;
+            int i = start;
+            while (i < to) {
+                char label = names[i].charAt(depth);
+                int end = i;
+                while (end < to && names[end].charAt(depth) == label)
+                    end++;
+                this.labels[child] = label;
+                this.symbolStart[child] = i;
+                this.symbolEnd[child] = end;
+                child++;
+                i = end;
+            }
+            for (child = block; child < block + children; child++)
+                this.place(child, names, this.symbolStart[child], this.symbolEnd[child], depth + 1);
+        }
+    }
+
+    private static class Symbol implements Comparable<Symbol> {
+        private final String name;
+        private final byte kind;
+        private final int detail;
+
+        Symbol(String name, byte kind, int detail) {
+            this.name = name;
+            this.kind = kind;
+            this.detail = detail;
+        }
+
+        @Override
+        public int compareTo(Symbol other) {
+            int result = this.name.compareTo(other.name);
+            if (result == 0) result = Byte.compare(this.kind, other.kind);
+            return result == 0 ? Integer.compare(this.detail, other.detail) : result;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof Symbol)) return false;
+            Symbol symbol = (Symbol) other;
+            return this.name.equals(symbol.name) && this.kind == symbol.kind && this.detail == symbol.detail;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(this.name, this.kind, this.detail);
+        }
+    }
+}
@@ -0,0 +1,217 @@
+package com.github.espressopad.utils;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+ *  Application wide home for background work. Work is split into lanes
+ *  so that a long running script can not starve editor analysis or file
+ *  I/O, and every lane has a bounded queue and a named thread pool.
+ */
+public class TaskScheduler {
+    private static final TaskScheduler instance = new TaskScheduler();
+    private final Logger logger = LoggerFactory.getLogger(TaskScheduler.class);
+    private final Map<Lane, ThreadPoolExecutor> executors = new EnumMap<>(Lane.class);
+    private final ConcurrentMap<Object, Runnable> coalesced = new ConcurrentHashMap<>();
+    // Set while the timer hands a task over, so that no lane makes it run the task itself
+    private final ThreadLocal<Boolean> handingOver = ThreadLocal.withInitial(() -> false);
+    private final ScheduledThreadPoolExecutor timer;
+
+    public enum Lane {
+        // Script runs. Rejected when full so the user learns about it.
+        EXECUTION("execution", Math.max(2, Runtime.getRuntime().availableProcessors()), 64),
+        // Editor analysis. Lookups that can be asked for again make room for new work.
+        ANALYSIS("analysis", 2, 64),
+        // Disk and process housekeeping. Falls back to the caller when full.
+        IO("io", 2, 256),
+        // Run timeouts and kills, kept clear of everything that may keep the other lanes busy.
+        WATCHDOG("watchdog", 1, 64);
+
+        private final String name;
+        private final int threads;
+        private final int queueCapacity;
+
+        Lane(String name, int threads, int queueCapacity) {
+            this.name = name;
+            this.threads = threads;
+            this.queueCapacity = queueCapacity;
+        }
+
+        public String getName() {
+            return this.name;
+        }
+
+        public int getThreads() {
+            return this.threads;
+        }
+    }
+
+    private TaskScheduler() {
+        for (Lane lane : Lane.values()) {
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(
+                    lane.threads, lane.threads, 30, TimeUnit.SECONDS,
+                    new ArrayBlockingQueue<>(lane.queueCapacity),
+                    new NamedThreadFactory(lane.name),
+                    this.rejectionPolicy(lane)
+            );
+            executor.allowCoreThreadTimeOut(true);
+            this.executors.put(lane, executor);
+        }
+        this.timer = new ScheduledThreadPoolExecutor(1, new NamedThreadFactory("timer"));
+        this.timer.setRemoveOnCancelPolicy(true);
+    }
+
+    public static TaskScheduler getInstance() {
+        return instance;
+    }
+
+    public Future<?> submit(Lane lane, Runnable task) {
+        return this.executors.get(lane).submit(task);
+    }
+
+    public <T> Future<T> submit(Lane lane, Callable<T> task) {
+        return this.executors.get(lane).submit(task);
+    }
+
+    /*
+     *  Queue a task under the given key. If a task for the same key is
+     *  still waiting to start it is replaced, so only the latest request
+     *  runs. A full analysis lane may drop the task, so it should be one
+     *  that is asked for again, like a tooltip.
+     */
+    public void submitCoalesced(Lane lane, Object key, Runnable task) {
+        this.submitCoalesced(lane, key, task, true);
+    }
+
+    private void submitCoalesced(Lane lane, Object key, Runnable task, boolean droppable) {
+        if (this.coalesced.put(key, task) == null) {
+            try {
+                this.executors.get(lane).execute(new CoalescedTask(key, droppable));
+            } catch (RejectedExecutionException e) {
+                this.coalesced.remove(key);
+                throw e;
+            }
+        }
+    }
+
+    /*
+     *  Run a task on the given lane after a delay. The timer thread only
+     *  hands the task over, it never runs it.
+     */
+    public ScheduledFuture<?> schedule(Lane lane, Runnable task, long delay, TimeUnit unit) {
+        return this.timer.schedule(() -> this.handOver(lane, () -> this.submit(lane, task)), delay, unit);
+    }
+
+    /*
+     *  Queue a task under the given key after a delay, replacing a task for
+     *  the same key that has not started yet. Unlike submitCoalesced the
+     *  task is never dropped to make room for others.
+     */
+    public ScheduledFuture<?> scheduleCoalesced(Lane lane, Object key, Runnable task, long delay, TimeUnit unit) {
+        return this.timer.schedule(() -> this.handOver(lane, () -> this.submitCoalesced(lane, key, task, false)),
+                delay, unit);
+    }
+
+    public int getQueueDepth(Lane lane) {
+        return this.executors.get(lane).getQueue().size();
+    }
+
+    public int getActiveCount(Lane lane) {
+        return this.executors.get(lane).getActiveCount();
+    }
+
+    private void handOver(Lane lane, Runnable submit) {
+        this.handingOver.set(true);
+        try {
+            submit.run();
+        } catch (RejectedExecutionException e) {
+            this.logger.warn("Scheduled task rejected by the {} lane", lane.name);
+        } finally {
+            this.handingOver.set(false);
+        }
+    }
+
+    public void shutdown() {
+        this.timer.shutdownNow();
+        for (ThreadPoolExecutor executor : this.executors.values())
+            executor.shutdown();
+        try {
+            for (Map.Entry<Lane, ThreadPoolExecutor> entry : this.executors.entrySet()) {
+                if (!entry.getValue().awaitTermination(2, TimeUnit.SECONDS)) {
+                    this.logger.warn("Forcing shutdown of the {} lane", entry.getKey().name);
+                    entry.getValue().shutdownNow();
+                }
+            }
+        } catch (InterruptedException e) {
+            for (ThreadPoolExecutor executor : this.executors.values())
+                executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private RejectedExecutionHandler rejectionPolicy(Lane lane) {
+        switch (lane) {
+            case ANALYSIS:
+                return (runnable, executor) -> {
+                    if (executor.isShutdown()) return;
+                    // Make room by dropping the oldest lookup, never another tab's analysis
+                    for (Runnable queued : executor.getQueue()) {
+                        if (queued instanceof CoalescedTask && ((CoalescedTask) queued).droppable &&
+                                executor.getQueue().remove(queued)) {
+                            this.coalesced.remove(((CoalescedTask) queued).key);
+                            executor.execute(runnable);
+                            return;
+                        }
+                    }
+                    throw new RejectedExecutionException("The analysis lane is full");
+                };
+            case IO:
+                return (runnable, executor) -> {
+                    if (executor.isShutdown()) return;
+                    if (this.handingOver.get())
+                        throw new RejectedExecutionException("The io lane is full");
+                    runnable.run();
+                };
+            default:
+                return new ThreadPoolExecutor.AbortPolicy();
+        }
+    }
+
+    private class CoalescedTask implements Runnable {
+        private final Object key;
+        private final boolean droppable;
+
+        CoalescedTask(Object key, boolean droppable) {
+            this.key = key;
+            this.droppable = droppable;
+        }
+
+        @Override
+        public void run() {
+            Runnable task = TaskScheduler.this.coalesced.remove(this.key);
+            if (task != null)
+                task.run();
+        }
+    }
+
+    private static class NamedThreadFactory implements ThreadFactory {
+        private final AtomicInteger counter = new AtomicInteger(1);
+        private final String name;
+
+        NamedThreadFactory(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, String.format("espressopad-%s-%d", this.name, this.counter.getAndIncrement()));
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -12,8 +12,11 @@ import java.awt.RenderingHints;
 import java.awt.font.FontRenderContext;
 import java.io.File;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.Arrays;
 import java.util.Locale;
 
@@ -79,4 +82,29 @@ public class Utilities {
             return fontWithFallback;
         return new FontUIResource(fontWithFallback);
     }
+
+    public static String formatDuration(long millis) {
+        long minutes = millis / 60_000;
+        long seconds = millis / 1000 % 60;
+        return String.format("%d:%02d.%d", minutes, seconds, millis / 100 % 10);
+    }
+
+    public static String formatBytes(long bytes) {
+        if (bytes < 1024) return String.format("%d B", bytes);
+        if (bytes < 1024 * 1024) return String.format("%.1f KB", bytes / 1024.0);
+        if (bytes < 1024L * 1024 * 1024) return String.format("%.1f MB", bytes / (1024.0 * 1024));
+        return String.format("%.1f GB", bytes / (1024.0 * 1024 * 1024));
+    }
+
+    public static String hash(String text) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(text.getBytes(StandardCharsets.UTF_8));
+            StringBuilder builder = new StringBuilder(digest.length * 2);
+            for (byte b : digest)
+                builder.append(String.format("%02x", b));
+            return builder.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
 }
@@ -5,6 +5,7 @@ import com.fasterxml.jackson.databind.SerializationFeature;
 import com.fasterxml.jackson.dataformat.xml.XmlMapper;
 import com.fasterxml.jackson.dataformat.xml.ser.ToXmlGenerator;
 import com.fasterxml.jackson.dataformat.xml.util.DefaultXmlPrettyPrinter;
+import com.github.espressopad.models.CachedSnippet;
 import com.github.espressopad.models.SettingsModel;
 import org.codehaus.stax2.XMLStreamWriter2;
 import org.w3c.dom.Document;
@@ -57,6 +58,14 @@ public class XmlUtilities {
         return this.artifactFile;
     }
 
+    public File getSymbolIndexFile() {
+        return this.settingsFile.toPath().resolveSibling("symbols.idx").toFile();
+    }
+
+    public File getSnippetCacheDirectory() {
+        return this.settingsFile.toPath().resolveSibling("snippet-cache").toFile();
+    }
+
     public XmlUtilities() {
         XmlPrettifier prettifier = new XmlPrettifier();
         this.printer.indentObjectsWith(prettifier);
@@ -216,6 +225,24 @@ public class XmlUtilities {
         }
     }
 
+    public void writeCachedSnippetXml(File file, CachedSnippet cachedSnippet) {
+        try (FileOutputStream fileOutputStream = new FileOutputStream(file);
+             BufferedOutputStream bufferedOutputStream = new BufferedOutputStream(fileOutputStream)) {
+            this.mapper.writeValue(bufferedOutputStream, cachedSnippet);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public CachedSnippet parseCachedSnippetXml(File file) {
+        try (FileInputStream fileInputStream = new FileInputStream(file);
+             BufferedInputStream bufferedInputStream = new BufferedInputStream(fileInputStream)) {
+            return this.mapper.readValue(bufferedInputStream, CachedSnippet.class);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
     private class XmlPrettifier implements DefaultXmlPrettyPrinter.Indenter {
         @Override
         public void writeIndentation(JsonGenerator g, int level) throws IOException {
@@ -12,6 +12,7 @@ import com.github.espressopad.controller.EspressoPadController;
 import com.github.espressopad.controller.TextEditorController;
 import com.github.espressopad.models.SettingsModel;
 import com.github.espressopad.models.ViewModel;
+import com.github.espressopad.utils.TaskScheduler;
 import com.github.espressopad.utils.Utilities;
 import com.github.espressopad.utils.XmlUtilities;
 import com.github.espressopad.views.components.FileTree;
@@ -26,9 +27,6 @@ import javax.swing.*;
 import javax.swing.border.CompoundBorder;
 import javax.swing.event.ChangeEvent;
 import javax.swing.filechooser.FileNameExtensionFilter;
-import javax.swing.text.BadLocationException;
-import javax.swing.text.Document;
-import javax.swing.text.SimpleAttributeSet;
 import java.awt.*;
 import java.awt.event.*;
 import java.io.File;
@@ -48,11 +46,18 @@ public class EspressoPadView extends JPanel {
     private final JMenuBar menuBar = new JMenuBar();
     private JButton runBtn;
     private JMenuItem runMenuItem;
+    private JButton stopBtn;
+    private JMenuItem stopMenuItem;
+    private JButton runAllBtn;
+    private JMenuItem runAllMenuItem;
     private final List<ViewModel> viewModels = new ArrayList<>();
     private final TextEditorController editorController = new TextEditorController();
     private final XmlUtilities handler = new XmlUtilities();
     private final JFrame frame;
     private boolean ignore = false;
+    private boolean runningAll = false;
+    // Tabs saved while running, reopened under their file once the run is over
+    private final Map<ViewModel, File> savedWhileRunning = new HashMap<>();
     private SettingsModel settings;
     private final ResourceBundle resourceBundle = ResourceBundle.getBundle("messages", Locale.getDefault());
     private FileTree fileTree;
@@ -63,7 +68,7 @@ public class EspressoPadView extends JPanel {
         this.frame.addWindowListener(new WindowClosingListener());
         this.settings = this.handler.parseSettingsXml();
         try {
-            if (this.settings != null) {
+            if (this.settings != null && this.settings.getLookAndFeel() != null) {
                 String laf = this.settings.getLookAndFeel();
                 UIManager.setLookAndFeel(laf);
                 SwingUtilities.updateComponentTreeUI(this.tabPane);
@@ -76,7 +81,10 @@ public class EspressoPadView extends JPanel {
         this.addTabButton();
         this.setupInterface();
         this.setupMiddleMouseListener();
-        this.controller.addArtifactsAndImports(EspressoPadController.getShell());
+        this.controller.setRunStateListener(() -> {
+            this.reopenSaved();
+            this.updateRunButtons();
+        });
     }
 
     private void setupInterface() {
@@ -124,7 +132,8 @@ public class EspressoPadView extends JPanel {
     private void setupTextEditorAppearance(TextEditor textEditor) {
         try {
             this.settings = this.handler.parseSettingsXml();
-            if (this.settings == null) return;
+            // settings.xml may only hold run configurations so far
+            if (this.settings == null || this.settings.getTheme() == null) return;
             String themeLocation = this.settings.getTheme();
             String font = this.settings.getFont();
             int fontSize = this.settings.getFontSize();
@@ -195,10 +204,20 @@ public class EspressoPadView extends JPanel {
 
         this.runBtn = new JButton(FontIcon.of(FontAwesomeSolid.PLAY, 15));
         this.runBtn.setToolTipText(this.resourceBundle.getString("run"));
-        this.runBtn.addActionListener(event ->
-                this.controller.run(this.getCurrentView(), new AbstractButton[]{this.runBtn, this.runMenuItem}));
+        this.runBtn.addActionListener(event -> this.run());
         this.toolBar.add(this.runBtn);
 
+        this.runAllBtn = new JButton(FontIcon.of(FontAwesomeSolid.FAST_FORWARD, 15));
+        this.runAllBtn.setToolTipText(this.resourceBundle.getString("run.all"));
+        this.runAllBtn.addActionListener(event -> this.runAll());
+        this.toolBar.add(this.runAllBtn);
+
+        this.stopBtn = new JButton(FontIcon.of(FontAwesomeSolid.STOP, 15));
+        this.stopBtn.setToolTipText(this.resourceBundle.getString("stop"));
+        this.stopBtn.setEnabled(false);
+        this.stopBtn.addActionListener(event -> this.controller.stop(this.getCurrentView()));
+        this.toolBar.add(this.stopBtn);
+
         this.toolBar.addSeparator();
 
         this.add(this.toolBar, BorderLayout.NORTH);
@@ -312,6 +331,12 @@ public class EspressoPadView extends JPanel {
         goToLineItem.addActionListener(event -> this.editorController.setupGoToLine(this.getCurrentTextEditor()));
         editMenu.add(goToLineItem);
 
+        JMenuItem goToDeclarationItem = new JMenuItem(this.resourceBundle.getString("go.to.declaration"));
+        goToDeclarationItem.setMnemonic('l');
+        goToDeclarationItem.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_B, ctrlDownMask));
+        goToDeclarationItem.addActionListener(event -> this.controller.goToDeclaration(this.getCurrentTextEditor()));
+        editMenu.add(goToDeclarationItem);
+
         JMenuItem duplicateSelectionItem = new JMenuItem(this.resourceBundle.getString("duplicate"));
         duplicateSelectionItem.setMnemonic('d');
         duplicateSelectionItem.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_T, ctrlDownMask));
@@ -330,15 +355,41 @@ public class EspressoPadView extends JPanel {
 
         JMenu runMenu = new JMenu(this.resourceBundle.getString("run"));
         this.runMenuItem = new JMenuItem(this.resourceBundle.getString("run"));
-        this.runMenuItem.addActionListener(event ->
-                this.controller.run(this.getCurrentView(), new AbstractButton[]{this.runMenuItem, this.runBtn}));
+        this.runMenuItem.addActionListener(event -> this.run());
         runMenu.add(this.runMenuItem);
 
+        JMenuItem rerunMenuItem = new JMenuItem(this.resourceBundle.getString("full.rerun"));
+        rerunMenuItem.setToolTipText(this.resourceBundle.getString("discard.incremental.state.and.run.everything"));
+        rerunMenuItem.addActionListener(event -> this.controller.rerun(this.getCurrentView()));
+        runMenu.add(rerunMenuItem);
+
+        this.runAllMenuItem = new JMenuItem(this.resourceBundle.getString("run.all"));
+        this.runAllMenuItem.addActionListener(event -> this.runAll());
+        runMenu.add(this.runAllMenuItem);
+
+        this.stopMenuItem = new JMenuItem(this.resourceBundle.getString("stop"));
+        this.stopMenuItem.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_F2, ctrlDownMask));
+        this.stopMenuItem.setEnabled(false);
+        this.stopMenuItem.addActionListener(event -> this.controller.stop(this.getCurrentView()));
+        runMenu.add(this.stopMenuItem);
+
+        runMenu.add(new JSeparator());
+
+        JMenuItem runConfigurationItem = new JMenuItem(this.resourceBundle.getString("run.configuration"));
+        runConfigurationItem.addActionListener(event ->
+                new RunConfigurationView(this.controller, this.getCurrentView()).show());
+        runMenu.add(runConfigurationItem);
+
+        JMenuItem exportOutputItem = new JMenuItem(this.resourceBundle.getString("export.output"));
+        exportOutputItem.addActionListener(event -> this.exportOutput());
+        runMenu.add(exportOutputItem);
+
         JMenu toolsMenu = new JMenu(this.resourceBundle.getString("tools"));
         JMenuItem settingsMenuItem = new JMenuItem(this.resourceBundle.getString("settings"));
         settingsMenuItem.addActionListener(event -> {
                     this.settings = this.handler.parseSettingsXml();
                     new SettingsView(
+                            this.controller,
                             this.viewModels.stream().map(ViewModel::getTextEditor).collect(Collectors.toList()),
                             this.settings
                     ).show();
@@ -359,6 +410,42 @@ public class EspressoPadView extends JPanel {
         this.frame.setJMenuBar(this.menuBar);
     }
 
+    private void run() {
+        if (!this.getCurrentView().isRunning())
+            this.controller.run(this.getCurrentView());
+    }
+
+    private void runAll() {
+        this.runningAll = true;
+        this.updateRunButtons();
+        new RunAllView(this.frame, this.controller, new ArrayList<>(this.viewModels))
+                .start()
+                .whenComplete((result, e) -> SwingUtilities.invokeLater(() -> {
+                    this.runningAll = false;
+                    this.updateRunButtons();
+                }));
+    }
+
+    /*
+     *  Enable the run buttons from the state of every tab rather than
+     *  toggling them wherever a run starts or ends, so that single runs and
+     *  Run All can not undo each other. Run and Stop act on the selected
+     *  tab, so they follow its state.
+     */
+    private void updateRunButtons() {
+        if (this.runBtn == null) return;
+        int selected = this.tabPane.getSelectedIndex();
+        boolean selectedRunning = selected >= 0 && selected < this.viewModels.size() &&
+                this.viewModels.get(selected).isRunning();
+        boolean anyRunning = this.runningAll || this.viewModels.stream().anyMatch(ViewModel::isRunning);
+        this.runBtn.setEnabled(!selectedRunning && !this.runningAll);
+        this.runMenuItem.setEnabled(!selectedRunning && !this.runningAll);
+        this.runAllBtn.setEnabled(!anyRunning);
+        this.runAllMenuItem.setEnabled(!anyRunning);
+        this.stopBtn.setEnabled(selectedRunning);
+        this.stopMenuItem.setEnabled(selectedRunning);
+    }
+
     private ViewModel getCurrentView() {
         return this.viewModels.get(this.tabPane.getSelectedIndex());
     }
@@ -385,6 +472,7 @@ public class EspressoPadView extends JPanel {
         this.setupClosableTabs(title);
         this.setupTextEditorAppearance(textEditor);
         this.controller.setupTextChangeListener(textEditor);
+        this.controller.loadRunConfiguration(model);
         this.viewModels.add(model);
         return tab;
     }
@@ -393,7 +481,11 @@ public class EspressoPadView extends JPanel {
         model.getTab().setLayout(new BorderLayout());
         JPanel panel = new JPanel();
         panel.setLayout(new BoxLayout(panel, BoxLayout.PAGE_AXIS));
-        panel.add(new JScrollPane(model.getResultView()));
+        JTabbedPane resultTabs = new JTabbedPane(JTabbedPane.BOTTOM);
+        resultTabs.addTab(this.resourceBundle.getString("output"), model.getResultPanel());
+        resultTabs.addTab(this.resourceBundle.getString("hot.snippets"), model.getProfilePanel());
+        resultTabs.addTab(this.resourceBundle.getString("input"), model.getInputPanel());
+        panel.add(resultTabs);
         panel.add(model.getStatusBar());
         DockFrontend frontend = new DockFrontend(this.frame);
         ColorManager colors = frontend.getController().getColors();
@@ -406,7 +498,13 @@ public class EspressoPadView extends JPanel {
         DefaultDockable textDock = Utilities.createDockable(scrollPane, model.getTitle());
         frontend.addDockable("document", textDock);
         frontend.setHideable(textDock, false);
-        station.drop(textDock, new SplitDockProperty(0, 0, 1, .6));
+        station.drop(textDock, new SplitDockProperty(0, 0, .8, .6));
+        DefaultDockable outlineDock = Utilities.createDockable(model.getOutlinePanel(),
+                this.resourceBundle.getString("outline"));
+        outlineDock.setTitleIcon(FontIcon.of(FontAwesomeSolid.LIST_UL, 11));
+        frontend.addDockable("outline", outlineDock);
+        frontend.setHideable(outlineDock, false);
+        station.drop(outlineDock, new SplitDockProperty(.8, 0, .2, .6));
         DefaultDockable dockable = Utilities.createDockable(panel, this.resourceBundle.getString("results"));
         dockable.setTitleIcon(FontIcon.of(FontAwesomeSolid.GLASSES, 11));
         frontend.addDockable("results", dockable);
@@ -447,6 +545,7 @@ public class EspressoPadView extends JPanel {
             this.tabPane.setSelectedComponent(tab);
             this.setupClosableTabs(model.getTitle());
             this.controller.setupTextChangeListener(textEditor);
+            this.controller.loadRunConfiguration(model);
             this.viewModels.add(model);
             return tab;
         } catch (IOException e) {
@@ -476,31 +575,62 @@ public class EspressoPadView extends JPanel {
             } finally {
                 this.ignore = false;
             }
+            this.updateRunButtons();
         }
     }
 
     private void saveFile() {
-        try {
-            ViewModel currentViewModel = this.getCurrentView();
-            Document document = currentViewModel.getResultView().getDocument();
-            String resultText = document.getText(0, document.getLength());
-            File savedFile = this.editorController.saveFile(currentViewModel);
-            if (savedFile != null) {
-                this.openFile(savedFile);
-                this.tabPane.removeTabAt(this.viewModels.indexOf(currentViewModel));
-                this.setupClosableTabs(savedFile.getName());
-                this.viewModels.remove(currentViewModel);
-                this.fileTree.refreshTree();
-                this.getCurrentView()
-                        .getResultView()
-                        .getDocument()
-                        .insertString(0, resultText, new SimpleAttributeSet());
+        ViewModel currentViewModel = this.getCurrentView();
+        File savedFile = this.editorController.saveFile(currentViewModel);
+        if (savedFile != null) {
+            // The run keeps writing to this tab, so it is only reopened once the run is over
+            if (currentViewModel.isRunning())
+                this.savedWhileRunning.put(currentViewModel, savedFile);
+            else this.reopen(currentViewModel, savedFile);
+            this.fileTree.refreshTree();
+        }
+    }
+
+    private void reopenSaved() {
+        Iterator<Map.Entry<ViewModel, File>> iterator = this.savedWhileRunning.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<ViewModel, File> entry = iterator.next();
+            if (!this.viewModels.contains(entry.getKey()))
+                iterator.remove();
+            else if (!entry.getKey().isRunning()) {
+                iterator.remove();
+                this.reopen(entry.getKey(), entry.getValue());
             }
-        } catch (BadLocationException e) {
-            throw new RuntimeException(e);
         }
     }
 
+    private void reopen(ViewModel currentViewModel, File savedFile) {
+        JPanel tab = this.openFile(savedFile);
+        // Hand the output over as is instead of copying it into a new document
+        for (ViewModel viewModel : this.viewModels) {
+            if (viewModel.getTab() == tab)
+                viewModel.getResultPanel().takeOver(currentViewModel.getResultPanel());
+        }
+        this.tabPane.removeTabAt(this.viewModels.indexOf(currentViewModel));
+        this.setupClosableTabs(savedFile.getName());
+        this.viewModels.remove(currentViewModel);
+        this.controller.releaseTab(currentViewModel);
+    }
+
+    private void exportOutput() {
+        ViewModel viewModel = this.getCurrentView();
+        JFileChooser chooser = new JFileChooser();
+        chooser.setSelectedFile(new File(viewModel.getTitle() + ".out.txt"));
+        chooser.addChoosableFileFilter(new FileNameExtensionFilter(
+                this.resourceBundle.getString("text.files"), "txt", "log"
+        ));
+        chooser.addChoosableFileFilter(new FileNameExtensionFilter(
+                this.resourceBundle.getString("gzip.compressed.files"), "gz"
+        ));
+        if (chooser.showSaveDialog(this.frame) == JFileChooser.APPROVE_OPTION)
+            this.controller.exportOutput(viewModel, chooser.getSelectedFile());
+    }
+
     private void saveFileAs() {
         ViewModel currentViewModel = this.getCurrentView();
         File savedFile = this.editorController.saveFileAs(currentViewModel);
@@ -552,8 +682,10 @@ public class EspressoPadView extends JPanel {
                         tabPane.setSelectedComponent(tabPane.getComponentAt(tabPane.getTabCount() - 2));
                         for (Iterator<ViewModel> iterator = viewModels.iterator(); iterator.hasNext(); ) {
                             ViewModel viewModel = iterator.next();
-                            if (viewModel.getTitle().equals(title))
+                            if (viewModel.getTitle().equals(title)) {
                                 iterator.remove();
+                                controller.closeTab(viewModel);
+                            }
                         }
                     }
                 }
@@ -563,7 +695,7 @@ public class EspressoPadView extends JPanel {
 
     private void removeCurrentTab() {
         if (this.tabPane.getTabCount() <= 2) return;
-        this.viewModels.remove(this.tabPane.getSelectedIndex());
+        this.controller.closeTab(this.viewModels.remove(this.tabPane.getSelectedIndex()));
         this.tabPane.remove(this.tabPane.getSelectedComponent());
         this.tabPane.setSelectedComponent(this.tabPane.getComponentAt(this.tabPane.getTabCount() - 2));
     }
@@ -574,6 +706,7 @@ public class EspressoPadView extends JPanel {
             ViewModel viewModel = iterator.next();
             if (viewModel.getTitle().equals(title)) {
                 iterator.remove();
+                this.controller.closeTab(viewModel);
                 this.tabPane.remove(viewModel.getTab());
             }
         }
@@ -591,8 +724,10 @@ public class EspressoPadView extends JPanel {
         for (Iterator<ViewModel> iterator = this.viewModels.iterator(); iterator.hasNext(); ) {
             ViewModel viewModel = iterator.next();
             File backingFile = viewModel.getBackingFile();
-            if (backingFile != null && !checker.add(backingFile.getPath()))
+            if (backingFile != null && !checker.add(backingFile.getPath())) {
                 iterator.remove();
+                this.controller.closeTab(viewModel);
+            }
         }
         this.tabPane.setSelectedIndex(this.tabPane.indexOfTab(selectedTitle));
     }
@@ -639,6 +774,7 @@ public class EspressoPadView extends JPanel {
     private void exit() {
         if (this.checkUnsaved()) {
             this.controller.close();
+            TaskScheduler.getInstance().shutdown();
             System.exit(0);
         }
     }
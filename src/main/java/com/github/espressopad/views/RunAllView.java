@@ -0,0 +1,132 @@
+package com.github.espressopad.views;
+
+import com.github.espressopad.controller.EspressoPadController;
+import com.github.espressopad.controller.RunHandle;
+import com.github.espressopad.models.RunState;
+import com.github.espressopad.models.ViewModel;
+import com.github.espressopad.utils.Utilities;
+import org.kordamp.ikonli.fontawesome5.FontAwesomeSolid;
+import org.kordamp.ikonli.swing.FontIcon;
+
+import javax.swing.*;
+import javax.swing.table.DefaultTableModel;
+import java.awt.*;
+import java.util.List;
+import java.util.Locale;
+import java.util.ResourceBundle;
+import java.util.concurrent.CompletableFuture;
+
+public class RunAllView {
+    private final ResourceBundle resourceBundle = ResourceBundle.getBundle("messages", Locale.getDefault());
+    private final EspressoPadController controller;
+    private final List<ViewModel> viewModels;
+    private final RunHandle[] handles;
+    private final JFrame frame;
+    private final JDialog dialog = new JDialog();
+    private final JPanel contentPane = new JPanel(new BorderLayout());
+    private final Timer refreshTimer = new Timer(200, event -> this.refresh());
+    private DefaultTableModel tableModel;
+    private JButton stopAllButton;
+    private CompletableFuture<Void> completion;
+    private volatile boolean stopping = false;
+
+    public RunAllView(JFrame frame, EspressoPadController controller, List<ViewModel> viewModels) {
+        this.frame = frame;
+        this.controller = controller;
+        this.viewModels = viewModels;
+        this.handles = new RunHandle[viewModels.size()];
+        this.setupUI();
+    }
+
+    /*
+     *  Show the summary and start the runs. The returned future completes
+     *  once every tab has finished.
+     */
+    public CompletableFuture<Void> start() {
+        this.dialog.setTitle(this.resourceBundle.getString("run.all"));
+        this.dialog.setContentPane(this.contentPane);
+        this.dialog.setModal(false);
+        this.dialog.setSize(new Dimension(550, 300));
+        this.dialog.setLocationRelativeTo(this.frame);
+        this.dialog.setVisible(true);
+
+        this.refreshTimer.start();
+        this.completion = this.controller.runAll(this.viewModels, handle ->
+                this.handles[this.viewModels.indexOf(handle.getViewModel())] = handle, () -> this.stopping);
+        return this.completion.whenComplete((result, e) -> SwingUtilities.invokeLater(() -> {
+            this.refreshTimer.stop();
+            this.refresh();
+            this.stopAllButton.setEnabled(false);
+        }));
+    }
+
+    private void setupUI() {
+        this.tableModel = new DefaultTableModel(new String[]{
+                this.resourceBundle.getString("tab"),
+                this.resourceBundle.getString("status"),
+                this.resourceBundle.getString("wall.time"),
+                this.resourceBundle.getString("exit.state")
+        }, 0) {
+            @Override
+            public boolean isCellEditable(int row, int column) {
+                return false;
+            }
+        };
+        for (ViewModel viewModel : this.viewModels)
+            this.tableModel.addRow(new Object[]{viewModel.getTitle(), this.resourceBundle.getString("queued"), "", ""});
+        JTable table = new JTable(this.tableModel);
+        table.setFillsViewportHeight(true);
+        this.contentPane.add(new JScrollPane(table), BorderLayout.CENTER);
+
+        JPanel buttonPanel = new JPanel(new FlowLayout(FlowLayout.RIGHT));
+        this.stopAllButton = new JButton(this.resourceBundle.getString("stop.all"));
+        this.stopAllButton.setIcon(FontIcon.of(FontAwesomeSolid.STOP, 15));
+        this.stopAllButton.addActionListener(event -> this.stopAll());
+        buttonPanel.add(this.stopAllButton);
+        JButton closeButton = new JButton(this.resourceBundle.getString("close"));
+        closeButton.addActionListener(event -> this.dialog.dispose());
+        buttonPanel.add(closeButton);
+        this.contentPane.add(buttonPanel, BorderLayout.SOUTH);
+    }
+
+    private void stopAll() {
+        // Keep queued tabs from starting, then stop the ones already running
+        this.stopping = true;
+        for (RunHandle handle : this.handles) {
+            if (handle != null)
+                this.controller.stop(handle.getViewModel());
+        }
+        this.stopAllButton.setEnabled(false);
+    }
+
+    private void refresh() {
+        for (int i = 0; i < this.handles.length; i++) {
+            RunHandle handle = this.handles[i];
+            if (handle == null) {
+                // Stopped before its turn, or already running on its own when it came
+                if (this.stopping || this.completion.isDone())
+                    this.tableModel.setValueAt(this.resourceBundle.getString("skipped"), i, 1);
+                continue;
+            }
+            this.tableModel.setValueAt(this.resourceBundle.getString(
+                    handle.isFinished() ? "finished" : "running"
+            ), i, 1);
+            this.tableModel.setValueAt(Utilities.formatDuration(handle.getElapsedMillis()), i, 2);
+            if (handle.isFinished())
+                this.tableModel.setValueAt(this.getExitStateLabel(handle.getState()), i, 3);
+        }
+    }
+
+    private String getExitStateLabel(RunState state) {
+        switch (state) {
+            case FAILED:
+                return this.resourceBundle.getString("failed");
+            case STOPPED:
+                return this.resourceBundle.getString("stopped");
+            case TIMED_OUT:
+                return this.resourceBundle.getString("timed.out");
+            default:
+                return this.resourceBundle.getString("completed");
+        }
+    }
+}
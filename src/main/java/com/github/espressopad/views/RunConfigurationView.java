@@ -0,0 +1,259 @@
+package com.github.espressopad.views;
+
+import com.github.espressopad.controller.EspressoPadController;
+import com.github.espressopad.models.ExecutionEngine;
+import com.github.espressopad.models.InputSource;
+import com.github.espressopad.models.OutputPolicy;
+import com.github.espressopad.models.RunConfiguration;
+import com.github.espressopad.models.ViewModel;
+import org.kordamp.ikonli.fontawesome5.FontAwesomeSolid;
+import org.kordamp.ikonli.swing.FontIcon;
+
+import javax.swing.*;
+import java.awt.*;
+import java.io.File;
+import java.nio.charset.Charset;
+import java.util.Locale;
+import java.util.ResourceBundle;
+
+public class RunConfigurationView {
+    private final ResourceBundle resourceBundle = ResourceBundle.getBundle("messages", Locale.getDefault());
+    private final EspressoPadController controller;
+    private final ViewModel viewModel;
+    private final JPanel view = new JPanel(new GridBagLayout());
+    private JDialog dialog;
+    private JSpinner timeoutSpinner;
+    private JCheckBox incrementalCheckBox;
+    private JCheckBox profilingCheckBox;
+    private JComboBox<ExecutionEngine> engineComboBox;
+    private JTextField remoteVmOptionsField;
+    private JComboBox<String> charsetComboBox;
+    private JComboBox<OutputPolicy> outputPolicyComboBox;
+    private JSpinner sampleIntervalSpinner;
+    private JSpinner keptLinesSpinner;
+    private JTextField teeFileField;
+    private JComboBox<InputSource> inputSourceComboBox;
+    private JTextField inputFileField;
+    private JButton inputFileButton;
+    private JCheckBox echoInputCheckBox;
+
+    public RunConfigurationView(EspressoPadController controller, ViewModel viewModel) {
+        this.controller = controller;
+        this.viewModel = viewModel;
+        this.setupInterface();
+    }
+
+    public void show() {
+        Frame frame = JOptionPane.getFrameForComponent(this.viewModel.getTab());
+        this.dialog = new JDialog(frame, String.format(
+                this.resourceBundle.getString("run.configuration.s"), this.viewModel.getTitle()
+        ), true);
+        this.dialog.setContentPane(this.view);
+        this.dialog.pack();
+        this.dialog.setLocationRelativeTo(frame);
+        this.dialog.setVisible(true);
+    }
+
+    private void setupInterface() {
+        RunConfiguration runConfiguration = this.viewModel.getRunConfiguration();
+        GridBagConstraints gbc = new GridBagConstraints();
+        gbc.gridx = 0;
+        gbc.gridy = 0;
+        gbc.insets = new Insets(5, 5, 5, 5);
+        gbc.fill = GridBagConstraints.HORIZONTAL;
+        this.view.add(new JLabel(this.resourceBundle.getString("timeout.seconds")), gbc);
+        gbc.gridx = 1;
+        this.timeoutSpinner = new JSpinner(new SpinnerNumberModel(
+                runConfiguration.getTimeoutSeconds(), 0, 24 * 60 * 60, 1
+        ));
+        this.timeoutSpinner.setToolTipText(this.resourceBundle.getString("zero.means.no.limit"));
+        this.view.add(this.timeoutSpinner, gbc);
+        gbc.gridx = 0;
+        gbc.gridy++;
+        this.view.add(new JLabel(this.resourceBundle.getString("execution.engine")), gbc);
+        gbc.gridx = 1;
+        this.engineComboBox = new JComboBox<>(ExecutionEngine.values());
+        this.engineComboBox.setRenderer(new DefaultListCellRenderer() {
+            @Override
+            public Component getListCellRendererComponent(JList<?> list, Object value, int index,
+                                                          boolean isSelected, boolean cellHasFocus) {
+                super.getListCellRendererComponent(list, value, index, isSelected, cellHasFocus);
+                if (value != null)
+                    this.setText(RunConfigurationView.this.resourceBundle.getString(((ExecutionEngine) value).getKey()));
+                return this;
+            }
+        });
+        this.engineComboBox.setSelectedItem(runConfiguration.getEngine());
+        this.engineComboBox.addActionListener(event -> {
+            this.remoteVmOptionsField.setEnabled(this.engineComboBox.getSelectedItem() == ExecutionEngine.REMOTE);
+            this.charsetComboBox.setEnabled(this.engineComboBox.getSelectedItem() == ExecutionEngine.REMOTE);
+        });
+        this.view.add(this.engineComboBox, gbc);
+        gbc.gridx = 0;
+        gbc.gridy++;
+        this.view.add(new JLabel(this.resourceBundle.getString("remote.vm.options")), gbc);
+        gbc.gridx = 1;
+        this.remoteVmOptionsField = new JTextField(runConfiguration.getRemoteVmOptions(), 20);
+        this.remoteVmOptionsField.setToolTipText(this.resourceBundle.getString("remote.vm.options.example"));
+        this.remoteVmOptionsField.setEnabled(runConfiguration.getEngine() == ExecutionEngine.REMOTE);
+        this.view.add(this.remoteVmOptionsField, gbc);
+        gbc.gridx = 0;
+        gbc.gridy++;
+        this.view.add(new JLabel(this.resourceBundle.getString("output.charset")), gbc);
+        gbc.gridx = 1;
+        this.charsetComboBox = new JComboBox<>(Charset.availableCharsets().keySet().toArray(String[]::new));
+        this.charsetComboBox.setSelectedItem(runConfiguration.getCharset());
+        // The in-process engine shares EspressoPad's own standard streams and their charset
+        this.charsetComboBox.setToolTipText(this.resourceBundle.getString("charset.of.the.remote.vm.output"));
+        this.charsetComboBox.setEnabled(runConfiguration.getEngine() == ExecutionEngine.REMOTE);
+        this.view.add(this.charsetComboBox, gbc);
+        gbc.gridx = 0;
+        gbc.gridy++;
+        this.view.add(new JLabel(this.resourceBundle.getString("output.policy")), gbc);
+        gbc.gridx = 1;
+        this.outputPolicyComboBox = new JComboBox<>(OutputPolicy.values());
+        this.outputPolicyComboBox.setRenderer(new DefaultListCellRenderer() {
+            @Override
+            public Component getListCellRendererComponent(JList<?> list, Object value, int index,
+                                                          boolean isSelected, boolean cellHasFocus) {
+                super.getListCellRendererComponent(list, value, index, isSelected, cellHasFocus);
+                if (value != null)
+                    this.setText(RunConfigurationView.this.resourceBundle.getString(((OutputPolicy) value).getKey()));
+                return this;
+            }
+        });
+        this.outputPolicyComboBox.setSelectedItem(runConfiguration.getOutputPolicy());
+        this.outputPolicyComboBox.setToolTipText(this.resourceBundle.getString("when.output.arrives.faster.than.it.can.be.shown"));
+        this.outputPolicyComboBox.addActionListener(event -> this.toggleOutputPolicyFields());
+        this.view.add(this.outputPolicyComboBox, gbc);
+        gbc.gridx = 0;
+        gbc.gridy++;
+        this.view.add(new JLabel(this.resourceBundle.getString("keep.every.nth.line")), gbc);
+        gbc.gridx = 1;
+        this.sampleIntervalSpinner = new JSpinner(new SpinnerNumberModel(
+                runConfiguration.getSampleInterval(), 1, 1_000_000, 1
+        ));
+        this.view.add(this.sampleIntervalSpinner, gbc);
+        gbc.gridx = 0;
+        gbc.gridy++;
+        this.view.add(new JLabel(this.resourceBundle.getString("latest.lines.to.keep")), gbc);
+        gbc.gridx = 1;
+        this.keptLinesSpinner = new JSpinner(new SpinnerNumberModel(
+                runConfiguration.getKeptLines(), 1, 1_000_000, 10
+        ));
+        this.view.add(this.keptLinesSpinner, gbc);
+        this.toggleOutputPolicyFields();
+        gbc.gridx = 0;
+        gbc.gridy++;
+        this.view.add(new JLabel(this.resourceBundle.getString("write.output.to")), gbc);
+        gbc.gridx = 1;
+        JPanel teeFilePanel = new JPanel(new BorderLayout(5, 0));
+        this.teeFileField = new JTextField(runConfiguration.getTeeFile(), 20);
+        this.teeFileField.setToolTipText(this.resourceBundle.getString("output.file.tooltip"));
+        teeFilePanel.add(this.teeFileField, BorderLayout.CENTER);
+        JButton browseButton = new JButton("...");
+        browseButton.addActionListener(event -> this.browseTeeFile());
+        teeFilePanel.add(browseButton, BorderLayout.LINE_END);
+        this.view.add(teeFilePanel, gbc);
+        gbc.gridx = 0;
+        gbc.gridy++;
+        this.view.add(new JLabel(this.resourceBundle.getString("standard.input")), gbc);
+        gbc.gridx = 1;
+        this.inputSourceComboBox = new JComboBox<>(InputSource.values());
+        this.inputSourceComboBox.setRenderer(new DefaultListCellRenderer() {
+            @Override
+            public Component getListCellRendererComponent(JList<?> list, Object value, int index,
+                                                          boolean isSelected, boolean cellHasFocus) {
+                super.getListCellRendererComponent(list, value, index, isSelected, cellHasFocus);
+                if (value != null)
+                    this.setText(RunConfigurationView.this.resourceBundle.getString(((InputSource) value).getKey()));
+                return this;
+            }
+        });
+        this.inputSourceComboBox.setSelectedItem(runConfiguration.getInputSource());
+        this.inputSourceComboBox.addActionListener(event -> this.toggleInputFields());
+        this.view.add(this.inputSourceComboBox, gbc);
+        gbc.gridx = 0;
+        gbc.gridy++;
+        this.view.add(new JLabel(this.resourceBundle.getString("input.file")), gbc);
+        gbc.gridx = 1;
+        JPanel inputFilePanel = new JPanel(new BorderLayout(5, 0));
+        this.inputFileField = new JTextField(runConfiguration.getInputFile(), 20);
+        inputFilePanel.add(this.inputFileField, BorderLayout.CENTER);
+        this.inputFileButton = new JButton("...");
+        this.inputFileButton.addActionListener(event -> this.browseInputFile());
+        inputFilePanel.add(this.inputFileButton, BorderLayout.LINE_END);
+        this.view.add(inputFilePanel, gbc);
+        this.toggleInputFields();
+        gbc.gridx = 0;
+        gbc.gridy++;
+        gbc.gridwidth = 2;
+        this.incrementalCheckBox = new JCheckBox(this.resourceBundle.getString("incremental.execution"));
+        this.incrementalCheckBox.setToolTipText(this.resourceBundle.getString("only.re.evaluate.changed.snippets"));
+        this.incrementalCheckBox.setSelected(runConfiguration.isIncremental());
+        this.view.add(this.incrementalCheckBox, gbc);
+        gbc.gridy++;
+        this.profilingCheckBox = new JCheckBox(this.resourceBundle.getString("profile.snippets"));
+        this.profilingCheckBox.setToolTipText(this.resourceBundle.getString("record.time.and.memory.of.every.snippet"));
+        this.profilingCheckBox.setSelected(runConfiguration.isProfiling());
+        this.view.add(this.profilingCheckBox, gbc);
+        gbc.gridy++;
+        this.echoInputCheckBox = new JCheckBox(this.resourceBundle.getString("echo.input"));
+        this.echoInputCheckBox.setToolTipText(this.resourceBundle.getString("show.what.the.snippets.read.in.the.output"));
+        this.echoInputCheckBox.setSelected(runConfiguration.isEchoInput());
+        this.view.add(this.echoInputCheckBox, gbc);
+        gbc.gridx = 1;
+        gbc.gridy++;
+        gbc.gridwidth = 1;
+        JButton saveButton = new JButton();
+        saveButton.setIcon(FontIcon.of(FontAwesomeSolid.SAVE, 15));
+        saveButton.addActionListener(event -> this.saveChanges());
+        this.view.add(saveButton, gbc);
+    }
+
+    private void toggleOutputPolicyFields() {
+        this.sampleIntervalSpinner.setEnabled(this.outputPolicyComboBox.getSelectedItem() == OutputPolicy.SAMPLE);
+        this.keptLinesSpinner.setEnabled(this.outputPolicyComboBox.getSelectedItem() == OutputPolicy.DROP);
+    }
+
+    private void toggleInputFields() {
+        boolean file = this.inputSourceComboBox.getSelectedItem() == InputSource.FILE;
+        this.inputFileField.setEnabled(file);
+        this.inputFileButton.setEnabled(file);
+    }
+
+    private void browseInputFile() {
+        JFileChooser chooser = new JFileChooser();
+        if (!this.inputFileField.getText().isBlank())
+            chooser.setSelectedFile(new File(this.inputFileField.getText().strip()));
+        if (chooser.showOpenDialog(this.dialog) == JFileChooser.APPROVE_OPTION)
+            this.inputFileField.setText(chooser.getSelectedFile().getAbsolutePath());
+    }
+
+    private void browseTeeFile() {
+        JFileChooser chooser = new JFileChooser();
+        if (!this.teeFileField.getText().isBlank())
+            chooser.setSelectedFile(new File(this.teeFileField.getText().strip()));
+        if (chooser.showSaveDialog(this.dialog) == JFileChooser.APPROVE_OPTION)
+            this.teeFileField.setText(chooser.getSelectedFile().getAbsolutePath());
+    }
+
+    private void saveChanges() {
+        RunConfiguration runConfiguration = this.viewModel.getRunConfiguration();
+        runConfiguration.setTimeoutSeconds((Integer) this.timeoutSpinner.getValue());
+        runConfiguration.setIncremental(this.incrementalCheckBox.isSelected());
+        runConfiguration.setProfiling(this.profilingCheckBox.isSelected());
+        runConfiguration.setEngine((ExecutionEngine) this.engineComboBox.getSelectedItem());
+        runConfiguration.setRemoteVmOptions(this.remoteVmOptionsField.getText().trim());
+        runConfiguration.setCharset((String) this.charsetComboBox.getSelectedItem());
+        runConfiguration.setOutputPolicy((OutputPolicy) this.outputPolicyComboBox.getSelectedItem());
+        runConfiguration.setSampleInterval((Integer) this.sampleIntervalSpinner.getValue());
+        runConfiguration.setKeptLines((Integer) this.keptLinesSpinner.getValue());
+        runConfiguration.setTeeFile(this.teeFileField.getText());
+        runConfiguration.setInputSource((InputSource) this.inputSourceComboBox.getSelectedItem());
+        runConfiguration.setInputFile(this.inputFileField.getText());
+        runConfiguration.setEchoInput(this.echoInputCheckBox.isSelected());
+        this.controller.saveRunConfiguration(this.viewModel);
+        this.dialog.dispose();
+    }
+}
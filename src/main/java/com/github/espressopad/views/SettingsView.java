@@ -30,6 +30,7 @@ import java.util.stream.IntStream;
 public class SettingsView {
     private final Logger logger = LoggerFactory.getLogger(SettingsView.class);
     private final SettingsController controller = new SettingsController();
+    private final EspressoPadController padController;
     private final XmlUtilities handler = new XmlUtilities();
     private final JTabbedPane view = new JTabbedPane();
     private final SettingsModel settings;
@@ -75,13 +76,22 @@ public class SettingsView {
     private final DefaultListModel<String> installedArtifactModel = new DefaultListModel<>();
     private final DefaultListModel<String> importsModel = new DefaultListModel<>();
     private JCheckBox wordWrapCheck;
-
-    public SettingsView(List<TextEditor> textEditors, SettingsModel settings) {
+    private JCheckBox snippetCacheCheck;
+    private JSpinner snippetCacheSizeSpinner;
+    private JSpinner snippetCacheAgeSpinner;
+    private JCheckBox consoleBoundedCheck;
+    private JSpinner consoleLinesSpinner;
+    private JSpinner consoleKilobytesSpinner;
+    private JSpinner analysisDelaySpinner;
+
+    public SettingsView(EspressoPadController padController, List<TextEditor> textEditors, SettingsModel settings) {
+        this.padController = padController;
         this.settings = settings;
         this.textEditors = textEditors;
         this.setupAppearance();
         this.setupDependenciesView();
         this.setupImportsManagement();
+        this.setupExecution();
         this.deactivatePickJar();
         this.toggleArtifactButtonState();
         this.toggleInstalledArtifactButtonState();
@@ -136,7 +146,7 @@ public class SettingsView {
         panel.add(new JLabel(this.resourceBundle.getString("editor.theme")), gbc);
         gbc.gridx = 1;
         this.textEditorThemeComboBox = new JComboBox<>(this.textEditorThemeList);
-        if (this.settings != null) {
+        if (this.settings != null && this.settings.getTheme() != null) {
             String theme = this.settings.getTheme();
             this.textEditorThemeComboBox.setSelectedItem(
                     this.textEditorThemes.get(theme.substring(theme.lastIndexOf('/') + 1))
@@ -215,7 +225,9 @@ public class SettingsView {
             SwingUtilities.updateComponentTreeUI(this.dialog);
             SwingUtilities.updateComponentTreeUI(JOptionPane.getFrameForComponent(this.textEditors.get(0)));
 
-            SettingsModel settings = new SettingsModel();
+            SettingsModel settings = this.handler.parseSettingsXml();
+            if (settings == null)
+                settings = new SettingsModel();
             settings.setFont(font.getFontName());
             settings.setFontSize(font.getSize());
             settings.setTheme(themeLocation);
@@ -440,6 +452,106 @@ public class SettingsView {
         this.view.addTab(this.resourceBundle.getString("manage.imports"), panel);
     }
 
+    private void setupExecution() {
+        SettingsModel settings = this.settings == null ? new SettingsModel() : this.settings;
+        JPanel panel = new JPanel(new GridBagLayout());
+        GridBagConstraints gbc = new GridBagConstraints();
+        gbc.gridx = 0;
+        gbc.gridy = 0;
+        gbc.insets = new Insets(5, 5, 5, 5);
+        gbc.anchor = GridBagConstraints.NORTHWEST;
+        gbc.fill = GridBagConstraints.HORIZONTAL;
+        panel.add(new JLabel(this.resourceBundle.getString("cache.compiled.snippets")), gbc);
+        gbc.gridx = 1;
+        this.snippetCacheCheck = new JCheckBox();
+        this.snippetCacheCheck.setSelected(settings.isSnippetCacheEnabled());
+        panel.add(this.snippetCacheCheck, gbc);
+        gbc.gridx = 0;
+        gbc.gridy++;
+        panel.add(new JLabel(this.resourceBundle.getString("snippet.cache.size.mb")), gbc);
+        gbc.gridx = 1;
+        this.snippetCacheSizeSpinner = new JSpinner(new SpinnerNumberModel(
+                settings.getSnippetCacheMaxMegabytes(), 1, 4096, 1
+        ));
+        panel.add(this.snippetCacheSizeSpinner, gbc);
+        gbc.gridx = 0;
+        gbc.gridy++;
+        panel.add(new JLabel(this.resourceBundle.getString("snippet.cache.age.days")), gbc);
+        gbc.gridx = 1;
+        this.snippetCacheAgeSpinner = new JSpinner(new SpinnerNumberModel(
+                settings.getSnippetCacheMaxAgeDays(), 1, 365, 1
+        ));
+        panel.add(this.snippetCacheAgeSpinner, gbc);
+        gbc.gridx = 1;
+        gbc.gridy++;
+        JButton clearCacheButton = new JButton(this.resourceBundle.getString("clear.snippet.cache"));
+        clearCacheButton.addActionListener(event -> this.padController.clearSnippetCache());
+        panel.add(clearCacheButton, gbc);
+        gbc.gridx = 0;
+        gbc.gridy++;
+        panel.add(new JLabel(this.resourceBundle.getString("limit.console.output")), gbc);
+        gbc.gridx = 1;
+        this.consoleBoundedCheck = new JCheckBox();
+        this.consoleBoundedCheck.setToolTipText(this.resourceBundle.getString("drop.the.oldest.lines.beyond.the.limits"));
+        this.consoleBoundedCheck.setSelected(settings.isConsoleBounded());
+        panel.add(this.consoleBoundedCheck, gbc);
+        gbc.gridx = 0;
+        gbc.gridy++;
+        panel.add(new JLabel(this.resourceBundle.getString("console.lines")), gbc);
+        gbc.gridx = 1;
+        this.consoleLinesSpinner = new JSpinner(new SpinnerNumberModel(
+                settings.getConsoleMaxLines(), 100, 10_000_000, 1000
+        ));
+        panel.add(this.consoleLinesSpinner, gbc);
+        gbc.gridx = 0;
+        gbc.gridy++;
+        panel.add(new JLabel(this.resourceBundle.getString("console.size.kb")), gbc);
+        gbc.gridx = 1;
+        this.consoleKilobytesSpinner = new JSpinner(new SpinnerNumberModel(
+                settings.getConsoleMaxKilobytes(), 16, 1024 * 1024, 256
+        ));
+        panel.add(this.consoleKilobytesSpinner, gbc);
+        this.consoleBoundedCheck.addActionListener(event -> {
+            this.consoleLinesSpinner.setEnabled(this.consoleBoundedCheck.isSelected());
+            this.consoleKilobytesSpinner.setEnabled(this.consoleBoundedCheck.isSelected());
+        });
+        this.consoleLinesSpinner.setEnabled(settings.isConsoleBounded());
+        this.consoleKilobytesSpinner.setEnabled(settings.isConsoleBounded());
+        gbc.gridx = 0;
+        gbc.gridy++;
+        panel.add(new JLabel(this.resourceBundle.getString("analysis.delay.ms")), gbc);
+        gbc.gridx = 1;
+        this.analysisDelaySpinner = new JSpinner(new SpinnerNumberModel(
+                settings.getAnalysisDelayMillis(), 0, 10_000, 50
+        ));
+        this.analysisDelaySpinner.setToolTipText(this.resourceBundle.getString("pause.in.typing.before.the.editor.is.analysed"));
+        panel.add(this.analysisDelaySpinner, gbc);
+        gbc.gridx = 1;
+        gbc.gridy++;
+        gbc.weighty = 1;
+        JButton saveButton = new JButton();
+        saveButton.setIcon(FontIcon.of(FontAwesomeSolid.SAVE, 15));
+        saveButton.addActionListener(event -> this.saveExecutionChanges());
+        panel.add(saveButton, gbc);
+
+        this.view.addTab(this.resourceBundle.getString("execution"), panel);
+    }
+
+    private void saveExecutionChanges() {
+        SettingsModel settings = this.handler.parseSettingsXml();
+        if (settings == null)
+            settings = new SettingsModel();
+        settings.setSnippetCacheEnabled(this.snippetCacheCheck.isSelected());
+        settings.setSnippetCacheMaxMegabytes((Integer) this.snippetCacheSizeSpinner.getValue());
+        settings.setSnippetCacheMaxAgeDays((Integer) this.snippetCacheAgeSpinner.getValue());
+        settings.setConsoleBounded(this.consoleBoundedCheck.isSelected());
+        settings.setConsoleMaxLines((Integer) this.consoleLinesSpinner.getValue());
+        settings.setConsoleMaxKilobytes((Integer) this.consoleKilobytesSpinner.getValue());
+        settings.setAnalysisDelayMillis((Integer) this.analysisDelaySpinner.getValue());
+        this.handler.writeSettingsXml(settings);
+        this.padController.setAnalysisDelay(settings.getAnalysisDelayMillis());
+    }
+
     private void pickJar() {
         JFileChooser chooser = new JFileChooser();
         chooser.setFileFilter(new FileNameExtensionFilter(this.resourceBundle.getString("jar.file"), "jar"));
@@ -468,10 +580,8 @@ public class SettingsView {
         List<String> artifacts = Collections.list(this.installedArtifactModel.elements());
         if (!artifacts.isEmpty()) {
             this.logger.debug(this.resourceBundle.getString("artifacts"), artifacts);
-            for (String artifact : artifacts)
-                EspressoPadController.getShell().addToClasspath(artifact);
-
             this.handler.writeArtifactXml(artifacts);
+            this.padController.reloadConfiguration();
             JOptionPane.showMessageDialog(
                     JOptionPane.getFrameForComponent(this.view),
                     this.resourceBundle.getString("artifacts.added.to.classpath"),
@@ -495,6 +605,7 @@ public class SettingsView {
 
     private void saveImports() {
         this.handler.writeImportXml(Collections.list(this.importsModel.elements()));
+        this.padController.reloadConfiguration();
     }
 
     private void deactivatePickJar() {
@@ -0,0 +1,29 @@
+package com.github.espressopad.views.components;
+
+import javax.swing.*;
+import java.awt.BorderLayout;
+import java.awt.Font;
+import java.util.Locale;
+import java.util.ResourceBundle;
+
+/*
+ *  Text a tab's runs read as standard input when their run configuration
+ *  says so, e.g. test data pasted in to run the snippets unattended.
+ */
+public class InputPanel extends JPanel {
+    private final ResourceBundle resourceBundle = ResourceBundle.getBundle("messages", Locale.getDefault());
+    private final JTextArea inputArea = new JTextArea();
+
+    public InputPanel() {
+        this.setLayout(new BorderLayout());
+        this.inputArea.setFont(new Font(Font.MONOSPACED, Font.PLAIN, this.inputArea.getFont().getSize()));
+        JLabel hint = new JLabel(this.resourceBundle.getString("input.panel.hint"));
+        hint.setBorder(BorderFactory.createEmptyBorder(2, 5, 2, 5));
+        this.add(hint, BorderLayout.NORTH);
+        this.add(new JScrollPane(this.inputArea), BorderLayout.CENTER);
+    }
+
+    public String getText() {
+        return this.inputArea.getText();
+    }
+}
@@ -1,13 +1,30 @@
 package com.github.espressopad.views.components;
 
 import com.github.espressopad.io.ConsoleOutputStream;
+import com.github.espressopad.models.OutputPolicy;
 import com.github.espressopad.utils.LimitLinesDocumentListener;
 
-import javax.swing.event.DocumentListener;
+import javax.swing.Timer;
+import javax.swing.text.AttributeSet;
+import javax.swing.text.BadLocationException;
 import javax.swing.text.Document;
+import javax.swing.text.Element;
+import javax.swing.text.ElementIterator;
 import javax.swing.text.JTextComponent;
+import javax.swing.text.SimpleAttributeSet;
+import javax.swing.text.StyleConstants;
 import java.awt.Color;
 import java.io.PrintStream;
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.ResourceBundle;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.LongConsumer;
 
 /*
  *  Create a simple console to display text messages.
@@ -19,12 +36,52 @@ import java.io.PrintStream;
  *  line of the console
  *
  *  You can limit the number of lines to hold in the Document.
+ *
+ *  Writers never touch the Document. Their text is queued and the EDT
+ *  drains the queue once per frame, inserting each run of equally styled
+ *  text with a single call, so a program printing in a tight loop cannot
+ *  flood the event queue. Writers reserve room in the last chunk of the
+ *  queue with a compare-and-set and take no lock until the queue holds
+ *  more than its capacity. From then on the output policy decides whether
+ *  writers wait, or which lines are skipped until the EDT has caught up.
  */
-public class MessageConsole {
+public class MessageConsole implements AutoCloseable {
+    private static final int FRAME_MILLIS = 33;
+    // Leaves the EDT free for painting and input when the queue has fallen behind
+    private static final long FRAME_BUDGET_NANOS = 12_000_000;
+    private static final int MAX_CHARS_PER_INSERT = 1 << 14;
+    private static final int MIN_CHARS_PER_CHUNK = 1 << 10;
+    private static final int MAX_CHARS_PER_CHUNK = 1 << 16;
+    private static final int DEFAULT_CAPACITY = 1 << 20;
+    private final ResourceBundle resourceBundle = ResourceBundle.getBundle("messages", Locale.getDefault());
     private final JTextComponent textComponent;
     private final Document document;
     private final boolean isAppend;
-    private DocumentListener limitLinesListener;
+    private final AtomicLong lineCount = new AtomicLong();
+    private final AtomicLong byteCount = new AtomicLong();
+    private final AtomicLong pendingCharacters = new AtomicLong();
+    private final Timer timer;
+    private final AttributeSet markerAttributes;
+    private volatile boolean closed = false;
+    // The queue is a chain of chunks; the EDT reads from the head, writers append at the tail
+    private Chunk head = new Chunk(null, 0);
+    private final AtomicReference<Chunk> tail = new AtomicReference<>(this.head);
+    // Taken by writers only once the queue is over capacity, and guards the policy state
+    private final Object lock = new Object();
+    private volatile int capacity = DEFAULT_CAPACITY;
+    private volatile boolean holding = false;
+    private OutputPolicy policy = OutputPolicy.BLOCK;
+    private int sampleInterval = 10;
+    private int keptLines = 100;
+    private long sampled = 0;
+    private long skipped = 0;
+    private final Deque<HeldLine> heldLines = new ArrayDeque<>();
+    private final AtomicLong affectedLines = new AtomicLong();
+    private OutputViewer overflowViewer;
+    private int overflowCharacters;
+    private Runnable onOverflow;
+    private boolean overflowed = false;
+    private LimitLinesDocumentListener limitLinesListener;
 
     public JTextComponent getTextComponent() {
         return this.textComponent;
@@ -53,6 +110,302 @@ public class MessageConsole {
         this.textComponent = textComponent;
         this.document = textComponent.getDocument();
         this.isAppend = isAppend;
+        this.timer = new Timer(FRAME_MILLIS, event -> this.drain());
+        this.timer.start();
+        SimpleAttributeSet markerAttributes = new SimpleAttributeSet();
+        StyleConstants.setForeground(markerAttributes, Color.gray);
+        StyleConstants.setItalic(markerAttributes, true);
+        this.markerAttributes = markerAttributes;
+    }
+
+    /*
+     *  Choose what happens once more than capacity characters are waiting
+     *  for the EDT. Sampling keeps every sampleInterval-th line; dropping
+     *  keeps the last keptLines lines of what it skipped.
+     */
+    public void setOutputPolicy(OutputPolicy policy, int capacity, int sampleInterval, int keptLines) {
+        synchronized (this.lock) {
+            this.policy = policy;
+            this.capacity = Math.max(1, capacity);
+            this.sampleInterval = Math.max(1, sampleInterval);
+            this.keptLines = Math.max(1, keptLines);
+        }
+    }
+
+    /*
+     *  Lines that were delayed, skipped or sampled away by the output policy
+     */
+    public long getAffectedLines() {
+        return this.affectedLines.get();
+    }
+
+    /*
+     *  Queue text for the next frame. Safe to call from any thread.
+     */
+    public void write(String text, AttributeSet attributes, int bytes) {
+        this.write(text.toCharArray(), 0, text.length(), attributes, bytes);
+    }
+
+    /*
+     *  Queue part of a character array for the next frame. The text is
+     *  copied, so the array can be reused. Until the EDT takes it, the last
+     *  queued chunk keeps growing with text in the same style, so a fast
+     *  writer does not allocate a chunk per line.
+     */
+    public void write(char[] text, int offset, int length, AttributeSet attributes, int bytes) {
+        if (length == 0) return;
+        int lines = 0;
+        for (int i = offset; i < offset + length; i++) {
+            if (text[i] == '\n') lines++;
+        }
+        this.lineCount.addAndGet(lines);
+        this.byteCount.addAndGet(bytes);
+        if (!this.holding && (this.closed || this.pendingCharacters.get() + length <= this.capacity)) {
+            this.enqueue(text, offset, length, attributes);
+            return;
+        }
+        synchronized (this.lock) {
+            if (this.closed || this.pendingCharacters.get() + length <= this.capacity) {
+                this.releaseHeldLines();
+                this.enqueue(text, offset, length, attributes);
+                return;
+            }
+            switch (this.policy) {
+                case BLOCK:
+                    this.affectedLines.addAndGet(Math.max(lines, 1));
+                    // A single write larger than the capacity goes through once the queue is empty
+                    while (!this.closed && this.pendingCharacters.get() > 0 &&
+                            this.pendingCharacters.get() + length > this.capacity) {
+                        try {
+                            this.lock.wait(FRAME_MILLIS);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                            break;
+                        }
+                    }
+                    this.enqueue(text, offset, length, attributes);
+                    break;
+                case DROP:
+                    this.forEachLine(text, offset, length, (start, end) -> this.holdLine(text, start, end, attributes));
+                    break;
+                case SAMPLE:
+                    this.forEachLine(text, offset, length, (start, end) -> {
+                        // Even sampled lines stop once the queue is far behind
+                        if (this.sampled++ % this.sampleInterval == 0 &&
+                                this.pendingCharacters.get() < 2L * this.capacity)
+                            this.enqueue(text, start, end - start, attributes);
+                        else this.affectedLines.incrementAndGet();
+                    });
+                    break;
+            }
+        }
+    }
+
+    /*
+     *  Append to the last chunk if it has room and the same style, or else
+     *  link a new chunk behind it. A chunk takes no more text once it has a
+     *  successor, so the chain keeps the order the text was written in.
+     */
+    private void enqueue(char[] text, int offset, int length, AttributeSet attributes) {
+        this.pendingCharacters.addAndGet(length);
+        while (true) {
+            Chunk last = this.tail.get();
+            if (last.attributes == attributes && last.append(text, offset, length))
+                return;
+            Chunk next = last.next.get();
+            if (next == null) {
+                // A chunk that filled up is followed by a larger one
+                int size = last.attributes != attributes || last.isSealed() ? MIN_CHARS_PER_CHUNK :
+                        Math.min(MAX_CHARS_PER_CHUNK, Math.max(MIN_CHARS_PER_CHUNK, 2 * last.text.length));
+                Chunk chunk = new Chunk(attributes, Math.max(length, size));
+                chunk.append(text, offset, length);
+                last.seal();
+                if (last.next.compareAndSet(null, chunk)) {
+                    this.tail.compareAndSet(last, chunk);
+                    return;
+                }
+                next = last.next.get();
+            }
+            // Another writer linked a chunk first; move the tail on and try again
+            this.tail.compareAndSet(last, next);
+        }
+    }
+
+    private void forEachLine(char[] text, int offset, int length, LineHandler handler) {
+        int start = offset;
+        for (int i = offset; i < offset + length; i++) {
+            if (text[i] != '\n') continue;
+            handler.accept(start, i + 1);
+            start = i + 1;
+        }
+        if (start < offset + length)
+            handler.accept(start, offset + length);
+    }
+
+    /*
+     *  Keep the line among the latest ones, continuing the previous line
+     *  if that one has not ended yet.
+     */
+    private void holdLine(char[] text, int start, int end, AttributeSet attributes) {
+        HeldLine last = this.heldLines.peekLast();
+        if (last != null && last.attributes == attributes && last.text.charAt(last.text.length() - 1) != '\n') {
+            last.text.append(text, start, end - start);
+            return;
+        }
+        HeldLine line = new HeldLine(attributes);
+        line.text.append(text, start, end - start);
+        this.heldLines.addLast(line);
+        this.holding = true;
+        if (this.heldLines.size() > this.keptLines) {
+            this.heldLines.removeFirst();
+            this.skipped++;
+            this.affectedLines.incrementAndGet();
+        }
+    }
+
+    /*
+     *  Queue the lines kept while dropping, behind a note of how many
+     *  lines were skipped before them.
+     */
+    private void releaseHeldLines() {
+        if (this.heldLines.isEmpty()) return;
+        if (this.skipped > 0) {
+            char[] marker = String.format(this.resourceBundle.getString("d.lines.skipped"), this.skipped).toCharArray();
+            this.enqueue(marker, 0, marker.length, this.markerAttributes);
+            this.skipped = 0;
+        }
+        HeldLine line;
+        while ((line = this.heldLines.pollFirst()) != null) {
+            char[] chars = new char[line.text.length()];
+            line.text.getChars(0, chars.length, chars, 0);
+            this.enqueue(chars, 0, chars.length, line.attributes);
+        }
+        this.holding = false;
+    }
+
+    public long getLineCount() {
+        return this.lineCount.get();
+    }
+
+    public long getByteCount() {
+        return this.byteCount.get();
+    }
+
+    /*
+     *  Insert queued text until the frame's time budget is used up, merging
+     *  consecutive chunks that share their attributes into a single insert.
+     */
+    private void drain() {
+        long deadline = System.nanoTime() + FRAME_BUDGET_NANOS;
+        boolean inserted = false;
+        StringBuilder run = new StringBuilder();
+        AttributeSet runAttributes = null;
+        long taken = 0;
+        Chunk chunk = this.head;
+        while (true) {
+            int end = chunk.seal();
+            if (chunk.start == end) {
+                Chunk next = chunk.next.get();
+                if (next == null) break;
+                chunk = this.head = next;
+                continue;
+            }
+            if (run.length() > 0 && (!Objects.equals(runAttributes, chunk.attributes) ||
+                    run.length() + end - chunk.start > MAX_CHARS_PER_INSERT)) {
+                this.insert(run.toString(), runAttributes);
+                inserted = true;
+                run.setLength(0);
+                if (System.nanoTime() > deadline) break;
+            }
+            runAttributes = chunk.attributes;
+            int split = Math.min(end, chunk.start + MAX_CHARS_PER_INSERT);
+            if (split < end && Character.isHighSurrogate(chunk.text[split - 1])) split--;
+            run.append(chunk.text, chunk.start, split - chunk.start);
+            taken += split - chunk.start;
+            chunk.start = split;
+        }
+        if (run.length() > 0) {
+            this.insert(run.toString(), runAttributes);
+            inserted = true;
+        }
+        this.pendingCharacters.addAndGet(-taken);
+        synchronized (this.lock) {
+            // Writers may have stopped while lines were held back
+            if (this.pendingCharacters.get() < this.capacity / 2)
+                this.releaseHeldLines();
+            this.lock.notifyAll();
+        }
+        if (inserted && this.overflowed)
+            this.overflowViewer.followTail();
+        // The Document may have been handed to another component, e.g. when its tab was saved
+        else if (inserted && this.textComponent.getDocument() == this.document)
+            this.textComponent.setCaretPosition(this.isAppend ? this.document.getLength() : 0);
+        if (this.closed && this.head.start == this.head.seal() && this.head.next.get() == null) {
+            this.timer.stop();
+            // The Document outlives this console, so stop trimming it
+            if (this.limitLinesListener != null)
+                this.document.removeDocumentListener(this.limitLinesListener);
+        }
+    }
+
+    /*
+     *  Once the Document would hold more than the given number of
+     *  characters, move its text to the viewer and append everything after
+     *  it there instead. Only supported for appending consoles.
+     */
+    public void setOverflow(OutputViewer viewer, int maximumCharacters, Runnable onOverflow) {
+        this.overflowViewer = viewer;
+        this.overflowCharacters = maximumCharacters;
+        this.onOverflow = onOverflow;
+    }
+
+    private void insert(String text, AttributeSet attributes) {
+        if (!this.overflowed && this.overflowViewer != null && this.isAppend &&
+                this.document.getLength() + text.length() > this.overflowCharacters)
+            this.overflow();
+        if (this.overflowed) {
+            this.overflowViewer.append(text, getForeground(attributes));
+            return;
+        }
+        try {
+            this.document.insertString(this.isAppend ? this.document.getLength() : 0, text, attributes);
+        } catch (BadLocationException ignored) {
+        }
+    }
+
+    private void overflow() {
+        ElementIterator iterator = new ElementIterator(this.document);
+        Element element;
+        while ((element = iterator.next()) != null) {
+            if (!element.isLeaf()) continue;
+            try {
+                int end = Math.min(element.getEndOffset(), this.document.getLength());
+                if (end > element.getStartOffset())
+                    this.overflowViewer.append(this.document.getText(element.getStartOffset(),
+                            end - element.getStartOffset()), getForeground(element.getAttributes()));
+            } catch (BadLocationException ignored) {
+            }
+        }
+        this.textComponent.setText("");
+        this.overflowed = true;
+        this.onOverflow.run();
+    }
+
+    private static Color getForeground(AttributeSet attributes) {
+        return attributes != null && attributes.isDefined(StyleConstants.Foreground) ?
+                StyleConstants.getForeground(attributes) : null;
+    }
+
+    /*
+     *  Stop accepting frames once everything queued so far has been shown.
+     */
+    @Override
+    public void close() {
+        synchronized (this.lock) {
+            this.closed = true;
+            this.releaseHeldLines();
+            this.lock.notifyAll();
+        }
     }
 
     /*
@@ -73,6 +426,13 @@ public class MessageConsole {
         return new ConsoleOutputStream(this, textColor, printStream);
     }
 
+    /*
+     *  Same as above for output encoded in the given charset
+     */
+    public ConsoleOutputStream redirectOut(Color textColor, PrintStream printStream, Charset charset) {
+        return new ConsoleOutputStream(this, textColor, printStream, charset);
+    }
+
     /*
      *  Redirect the output from the standard error to the console
      *  using the default text color and null PrintStream
@@ -91,6 +451,13 @@ public class MessageConsole {
         return new ConsoleOutputStream(this, textColor, printStream);
     }
 
+    /*
+     *  Same as above for output encoded in the given charset
+     */
+    public ConsoleOutputStream redirectErr(Color textColor, PrintStream printStream, Charset charset) {
+        return new ConsoleOutputStream(this, textColor, printStream, charset);
+    }
+
     /*
      *  To prevent memory from being used up you can control the number of
      *  lines to display in the console
@@ -99,10 +466,82 @@ public class MessageConsole {
      *  be updated the next time the Document is updated.
      */
     public void setMessageLines(int lines) {
+        this.setMessageLimit(lines, Integer.MAX_VALUE, null);
+    }
+
+    /*
+     *  Limit the console by lines and by the size of its text in bytes of
+     *  UTF-8, whichever is reached first. The listener is told the total
+     *  number of dropped lines.
+     */
+    public void setMessageLimit(int lines, int bytes, LongConsumer droppedLinesListener) {
         if (this.limitLinesListener != null)
             this.document.removeDocumentListener(this.limitLinesListener);
 
         this.limitLinesListener = new LimitLinesDocumentListener(lines, this.isAppend);
+        this.limitLinesListener.setLimitBytes(bytes);
+        this.limitLinesListener.setDroppedLinesListener(droppedLinesListener);
         this.document.addDocumentListener(this.limitLinesListener);
     }
+
+    private interface LineHandler {
+        void accept(int start, int end);
+    }
+
+    /*
+     *  Text written by any number of threads. A writer reserves room with a
+     *  compare-and-set and then copies its text in; the EDT seals a chunk
+     *  before reading it and waits for copies still under way.
+     */
+    private static class Chunk {
+        private static final int SEALED = Integer.MIN_VALUE;
+        private final char[] text;
+        private final AttributeSet attributes;
+        private final AtomicInteger reserved = new AtomicInteger();
+        private final AtomicInteger written = new AtomicInteger();
+        private final AtomicReference<Chunk> next = new AtomicReference<>();
+        // Only read and moved by the EDT
+        private int start = 0;
+
+        private Chunk(AttributeSet attributes, int size) {
+            this.attributes = attributes;
+            this.text = new char[size];
+        }
+
+        private boolean append(char[] chars, int offset, int length) {
+            int position;
+            do {
+                position = this.reserved.get();
+                // Sealed chunks have a negative position
+                if (position < 0 || position + length > this.text.length) return false;
+            } while (!this.reserved.compareAndSet(position, position + length));
+            System.arraycopy(chars, offset, this.text, position, length);
+            this.written.addAndGet(length);
+            return true;
+        }
+
+        /*
+         *  Take no more text and return the length of what was taken, once
+         *  all of it has been copied in.
+         */
+        private int seal() {
+            int length = this.reserved.getAndUpdate(position -> position | SEALED) & ~SEALED;
+            while (this.written.get() < length)
+                Thread.onSpinWait();
+            return length;
+        }
+
+        private boolean isSealed() {
+            return this.reserved.get() < 0;
+        }
+    }
+
+    private static class HeldLine {
+        private final StringBuilder text = new StringBuilder();
+        private final AttributeSet attributes;
+
+        private HeldLine(AttributeSet attributes) {
+            this.attributes = attributes;
+        }
+    }
 }
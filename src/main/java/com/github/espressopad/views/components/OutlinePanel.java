@@ -0,0 +1,112 @@
+package com.github.espressopad.views.components;
+
+import com.github.espressopad.models.OutlineEntry;
+import org.kordamp.ikonli.Ikon;
+import org.kordamp.ikonli.fontawesome5.FontAwesomeSolid;
+import org.kordamp.ikonli.swing.FontIcon;
+
+import javax.swing.*;
+import java.awt.BorderLayout;
+import java.awt.Color;
+import java.awt.Component;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.util.List;
+
+/*
+ *  Classes, methods and variables declared by a script. Clicking an entry
+ *  moves the caret to the declaration.
+ */
+public class OutlinePanel extends JPanel {
+    private final OutlineModel model = new OutlineModel();
+    private final JList<OutlineEntry> list = new JList<>(this.model);
+    private final TextEditor textEditor;
+
+    public OutlinePanel(TextEditor textEditor) {
+        super(new BorderLayout());
+        this.textEditor = textEditor;
+        // Rows all look the same, so the list need not measure every one of them
+        this.list.setPrototypeCellValue(new OutlineEntry("outline", "Object", OutlineEntry.Kind.CLASS, 0, 1, 0));
+        this.list.setCellRenderer(new OutlineRenderer());
+        this.list.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+        this.list.addMouseListener(new MouseAdapter() {
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                int index = OutlinePanel.this.list.locationToIndex(e.getPoint());
+                if (index >= 0 && OutlinePanel.this.list.getCellBounds(index, index).contains(e.getPoint()))
+                    OutlinePanel.this.navigate(OutlinePanel.this.model.getElementAt(index));
+            }
+        });
+        this.add(new JScrollPane(this.list), BorderLayout.CENTER);
+    }
+
+    /*
+     *  Show a new outline. Nothing is repainted when it is the one shown.
+     */
+    public void setEntries(List<OutlineEntry> entries) {
+        if (this.model.entries.equals(entries)) return;
+        this.list.clearSelection();
+        this.model.setEntries(List.copyOf(entries));
+    }
+
+    private void navigate(OutlineEntry entry) {
+        if (entry.getOffset() <= this.textEditor.getDocument().getLength()) {
+            this.textEditor.setCaretPosition(entry.getOffset());
+            this.textEditor.requestFocusInWindow();
+        }
+    }
+
+    private static class OutlineModel extends AbstractListModel<OutlineEntry> {
+        private List<OutlineEntry> entries = List.of();
+
+        void setEntries(List<OutlineEntry> entries) {
+            int previous = this.entries.size();
+            this.entries = entries;
+            // One event for the whole outline rather than one per entry
+            if (previous > entries.size())
+                this.fireIntervalRemoved(this, entries.size(), previous - 1);
+            if (!entries.isEmpty())
+                this.fireContentsChanged(this, 0, entries.size() - 1);
+        }
+
+        @Override
+        public int getSize() {
+            return this.entries.size();
+        }
+
+        @Override
+        public OutlineEntry getElementAt(int index) {
+            return this.entries.get(index);
+        }
+    }
+
+    private static class OutlineRenderer extends DefaultListCellRenderer {
+        private static final Icon CLASS_ICON = icon(FontAwesomeSolid.CUBE, new Color(0x1976D2));
+        private static final Icon METHOD_ICON = icon(FontAwesomeSolid.COG, new Color(0x7B1FA2));
+        private static final Icon VARIABLE_ICON = icon(FontAwesomeSolid.TAG, new Color(0x388E3C));
+
+        private static Icon icon(Ikon ikon, Color color) {
+            return FontIcon.of(ikon, 12, color);
+        }
+
+        @Override
+        public Component getListCellRendererComponent(JList<?> list, Object value, int index, boolean isSelected,
+                                                      boolean cellHasFocus) {
+            OutlineEntry entry = (OutlineEntry) value;
+            super.getListCellRendererComponent(list, entry.getDetail() == null ? entry.getName() :
+                    String.format("%s : %s", entry.getName(), entry.getDetail()), index, isSelected, cellHasFocus);
+            switch (entry.getKind()) {
+                case CLASS:
+                    this.setIcon(CLASS_ICON);
+                    break;
+                case METHOD:
+                    this.setIcon(METHOD_ICON);
+                    break;
+                default:
+                    this.setIcon(VARIABLE_ICON);
+            }
+            this.setBorder(BorderFactory.createEmptyBorder(1, 4 + 16 * entry.getDepth(), 1, 4));
+            return this;
+        }
+    }
+}
@@ -0,0 +1,196 @@
+package com.github.espressopad.views.components;
+
+import com.github.espressopad.io.SpillFile;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.swing.*;
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics;
+import java.awt.Rectangle;
+import java.awt.event.ActionEvent;
+import java.awt.event.InputEvent;
+import java.awt.event.KeyEvent;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.ResourceBundle;
+
+/*
+ *  Shows run output that is too large for a styled document. The text is
+ *  spilled to a memory-mapped file and only the lines inside the viewport
+ *  are read back and painted, so memory use does not grow with the output
+ *  and jumping to any line costs the same.
+ */
+public class OutputViewer extends JComponent implements Scrollable {
+    // Longer lines are cut off when painted
+    private static final int MAXIMUM_LINE_BYTES = 1 << 14;
+    private final Logger logger = LoggerFactory.getLogger(OutputViewer.class);
+    private final ResourceBundle resourceBundle = ResourceBundle.getBundle("messages", Locale.getDefault());
+    private final List<Color> styles = new ArrayList<>();
+    private SpillFile spillFile;
+
+    public OutputViewer() {
+        this.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 12));
+        this.setBackground(Color.white);
+        this.setForeground(Color.black);
+        this.setOpaque(true);
+        this.setFocusable(true);
+        this.getInputMap().put(KeyStroke.getKeyStroke(KeyEvent.VK_G, InputEvent.CTRL_DOWN_MASK), "goToLine");
+        this.getActionMap().put("goToLine", new AbstractAction() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                OutputViewer.this.goToLine();
+            }
+        });
+    }
+
+    /*
+     *  Append text in the given colour, or the default colour for null.
+     */
+    public void append(String text, Color color) {
+        int style = this.styles.indexOf(color);
+        if (style < 0) {
+            style = this.styles.size();
+            this.styles.add(color);
+        }
+        try {
+            if (this.spillFile == null)
+                this.spillFile = new SpillFile();
+            this.spillFile.append(text, style);
+        } catch (IOException e) {
+            this.logger.error("Could not spill output to disk", e);
+        }
+    }
+
+    /*
+     *  Resize to the appended text and keep the last line in view.
+     */
+    public void followTail() {
+        this.revalidate();
+        this.repaint();
+        this.scrollToLine(this.getLineCount() - 1);
+    }
+
+    public int getLineCount() {
+        return this.spillFile == null ? 0 : this.spillFile.getLineCount();
+    }
+
+    public long getSpilledBytes() {
+        return this.spillFile == null ? 0 : this.spillFile.getSize();
+    }
+
+    public Path getSpillPath() {
+        return this.spillFile == null ? null : this.spillFile.getPath();
+    }
+
+    public void scrollToLine(int line) {
+        int lineHeight = this.getLineHeight();
+        this.scrollRectToVisible(new Rectangle(0, Math.max(line, 0) * lineHeight, 1, lineHeight));
+    }
+
+    /*
+     *  Discard the output and delete the spill file.
+     */
+    public void clear() {
+        if (this.spillFile != null)
+            this.spillFile.close();
+        this.spillFile = null;
+        this.styles.clear();
+        this.revalidate();
+        this.repaint();
+    }
+
+    /*
+     *  Take the spilled output of another viewer, leaving that one empty.
+     */
+    public void takeOver(OutputViewer other) {
+        this.clear();
+        this.spillFile = other.spillFile;
+        this.styles.addAll(other.styles);
+        other.spillFile = null;
+        other.styles.clear();
+        this.revalidate();
+        this.repaint();
+    }
+
+    private void goToLine() {
+        String line = JOptionPane.showInputDialog(this, String.format(
+                this.resourceBundle.getString("go.to.line.1.d"), this.getLineCount()
+        ));
+        if (line == null) return;
+        try {
+            this.scrollToLine(Integer.parseInt(line.strip()) - 1);
+        } catch (NumberFormatException ignored) {
+        }
+    }
+
+    private int getLineHeight() {
+        return this.getFontMetrics(this.getFont()).getHeight();
+    }
+
+    @Override
+    public Dimension getPreferredSize() {
+        FontMetrics metrics = this.getFontMetrics(this.getFont());
+        if (this.spillFile == null) return new Dimension(0, 0);
+        int columns = Math.min(this.spillFile.getLongestLine(), MAXIMUM_LINE_BYTES);
+        long height = (long) this.spillFile.getLineCount() * metrics.getHeight();
+        return new Dimension(columns * metrics.charWidth('m') + 8, (int) Math.min(height, Integer.MAX_VALUE));
+    }
+
+    @Override
+    protected void paintComponent(Graphics g) {
+        Rectangle clip = g.getClipBounds();
+        g.setColor(this.getBackground());
+        g.fillRect(clip.x, clip.y, clip.width, clip.height);
+        if (this.spillFile == null) return;
+        g.setFont(this.getFont());
+        FontMetrics metrics = g.getFontMetrics();
+        int lineHeight = metrics.getHeight();
+        int first = clip.y / lineHeight;
+        int last = Math.min(this.spillFile.getLineCount() - 1, (clip.y + clip.height) / lineHeight);
+        for (int line = first; line <= last; line++) {
+            int baseline = line * lineHeight + metrics.getAscent();
+            int[] x = {4};
+            this.spillFile.readLine(line, MAXIMUM_LINE_BYTES, (text, style) -> {
+                Color color = this.styles.get(style);
+                g.setColor(Objects.requireNonNullElse(color, this.getForeground()));
+                text = text.replace("\t", "    ");
+                g.drawString(text, x[0], baseline);
+                x[0] += metrics.stringWidth(text);
+            });
+        }
+    }
+
+    @Override
+    public Dimension getPreferredScrollableViewportSize() {
+        return this.getPreferredSize();
+    }
+
+    @Override
+    public int getScrollableUnitIncrement(Rectangle visibleRect, int orientation, int direction) {
+        return orientation == SwingConstants.VERTICAL ? this.getLineHeight() :
+                this.getFontMetrics(this.getFont()).charWidth('m');
+    }
+
+    @Override
+    public int getScrollableBlockIncrement(Rectangle visibleRect, int orientation, int direction) {
+        return orientation == SwingConstants.VERTICAL ? visibleRect.height : visibleRect.width;
+    }
+
+    @Override
+    public boolean getScrollableTracksViewportWidth() {
+        return this.getParent() instanceof JViewport && this.getParent().getWidth() > this.getPreferredSize().width;
+    }
+
+    @Override
+    public boolean getScrollableTracksViewportHeight() {
+        return this.getParent() instanceof JViewport && this.getParent().getHeight() > this.getPreferredSize().height;
+    }
+}
@@ -0,0 +1,102 @@
+package com.github.espressopad.views.components;
+
+import com.github.espressopad.models.SnippetProfile;
+import com.github.espressopad.models.SourceSnippet;
+
+import javax.swing.*;
+import javax.swing.table.DefaultTableModel;
+import java.awt.BorderLayout;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.ResourceBundle;
+
+/*
+ *  Hot snippets table of a profiled run. Double clicking a row moves the
+ *  caret to the snippet.
+ */
+public class ProfilePanel extends JPanel {
+    private final ResourceBundle resourceBundle = ResourceBundle.getBundle("messages", Locale.getDefault());
+    private final List<SnippetProfile> profiles = new ArrayList<>();
+    private final DefaultTableModel tableModel;
+    private final JTable table;
+    private final TextEditor textEditor;
+
+    public ProfilePanel(TextEditor textEditor) {
+        super(new BorderLayout());
+        this.textEditor = textEditor;
+        this.tableModel = new DefaultTableModel(new String[]{
+                this.resourceBundle.getString("line"),
+                this.resourceBundle.getString("snippet"),
+                this.resourceBundle.getString("wall.ms"),
+                this.resourceBundle.getString("cpu.ms"),
+                this.resourceBundle.getString("allocated.kb"),
+                this.resourceBundle.getString("gc.count"),
+        }, 0) {
+            @Override
+            public Class<?> getColumnClass(int columnIndex) {
+                switch (columnIndex) {
+                    case 0:
+                        return Integer.class;
+                    case 1:
+                        return String.class;
+                    case 2:
+                    case 3:
+                        return Double.class;
+                    default:
+                        return Long.class;
+                }
+            }
+
+            @Override
+            public boolean isCellEditable(int row, int column) {
+                return false;
+            }
+        };
+        this.table = new JTable(this.tableModel);
+        this.table.setAutoCreateRowSorter(true);
+        this.table.setFillsViewportHeight(true);
+        this.table.getColumnModel().getColumn(1).setPreferredWidth(300);
+        this.table.addMouseListener(new MouseAdapter() {
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                if (e.getClickCount() == 2 && ProfilePanel.this.table.getSelectedRow() >= 0)
+                    ProfilePanel.this.navigate(ProfilePanel.this.table.convertRowIndexToModel(
+                            ProfilePanel.this.table.getSelectedRow()
+                    ));
+            }
+        });
+        this.add(new JScrollPane(this.table), BorderLayout.CENTER);
+    }
+
+    public void setProfiles(List<SnippetProfile> profiles) {
+        this.profiles.clear();
+        this.profiles.addAll(profiles);
+        this.tableModel.setRowCount(0);
+        for (SnippetProfile profile : profiles) {
+            SourceSnippet snippet = profile.getSnippet();
+            String source = snippet.getSource().strip();
+            int newline = source.indexOf('\n');
+            this.tableModel.addRow(new Object[]{
+                    snippet.getStartLine(),
+                    newline < 0 ? source : source.substring(0, newline) + " …",
+                    profile.getWallNanos() / 100_000 / 10.0,
+                    profile.getCpuNanos() < 0 ? null : profile.getCpuNanos() / 100_000 / 10.0,
+                    profile.getAllocatedBytes() < 0 ? null : profile.getAllocatedBytes() / 1024,
+                    profile.getGcCount() < 0 ? null : profile.getGcCount()
+            });
+        }
+        // Slowest first
+        this.table.getRowSorter().setSortKeys(List.of(new RowSorter.SortKey(2, SortOrder.DESCENDING)));
+    }
+
+    private void navigate(int row) {
+        SourceSnippet snippet = this.profiles.get(row).getSnippet();
+        if (snippet.getStartOffset() <= this.textEditor.getDocument().getLength()) {
+            this.textEditor.setCaretPosition(snippet.getStartOffset());
+            this.textEditor.requestFocusInWindow();
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package com.github.espressopad.views.components;
+
+import javax.swing.*;
+import java.awt.BorderLayout;
+import java.awt.CardLayout;
+import java.util.Locale;
+import java.util.ResourceBundle;
+
+/*
+ *  Output of a tab's runs. Runs start out in the styled text pane and
+ *  move to the disk-backed viewer once their output gets too large. A
+ *  bounded console instead drops its oldest lines, which is noted above
+ *  the output.
+ */
+public class ResultPanel extends JPanel {
+    private static final String DOCUMENT = "document";
+    private static final String VIEWER = "viewer";
+    private final ResourceBundle resourceBundle = ResourceBundle.getBundle("messages", Locale.getDefault());
+    private final CardLayout cardLayout = new CardLayout();
+    private final JPanel cards = new JPanel(this.cardLayout);
+    private final JLabel droppedLines = new JLabel();
+    private final JTextPane resultView;
+    private final OutputViewer outputViewer = new OutputViewer();
+    private long droppedLineCount = 0;
+    private boolean showingViewer = false;
+
+    public ResultPanel(JTextPane resultView) {
+        this.resultView = resultView;
+        this.setLayout(new BorderLayout());
+        this.cards.add(new JScrollPane(resultView), DOCUMENT);
+        this.cards.add(new JScrollPane(this.outputViewer), VIEWER);
+        this.droppedLines.setBorder(BorderFactory.createEmptyBorder(2, 5, 2, 5));
+        this.droppedLines.setVisible(false);
+        this.add(this.droppedLines, BorderLayout.NORTH);
+        this.add(this.cards, BorderLayout.CENTER);
+    }
+
+    public OutputViewer getOutputViewer() {
+        return this.outputViewer;
+    }
+
+    public void showViewer() {
+        this.showingViewer = true;
+        this.cardLayout.show(this.cards, VIEWER);
+    }
+
+    public boolean isShowingViewer() {
+        return this.showingViewer;
+    }
+
+    public void setDroppedLines(long lines) {
+        this.droppedLineCount = lines;
+        this.droppedLines.setText(String.format(this.resourceBundle.getString("d.lines.dropped"), lines));
+        this.droppedLines.setVisible(lines > 0);
+    }
+
+    /*
+     *  Clear the output of the previous run.
+     */
+    public void clear() {
+        this.resultView.setText("");
+        this.outputViewer.clear();
+        this.setDroppedLines(0);
+        this.showingViewer = false;
+        this.cardLayout.show(this.cards, DOCUMENT);
+    }
+
+    /*
+     *  Move the output of another panel here without copying it, e.g. when
+     *  a scratch tab is reopened under the name it was saved as. Nothing
+     *  may be running in the other panel's tab.
+     */
+    public void takeOver(ResultPanel other) {
+        this.resultView.setDocument(other.resultView.getDocument());
+        other.resultView.setDocument(other.resultView.getEditorKit().createDefaultDocument());
+        this.outputViewer.takeOver(other.outputViewer);
+        this.setDroppedLines(other.droppedLineCount);
+        if (other.showingViewer)
+            this.showViewer();
+        other.clear();
+    }
+}
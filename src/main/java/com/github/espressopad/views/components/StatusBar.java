@@ -10,6 +10,12 @@ public class StatusBar extends JPanel {
     private final JLabel findOccurrencesLabel;
     private final JLabel statusLabel;
     private final JLabel characterPosition;
+    private final JLabel elapsedTime;
+    private final JLabel engine;
+    private final JLabel cacheStatistics;
+    private final JLabel throughput;
+    private final JLabel outputPolicy;
+    private final JLabel analysis;
     private final JProgressBar progressBar;
     private final ResourceBundle resourceBundle = ResourceBundle.getBundle("messages", Locale.getDefault());
 
@@ -18,6 +24,17 @@ public class StatusBar extends JPanel {
         this.findOccurrencesLabel = new JLabel();
         this.characterPosition = new JLabel();
         this.characterPosition.setToolTipText(this.resourceBundle.getString("row.column"));
+        this.elapsedTime = new JLabel();
+        this.elapsedTime.setToolTipText(this.resourceBundle.getString("elapsed.time"));
+        this.engine = new JLabel();
+        this.engine.setToolTipText(this.resourceBundle.getString("execution.engine"));
+        this.cacheStatistics = new JLabel();
+        this.cacheStatistics.setToolTipText(this.resourceBundle.getString("compiled.snippet.cache"));
+        this.throughput = new JLabel();
+        this.throughput.setToolTipText(this.resourceBundle.getString("output.throughput"));
+        this.outputPolicy = new JLabel();
+        this.outputPolicy.setToolTipText(this.resourceBundle.getString("output.policy"));
+        this.analysis = new JLabel();
         this.progressBar = new JProgressBar();
         this.setLayout(new BoxLayout(this, BoxLayout.LINE_AXIS));
         this.add(this.statusLabel);
@@ -26,6 +43,18 @@ public class StatusBar extends JPanel {
         this.add(Box.createHorizontalGlue());
         this.add(this.characterPosition);
         this.add(Box.createHorizontalGlue());
+        this.add(this.elapsedTime);
+        this.add(Box.createHorizontalGlue());
+        this.add(this.engine);
+        this.add(Box.createHorizontalGlue());
+        this.add(this.cacheStatistics);
+        this.add(Box.createHorizontalGlue());
+        this.add(this.throughput);
+        this.add(Box.createHorizontalGlue());
+        this.add(this.outputPolicy);
+        this.add(Box.createHorizontalGlue());
+        this.add(this.analysis);
+        this.add(Box.createHorizontalGlue());
         this.add(this.progressBar);
         this.add(new JLabel(new SizeGripIcon()));
     }
@@ -34,6 +63,10 @@ public class StatusBar extends JPanel {
         this.findOccurrencesLabel.setText(label);
     }
 
+    public String getStatusLabel() {
+        return this.statusLabel.getText();
+    }
+
     public void setStatusLabel(String label) {
         this.statusLabel.setText(label);
     }
@@ -42,6 +75,34 @@ public class StatusBar extends JPanel {
         this.characterPosition.setText(label);
     }
 
+    public void setElapsedTime(String label) {
+        this.elapsedTime.setText(label);
+    }
+
+    public void setEngine(String label) {
+        this.engine.setText(label);
+    }
+
+    public void setCacheStatistics(String label) {
+        this.cacheStatistics.setText(label);
+    }
+
+    public void setThroughput(String label) {
+        this.throughput.setText(label);
+    }
+
+    public void setOutputPolicy(String label) {
+        this.outputPolicy.setText(label);
+    }
+
+    public void setAnalysis(String label) {
+        this.analysis.setText(label);
+    }
+
+    public void setAnalysisToolTip(String toolTip) {
+        this.analysis.setToolTipText(toolTip);
+    }
+
     public JProgressBar getProgressBar() {
         return this.progressBar;
     }
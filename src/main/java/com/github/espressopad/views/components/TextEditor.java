@@ -1,13 +1,24 @@
 package com.github.espressopad.views.components;
 
+import com.github.espressopad.models.SourceSnippet;
 import com.github.espressopad.models.ViewModel;
+import com.github.espressopad.utils.SnippetSplitter;
 import org.fife.ui.rsyntaxtextarea.RSyntaxTextArea;
 import org.fife.ui.rtextarea.RTextScrollPane;
 
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Document;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
 public class TextEditor extends RSyntaxTextArea {
     private ViewModel viewModel;
     private RTextScrollPane scrollPane;
     private boolean dirty = false;
+    private final AtomicLong version = new AtomicLong();
+    private volatile SnippetCache snippetCache;
 
     public TextEditor(ViewModel viewModel) {
         this();
@@ -26,6 +37,52 @@ public class TextEditor extends RSyntaxTextArea {
         //this.setLineWrap(true);
         this.setMarkOccurrences(true);
         this.setAutoIndentEnabled(true);
+        this.getDocument().addDocumentListener(new DocumentListener() {
+            @Override
+            public void insertUpdate(DocumentEvent e) {
+                TextEditor.this.version.incrementAndGet();
+            }
+
+            @Override
+            public void removeUpdate(DocumentEvent e) {
+                TextEditor.this.version.incrementAndGet();
+            }
+
+            @Override
+            public void changedUpdate(DocumentEvent e) {
+            }
+        });
+    }
+
+    /*
+     *  Number of edits made to the document so far.
+     */
+    public long getVersion() {
+        return this.version.get();
+    }
+
+    /*
+     *  The top level snippets of the current text. Splitting is done at
+     *  most once per document version; safe to call from any thread.
+     */
+    public List<SourceSnippet> getSnippets() {
+        SnippetCache cache = this.snippetCache;
+        if (cache != null && cache.version == this.version.get())
+            return cache.snippets;
+        Document document = this.getDocument();
+        String[] text = new String[1];
+        long[] version = new long[1];
+        document.render(() -> {
+            try {
+                version[0] = this.version.get();
+                text[0] = document.getText(0, document.getLength());
+            } catch (BadLocationException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        cache = new SnippetCache(version[0], SnippetSplitter.split(text[0]));
+        this.snippetCache = cache;
+        return cache.snippets;
     }
 
     public RTextScrollPane getScrollPane() {
@@ -47,4 +104,14 @@ public class TextEditor extends RSyntaxTextArea {
     public void setDirty(boolean dirty) {
         this.dirty = dirty;
     }
+
+    private static class SnippetCache {
+        private final long version;
+        private final List<SourceSnippet> snippets;
+
+        SnippetCache(long version, List<SourceSnippet> snippets) {
+            this.version = version;
+            this.snippets = snippets;
+        }
+    }
 }